@@ -0,0 +1,57 @@
+package stephenkyne.example.org.newsapp;
+
+import android.os.Build;
+import android.os.Debug;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the bytes allocated while some code runs, from the runtime stats ART keeps,
+ * and the heap held by live objects.
+ * Used by the benchmarks to check allocation per article next to the timing
+ * BenchmarkRule reports. The count is for the whole process, the code is run many times so
+ * the little the other threads allocate meanwhile does not matter.
+ */
+final class AllocationCounter {
+
+    // Bytes allocated by the process since it started
+    private static final String BYTES_ALLOCATED = "art.gc.bytes-allocated";
+
+    private AllocationCounter() {
+    }
+
+    // Bytes allocated by one run of the code, averaged over the given runs.
+    // The test is skipped before API 23, which has no runtime stats.
+    static long bytesPerRun(Runnable code, int runs) {
+        assumeTrue("Runtime stats need API 23", Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
+        // One run first so class loading and first time set up are not counted
+        code.run();
+        long before = bytesAllocated();
+        for (int i = 0; i < runs; i++) {
+            code.run();
+        }
+        return (bytesAllocated() - before) / runs;
+    }
+
+    // Fails when one run of the code allocates more than maxBytes, returns what it allocates
+    static long assertBytesPerRun(String name, long maxBytes, Runnable code, int runs) {
+        long bytes = bytesPerRun(code, runs);
+        assertTrue(name + " allocates " + bytes + " bytes, at most " + maxBytes,
+                bytes <= maxBytes);
+        return bytes;
+    }
+
+    // Bytes of the heap in use once garbage has been collected, what the live objects hold
+    static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        System.runFinalization();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long bytesAllocated() {
+        return Long.parseLong(Debug.getRuntimeStat(BYTES_ALLOCATED));
+    }
+}
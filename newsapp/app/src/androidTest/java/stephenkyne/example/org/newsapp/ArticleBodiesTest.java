@@ -0,0 +1,166 @@
+package stephenkyne.example.org.newsapp;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link ArticleBodies}, the text is served by a {@link GuardianStandIn}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ArticleBodiesTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GuardianStandIn standIn;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws IOException {
+        standIn = new GuardianStandIn(100);
+        cacheDir = new File(folder.getRoot(), ArticleBodies.DISK_CACHE_DIR);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        standIn.close();
+    }
+
+    @Test
+    public void prefetchedText_isOpenedWithoutARequest() throws Exception {
+        ArticleBodies bodies = new ArticleBodies(cacheDir, ArticleBodies.DISK_CACHE_BYTES,
+                standIn.getBaseUrl());
+        List<Article> articles = SnapshotStoreTest.createArticles(10);
+        bodies.prefetch(articles);
+        waitForPrefetches(bodies, ArticleBodies.PREFETCH_COUNT);
+        // Only the first rows are prefetched
+        assertEquals(ArticleBodies.PREFETCH_COUNT, standIn.getRequestCount());
+
+        String id = articles.get(0).getId();
+        assertEquals(GuardianPayloads.generateBodyText(id), bodies.getBody(id, null));
+        assertEquals(ArticleBodies.PREFETCH_COUNT, standIn.getRequestCount());
+        assertEquals(1, bodies.getPrefetchHitCount());
+        assertEquals(1.0, bodies.getPrefetchHitRate(), 0);
+
+        // Opened again, it is not a prefetch hit any more
+        bodies.getBody(id, null);
+        assertEquals(1, bodies.getPrefetchHitCount());
+        assertEquals(1, bodies.getDiskHitCount());
+
+        // An article further down is downloaded when it is opened
+        String notPrefetched = articles.get(ArticleBodies.PREFETCH_COUNT).getId();
+        assertEquals(GuardianPayloads.generateBodyText(notPrefetched),
+                bodies.getBody(notPrefetched, null));
+        assertEquals(1, bodies.getDownloadCount());
+        assertEquals(ArticleBodies.PREFETCH_COUNT + 1, standIn.getRequestCount());
+        assertEquals(0, bodies.getWastedBytes());
+    }
+
+    @Test
+    public void savedText_isCompressed() throws Exception {
+        ArticleBodies bodies = new ArticleBodies(cacheDir, ArticleBodies.DISK_CACHE_BYTES,
+                standIn.getBaseUrl());
+        String id = "world/2021/may/30/generated-story-1";
+        String body = bodies.getBody(id, null);
+        assertEquals(GuardianPayloads.generateBodyText(id), body);
+
+        File[] files = cacheDir.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        assertTrue(files[0].length() < body.getBytes(StandardCharsets.UTF_8).length / 2);
+        assertEquals(body, ArticleBodies.readFile(files[0]));
+    }
+
+    @Test
+    public void prefetchedTextDeletedUnread_countsAsWasted() throws Exception {
+        // Too small for any text, each one is deleted as soon as it is saved
+        ArticleBodies bodies = new ArticleBodies(cacheDir, 1, standIn.getBaseUrl());
+        List<Article> articles = SnapshotStoreTest.createArticles(2);
+        bodies.prefetch(articles);
+        waitForPrefetches(bodies, 2);
+
+        assertTrue(bodies.getPrefetchBytes() > 0);
+        assertEquals(bodies.getPrefetchBytes(), bodies.getWastedBytes());
+
+        // Opening it downloads it again, it is not a hit
+        String id = articles.get(0).getId();
+        assertEquals(GuardianPayloads.generateBodyText(id), bodies.getBody(id, null));
+        assertEquals(0, bodies.getPrefetchHitCount());
+        assertEquals(1, bodies.getDownloadCount());
+    }
+
+    @Test
+    public void tempFileOfAKilledProcess_isDeletedAndNotCounted() throws Exception {
+        assertTrue(cacheDir.mkdirs());
+        // Left part way through by a process that was killed, larger than the whole cache
+        File stale = new File(cacheDir, "0123456789abcdef.tmp42");
+        byte[] bytes = new byte[100000];
+        new Random(1).nextBytes(bytes);
+        FileOutputStream out = new FileOutputStream(stale);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        assertTrue(stale.setLastModified(
+                System.currentTimeMillis() - ArticleBodies.TEMP_EXPIRES_MILLIS - 60000));
+        long limit = stale.length() / 2;
+
+        ArticleBodies bodies = new ArticleBodies(cacheDir, limit, standIn.getBaseUrl());
+        String id = "world/2021/may/30/generated-story-1";
+        bodies.getBody(id, null);
+
+        // The text just saved is kept, the stale file is gone
+        assertFalse(stale.exists());
+        File[] files = cacheDir.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        assertEquals(GuardianPayloads.generateBodyText(id), bodies.getBody(id, null));
+    }
+
+    @Test
+    public void restartedOpen_isCountedOnce() throws Exception {
+        ArticleBodies bodies = new ArticleBodies(cacheDir, ArticleBodies.DISK_CACHE_BYTES,
+                standIn.getBaseUrl());
+        List<Article> articles = SnapshotStoreTest.createArticles(1);
+        bodies.prefetch(articles);
+        waitForPrefetches(bodies, 1);
+
+        String id = articles.get(0).getId();
+        bodies.getBody(id, null, true);
+        // The reader's loader was restarted and asks again
+        bodies.getBody(id, null, false);
+        assertEquals(1, bodies.getOpenCount());
+        assertEquals(1, bodies.getPrefetchHitCount());
+        assertEquals(0, bodies.getDiskHitCount());
+        assertEquals(1.0, bodies.getPrefetchHitRate(), 0);
+    }
+
+    // Waits until count prefetches have been saved, they run on a background thread
+    private static void waitForPrefetches(ArticleBodies bodies, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (bodies.getPrefetchCount() < count) {
+            assertTrue("prefetched: " + bodies.getPrefetchCount(),
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
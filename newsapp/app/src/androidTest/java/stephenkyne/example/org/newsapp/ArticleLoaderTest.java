@@ -0,0 +1,225 @@
+package stephenkyne.example.org.newsapp;
+
+import android.app.LoaderManager;
+import android.content.Context;
+import android.content.Loader;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for the kept result and the cancelling of {@link ArticleLoader},
+ * against a {@link GuardianStandIn}.
+ * The loaders are run by the LoaderManager of a {@link MainActivity}, the same way the app
+ * restarts them when the settings change and stops and starts them with the screen.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ArticleLoaderTest {
+
+    // Not used by MainActivity
+    private static final int TEST_LOADER_ID = 100;
+    private static final String ARG_URL = "url";
+
+    private static final int ARTICLES_PER_SECTION = 1000;
+    private static final int PAGE_SIZE = 50;
+
+    // Slow enough that a page takes about two seconds to arrive
+    private static final long BYTES_PER_SECOND = 20000;
+
+    // Number of times the settings are changed, and the time between two changes
+    private static final int SETTINGS_CHANGES = 8;
+    private static final long CHANGE_INTERVAL_MILLIS = 100;
+
+    // Time a load started by mistake is given to show up
+    private static final long SETTLE_MILLIS = 500;
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final Context context =
+            InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+    private GuardianStandIn standIn;
+    private ActivityScenario<MainActivity> scenario;
+
+    // Loads started, and loads running at the same time, now and at most, guarded by "this"
+    private int loads;
+    private int running;
+    private int mostRunning;
+
+    // Main thread only
+    private String lastUrl;
+    private List<ArticleRow> lastRows;
+    private final CountDownLatch lastLoaded = new CountDownLatch(1);
+
+    private final LoaderManager.LoaderCallbacks<List<ArticleRow>> callbacks =
+            new LoaderManager.LoaderCallbacks<List<ArticleRow>>() {
+                @Override
+                public Loader<List<ArticleRow>> onCreateLoader(int id, Bundle args) {
+                    return new CountingLoader(args.getString(ARG_URL));
+                }
+
+                @Override
+                public void onLoadFinished(Loader<List<ArticleRow>> loader,
+                                           List<ArticleRow> rows) {
+                    if (((CountingLoader) loader).url.equals(lastUrl)) {
+                        lastRows = rows;
+                        lastLoaded.countDown();
+                    }
+                }
+
+                @Override
+                public void onLoaderReset(Loader<List<ArticleRow>> loader) {
+                }
+            };
+
+    @Before
+    public void setUp() throws IOException {
+        standIn = new GuardianStandIn(ARTICLES_PER_SECTION);
+        scenario = ActivityScenario.launch(MainActivity.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        scenario.onActivity(new ActivityScenario.ActivityAction<MainActivity>() {
+            @Override
+            public void perform(MainActivity activity) {
+                activity.getLoaderManager().destroyLoader(TEST_LOADER_ID);
+            }
+        });
+        scenario.close();
+        standIn.close();
+    }
+
+    @Test
+    public void rapidSettingsChanges_runOneFetchAtATime() throws Exception {
+        standIn.setBytesPerSecond(BYTES_PER_SECOND);
+        for (int change = 0; change < SETTINGS_CHANGES; change++) {
+            // Page 2 and later, so the saved snapshot of the real feed is left alone,
+            // and every change asks for a different URL so none is shared by the fetcher
+            final String url = standIn.buildUrl("world", 2 + change, PAGE_SIZE, "newest");
+            scenario.onActivity(new ActivityScenario.ActivityAction<MainActivity>() {
+                @Override
+                public void perform(MainActivity activity) {
+                    lastUrl = url;
+                    activity.getLoaderManager().restartLoader(TEST_LOADER_ID, args(url),
+                            callbacks);
+                }
+            });
+            Thread.sleep(CHANGE_INTERVAL_MILLIS);
+        }
+
+        assertTrue(lastLoaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNotNull(lastRows);
+        assertEquals(PAGE_SIZE, lastRows.size());
+        synchronized (this) {
+            assertEquals(1, mostRunning);
+        }
+        // The cancelled loads were not counted as failures of the API
+        assertEquals(CircuitBreaker.State.CLOSED, QueryUtils.getApiCircuitState());
+        // The cancelled loads stopped downloading, only the last page was sent in full
+        long pageBytes = GuardianPayloads.generate("world", 2, PAGE_SIZE, ARTICLES_PER_SECTION,
+                false).getBytes(StandardCharsets.UTF_8).length;
+        assertTrue("bytes sent: " + standIn.getBytesSent(),
+                standIn.getBytesSent() < 2 * pageBytes);
+    }
+
+    @Test
+    public void keptResult_isDeliveredAgainWithoutLoading() throws Exception {
+        initLoader(standIn.buildUrl("world", 2, PAGE_SIZE, "newest"));
+        assertTrue(lastLoaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(PAGE_SIZE, lastRows.size());
+
+        hideAndShowScreen();
+        synchronized (this) {
+            assertEquals(1, loads);
+        }
+        assertEquals(1, standIn.getRequestCount());
+    }
+
+    @Test
+    public void failedLoad_isNotRunAgainWhenTheScreenIsShown() throws Exception {
+        // Not a failure worth a retry, so the load makes one request
+        standIn.setErrorRate(1, 404);
+        initLoader(standIn.buildUrl("world", 2, PAGE_SIZE, "newest"));
+        assertTrue(lastLoaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(lastRows);
+        int requests = standIn.getRequestCount();
+
+        // Only a refresh loads it again
+        hideAndShowScreen();
+        synchronized (this) {
+            assertEquals(1, loads);
+        }
+        assertEquals(requests, standIn.getRequestCount());
+    }
+
+    private void initLoader(final String url) {
+        scenario.onActivity(new ActivityScenario.ActivityAction<MainActivity>() {
+            @Override
+            public void perform(MainActivity activity) {
+                lastUrl = url;
+                activity.getLoaderManager().initLoader(TEST_LOADER_ID, args(url), callbacks);
+            }
+        });
+    }
+
+    // Stops and starts the activity, and gives a load started by that time to begin
+    private void hideAndShowScreen() throws InterruptedException {
+        scenario.moveToState(Lifecycle.State.CREATED);
+        scenario.moveToState(Lifecycle.State.RESUMED);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        Thread.sleep(SETTLE_MILLIS);
+    }
+
+    private static Bundle args(String url) {
+        Bundle args = new Bundle();
+        args.putString(ARG_URL, url);
+        return args;
+    }
+
+    /**
+     * Counts the loads started and the ones running at the same time.
+     */
+    private class CountingLoader extends ArticleLoader {
+
+        final String url;
+
+        CountingLoader(String url) {
+            super(context, url, 2);
+            this.url = url;
+        }
+
+        @Override
+        protected List<ArticleRow> load(CancellationSignal signal) {
+            synchronized (ArticleLoaderTest.this) {
+                loads++;
+                running++;
+                mostRunning = Math.max(mostRunning, running);
+            }
+            try {
+                return super.load(signal);
+            } finally {
+                synchronized (ArticleLoaderTest.this) {
+                    running--;
+                }
+            }
+        }
+    }
+}
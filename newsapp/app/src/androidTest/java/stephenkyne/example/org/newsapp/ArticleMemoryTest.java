@@ -0,0 +1,78 @@
+package stephenkyne.example.org.newsapp;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the heap a page of {@link Article}s keeps, against the way articles
+ * were held before they were made compact: a String for every field, the date as ISO text
+ * and a copy of the section and author names in every article.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ArticleMemoryTest {
+
+    private static final String LOG_TAG = "ArticleMemoryTest";
+
+    private static final int ARTICLES = 1000;
+
+    @Test
+    public void retainedHeapPer1000Articles_isSmallerThanBefore() {
+        String payload = GuardianPayloads.generate(ARTICLES);
+
+        long baseline = AllocationCounter.usedHeapAfterGc();
+        List<Article> compact = QueryUtils.extractFeatureFromJson(payload);
+        long compactBytes = AllocationCounter.usedHeapAfterGc() - baseline;
+        assertEquals(ARTICLES, compact.size());
+
+        // The same articles, each field its own String as the JSON parser makes them
+        List<StringArticle> before = new ArrayList<>(ARTICLES);
+        for (Article article : compact) {
+            before.add(new StringArticle(article));
+        }
+        long beforeBytes = AllocationCounter.usedHeapAfterGc() - baseline - compactBytes;
+        assertEquals(ARTICLES, before.size());
+
+        Log.i(LOG_TAG, "retained bytes per 1,000 articles: before " + beforeBytes
+                + ", compact " + compactBytes);
+        assertTrue("compact " + compactBytes + " before " + beforeBytes,
+                compactBytes < beforeBytes);
+    }
+
+    // An article held the way it was before: every field a String of its own
+    private static final class StringArticle {
+
+        private final String id;
+        private final String section;
+        private final String webDate;
+        private final String title;
+        private final String webUrl;
+        private final String author;
+        private final String summary;
+        private final String thumbnailUrl;
+
+        StringArticle(Article article) {
+            id = copy(article.getId());
+            section = copy(article.getSection());
+            webDate = Timestamps.formatIso8601(article.getPublishedMillis());
+            title = copy(article.getTitle());
+            webUrl = copy(article.getWebUrl());
+            author = copy(article.getAuthor());
+            summary = copy(article.getSummary());
+            thumbnailUrl = copy(article.getThumbnailUrl());
+        }
+
+        // A String of its own, not shared with the compact article
+        private static String copy(String text) {
+            return text != null ? new String(text.toCharArray()) : null;
+        }
+    }
+}
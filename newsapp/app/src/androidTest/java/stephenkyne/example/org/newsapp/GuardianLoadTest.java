@@ -0,0 +1,211 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * End to end loads against the {@link GuardianStandIn}, through the same
+ * {@link QueryUtils#fetchArticles} and {@link ArticleLoader} code the app uses.
+ * Each test logs a {@link LoadHarness.Report}, so a transport or parser change can be
+ * compared offline by running this class before and after it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GuardianLoadTest {
+
+    private static final String LOG_TAG = "GuardianLoadTest";
+
+    // Sections the loads cycle through, "search" is all sections
+    private static final String[] SECTIONS = {"search", "world", "sport", "culture", "business"};
+
+    private static final int ARTICLES_PER_SECTION = 1000;
+    private static final int PAGE_SIZE = 20;
+    private static final int CLIENTS = 8;
+
+    // Retries quickly, so injected failures do not make the tests slow
+    private static final FetchPolicy FAST_RETRY = new FetchPolicy(10000, 6, 10, 100,
+            QueryUtils.TIMEOUT_CONNECT, QueryUtils.TIMEOUT_READ);
+
+    private GuardianStandIn standIn;
+
+    @Before
+    public void setUp() throws IOException {
+        standIn = new GuardianStandIn(ARTICLES_PER_SECTION);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        standIn.close();
+    }
+
+    @Test
+    public void standIn_pagesLikeTheApi() throws Exception {
+        String firstPage = standIn.buildUrl("world", 1, PAGE_SIZE, "newest");
+        List<Article> newest = fetch(firstPage, FetchPolicy.SINGLE_ATTEMPT);
+        assertEquals(PAGE_SIZE, newest.size());
+        assertEquals("world", newest.get(0).getSection());
+        assertEquals(GuardianPayloads.NEWEST_MILLIS, newest.get(0).getPublishedMillis());
+
+        // The last page has what is left over
+        List<Article> last = fetch(standIn.buildUrl("world", 7, 150, "newest"),
+                FetchPolicy.SINGLE_ATTEMPT);
+        assertEquals(ARTICLES_PER_SECTION - 6 * 150, last.size());
+
+        List<Article> oldest = fetch(standIn.buildUrl("world", 1, PAGE_SIZE, "oldest"),
+                FetchPolicy.SINGLE_ATTEMPT);
+        assertTrue(oldest.get(0).getPublishedMillis() < oldest.get(1).getPublishedMillis());
+
+        // Ten minutes of articles, one a minute, the newest included
+        String delta = firstPage + "&" + MainActivity.PARAM_FROM_DATE + "="
+                + Timestamps.formatIso8601(GuardianPayloads.NEWEST_MILLIS - 10 * 60000);
+        assertEquals(11, fetch(delta, FetchPolicy.SINGLE_ATTEMPT).size());
+    }
+
+    @Test
+    public void fastServer_concurrentLoads() throws Exception {
+        LoadHarness.Report report = LoadHarness.run(CLIENTS, 25,
+                fetchLoad(FetchPolicy.SINGLE_ATTEMPT));
+        log("fast", report);
+        assertEquals(0, report.getFailures());
+        // Connections are kept alive between the loads of a client
+        assertTrue(standIn.getConnectionCount() < standIn.getRequestCount());
+    }
+
+    @Test
+    public void slowServer_concurrentLoads() throws Exception {
+        standIn.setLatencyMillis(100);
+        standIn.setBytesPerSecond(256 * 1024);
+        LoadHarness.Report report = LoadHarness.run(CLIENTS, 5,
+                fetchLoad(FetchPolicy.SINGLE_ATTEMPT));
+        log("latency 100 ms, 256 KiB/s", report);
+        assertEquals(0, report.getFailures());
+        assertTrue(report.getPercentileMillis(50) >= 100);
+    }
+
+    @Test
+    public void injectedServerErrors_areRetried() throws Exception {
+        standIn.setErrorRate(0.1, 503);
+        LoadHarness.Report report = LoadHarness.run(CLIENTS, 25, fetchLoad(FAST_RETRY));
+        log("10% 503", report);
+        assertEquals(0, report.getFailures());
+        assertTrue(standIn.getErrorCount() > 0);
+        assertEquals(report.getLoads() + standIn.getErrorCount(), standIn.getRequestCount());
+    }
+
+    @Test
+    public void throttled_waitsForRetryAfter() throws Exception {
+        standIn.failNext(1, 429);
+        standIn.setRetryAfterSeconds(1);
+        long start = SystemClock.elapsedRealtime();
+        fetch(standIn.buildUrl("sport", 1, PAGE_SIZE, "newest"), FAST_RETRY);
+        assertTrue(SystemClock.elapsedRealtime() - start >= 1000);
+        assertEquals(2, standIn.getRequestCount());
+    }
+
+    @Test
+    public void tricklingBody_failsAtTheDeadline() throws Exception {
+        // Every read is well inside the read timeout, the whole body is not
+        standIn.setBytesPerSecond(2 * 1024);
+        FetchPolicy policy = new FetchPolicy(1000, 1, 0, 0,
+                QueryUtils.TIMEOUT_CONNECT, QueryUtils.TIMEOUT_READ);
+        long start = SystemClock.elapsedRealtime();
+        try {
+            fetch(standIn.buildUrl("world", 1, 200, "newest"), policy);
+            fail("The body takes far longer than the deadline");
+        } catch (FetchException e) {
+            assertEquals(FetchException.Kind.TIMEOUT, e.getKind());
+        }
+        assertTrue(SystemClock.elapsedRealtime() - start < QueryUtils.TIMEOUT_READ);
+    }
+
+    @Test
+    public void failingServer_opensTheCircuit() throws Exception {
+        standIn.setErrorRate(1, 500);
+        CircuitBreaker circuit = newCircuit();
+        String url = standIn.buildUrl("world", 1, PAGE_SIZE, "newest");
+        int circuitOpen = 0;
+        for (int i = 0; i < 2 * QueryUtils.CIRCUIT_FAILURE_THRESHOLD; i++) {
+            try {
+                QueryUtils.fetchArticles(url, null, FetchPolicy.SINGLE_ATTEMPT, circuit);
+                fail("The stand-in fails every request");
+            } catch (FetchException e) {
+                if (e.getKind() == FetchException.Kind.CIRCUIT_OPEN) {
+                    circuitOpen++;
+                }
+            }
+        }
+        // Once open, the API is left alone
+        assertEquals(QueryUtils.CIRCUIT_FAILURE_THRESHOLD, standIn.getRequestCount());
+        assertEquals(QueryUtils.CIRCUIT_FAILURE_THRESHOLD, circuitOpen);
+    }
+
+    @Test
+    public void articleLoader_concurrentLoads() throws Exception {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        LoadHarness.Report report = LoadHarness.run(4, 10, new LoadHarness.Load() {
+            @Override
+            public void run(int client, int iteration) {
+                // Page 2 and later, so the saved snapshot of the real feed is left alone,
+                // and every load asks for a different URL so none is shared by the fetcher
+                int page = 2 + client * 10 + iteration;
+                ArticleLoader loader = new ArticleLoader(context,
+                        standIn.buildUrl(SECTIONS[client % SECTIONS.length], page, PAGE_SIZE,
+                                "newest"), page);
+                List<ArticleRow> rows = loader.loadInBackground();
+                assertNull(loader.getError());
+                assertEquals(PAGE_SIZE, rows.size());
+            }
+        });
+        log("ArticleLoader", report);
+        assertEquals(0, report.getFailures());
+    }
+
+    // A load of a different section and page each time, checked for a full page
+    private LoadHarness.Load fetchLoad(final FetchPolicy policy) {
+        final CircuitBreaker circuit = newCircuit();
+        return new LoadHarness.Load() {
+            @Override
+            public void run(int client, int iteration) throws FetchException {
+                String url = standIn.buildUrl(SECTIONS[(client + iteration) % SECTIONS.length],
+                        1 + iteration % 10, PAGE_SIZE, "newest");
+                List<Article> articles = QueryUtils.fetchArticles(url, null, policy, circuit);
+                assertEquals(PAGE_SIZE, articles.size());
+            }
+        };
+    }
+
+    private List<Article> fetch(String url, FetchPolicy policy) throws FetchException {
+        return QueryUtils.fetchArticles(url, null, policy, newCircuit());
+    }
+
+    // The app's circuit is shared, each test gets its own so failures do not leak
+    private static CircuitBreaker newCircuit() {
+        return new CircuitBreaker(QueryUtils.CIRCUIT_FAILURE_THRESHOLD,
+                QueryUtils.CIRCUIT_OPEN_MILLIS, new FeedStore.Clock() {
+                    @Override
+                    public long currentTimeMillis() {
+                        return SystemClock.elapsedRealtime();
+                    }
+                });
+    }
+
+    private static void log(String scenario, LoadHarness.Report report) {
+        Log.i(LOG_TAG, scenario + ": " + report);
+        if (report.getFirstFailure() != null) {
+            Log.e(LOG_TAG, scenario + " first failure", report.getFirstFailure());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package stephenkyne.example.org.newsapp;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Makes Guardian shaped JSON responses for tests and benchmarks.
+ * Each result has the same keys the real API returns with show-tags=contributor and
+ * show-fields=trailText,thumbnail, including the ones the app does not read.
+ */
+final class GuardianPayloads {
+
+    // Section names the generated articles cycle through
+    static final String[] SECTIONS = {
+            "World news", "Sport", "Football", "Culture", "Business", "Science",
+            "Environment", "Society", "Fashion", "Film", "Technology", "Opinion"};
+
+    // Authors the generated articles cycle through
+    static final String[] AUTHORS = {
+            "Jane Smith", "John Doe", "Alex Taylor", "Sam Jones", "Chris Evans", "Pat Brown"};
+
+    // Real world shaped trailText, with tags and entities
+    static final String[] TRAIL_TEXTS = {
+            "<strong>Live</strong> Follow the latest updates as the story develops",
+            "The minister&#8217;s plan &amp; what it means for you",
+            "<p>A look at the <em>week&#8217;s</em> biggest stories</p>",
+            "Scientists say the results are &lsquo;remarkable&rsquo; &ndash; but warn more work is needed",
+            "Our critic reviews the new film &hellip; and it&#39;s not what you expect"};
+
+    // 2021-05-30T23:59:00Z, the date of the newest generated article
+    static final long NEWEST_MILLIS = 1622419140000L;
+
+    private GuardianPayloads() {
+    }
+
+    // A response with count results on page 1, newest first
+    static String generate(int count) {
+        return generate(count, 1, 1);
+    }
+
+    /**
+     * A response with count results for the given page, newest first.
+     *
+     * @param count number of results in the page
+     * @param page  page number, articles on later pages are older
+     * @param pages number of pages reported in the response
+     */
+    static String generate(int count, int page, int pages) {
+        return generate(null, page, count, count * pages, false);
+    }
+
+    /**
+     * A response for any query, the way the API pages through a list of total articles.
+     * Article n of the list is n minutes older than the newest one, so the same article
+     * always has the same id, date and position whatever the page size.
+     *
+     * @param sectionId   the section asked for, null for all sections
+     * @param page        page number, from 1
+     * @param pageSize    number of results in a full page
+     * @param total       number of articles that match the query
+     * @param oldestFirst true for order-by=oldest
+     */
+    static String generate(String sectionId, int page, int pageSize, int total,
+                           boolean oldestFirst) {
+        int pages = (total + pageSize - 1) / pageSize;
+        int first = (page - 1) * pageSize;
+        int count = Math.max(0, Math.min(pageSize, total - first));
+        StringBuilder json = new StringBuilder(count * 900 + 300);
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":")
+                .append(total)
+                .append(",\"startIndex\":").append(first + 1)
+                .append(",\"pageSize\":").append(pageSize)
+                .append(",\"currentPage\":").append(page)
+                .append(",\"pages\":").append(pages)
+                .append(",\"orderBy\":\"").append(oldestFirst ? "oldest" : "newest")
+                .append("\",\"results\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            int n = oldestFirst ? total - 1 - (first + i) : first + i;
+            appendResult(json, n, sectionId);
+        }
+        json.append("]}}");
+        return json.toString();
+    }
+
+    /**
+     * The response for one article asked for by its id with show-fields=bodyText,
+     * the way {@link ArticleBodies} asks for it.
+     */
+    static String generateItem(String id) {
+        return "{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":1"
+                + ",\"content\":{\"id\":\"" + id + "\",\"type\":\"article\""
+                + ",\"webTitle\":\"Generated story\""
+                + ",\"webUrl\":\"https://www.theguardian.com/" + id + "\""
+                + ",\"apiUrl\":\"https://content.guardianapis.com/" + id + "\""
+                + ",\"fields\":{\"bodyText\":\"" + generateBodyText(id) + "\"}"
+                + ",\"isHosted\":false}}}";
+    }
+
+    // About 4 KB of text for the article, the same every time for the same id
+    static String generateBodyText(String id) {
+        StringBuilder text = new StringBuilder(4200);
+        for (int i = 0; text.length() < 4000; i++) {
+            text.append("Paragraph ").append(i).append(" of ").append(id).append(". ")
+                    .append(TRAIL_TEXTS[i % TRAIL_TEXTS.length].replaceAll("<[^>]*>", ""))
+                    .append(". ");
+        }
+        return text.toString();
+    }
+
+    // The error body the API sends with a 4xx response
+    static String generateError(String message) {
+        return "{\"response\":{\"status\":\"error\",\"message\":\"" + message + "\"}}";
+    }
+
+    // The name of a section id, "world" is not in SECTIONS and is shown as it is
+    static String sectionName(String sectionId) {
+        for (String section : SECTIONS) {
+            if (section.toLowerCase().replace(' ', '-').equals(sectionId)) {
+                return section;
+            }
+        }
+        return sectionId;
+    }
+
+    // One result, article n is one minute older than article n - 1.
+    // Without a section id the articles cycle through SECTIONS.
+    private static void appendResult(StringBuilder json, int n, String sectionIdAskedFor) {
+        String section;
+        String sectionId;
+        if (sectionIdAskedFor == null) {
+            section = SECTIONS[n % SECTIONS.length];
+            sectionId = section.toLowerCase().replace(' ', '-');
+        } else {
+            section = sectionName(sectionIdAskedFor);
+            sectionId = sectionIdAskedFor;
+        }
+        String id = sectionId + "/2021/may/30/generated-story-" + n;
+        String author = AUTHORS[n % AUTHORS.length];
+        json.append("{\"id\":\"").append(id)
+                .append("\",\"type\":\"article\",\"sectionId\":\"").append(sectionId)
+                .append("\",\"sectionName\":\"").append(section)
+                .append("\",\"webPublicationDate\":\"").append(dateMinutesAgo(n))
+                .append("\",\"webTitle\":\"Generated story number ").append(n)
+                .append(" about something that happened today")
+                .append("\",\"webUrl\":\"https://www.theguardian.com/").append(id)
+                .append("\",\"apiUrl\":\"https://content.guardianapis.com/").append(id)
+                .append("\",\"fields\":{\"trailText\":\"")
+                .append(TRAIL_TEXTS[n % TRAIL_TEXTS.length])
+                .append("\",\"thumbnail\":\"https://media.guim.co.uk/").append(n)
+                .append("/master/500.jpg")
+                .append("\"},\"tags\":[{\"id\":\"profile/").append(author.toLowerCase().replace(' ', '-'))
+                .append("\",\"type\":\"contributor\",\"webTitle\":\"").append(author)
+                .append("\",\"webUrl\":\"https://www.theguardian.com/profile/x\"")
+                .append(",\"apiUrl\":\"https://content.guardianapis.com/profile/x\"}]")
+                .append(",\"isHosted\":false,\"pillarId\":\"pillar/news\",\"pillarName\":\"News\"}");
+    }
+
+    // ISO-8601 UTC date, counting back one minute at a time from 2021-05-30T23:59:00Z
+    static String dateMinutesAgo(int minutes) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(NEWEST_MILLIS - minutes * 60000L));
+    }
+}
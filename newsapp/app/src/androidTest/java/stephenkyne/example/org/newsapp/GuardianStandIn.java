@@ -0,0 +1,467 @@
+package stephenkyne.example.org.newsapp;
+
+import android.net.Uri;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static stephenkyne.example.org.newsapp.MainActivity.API_KEY;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_API_KEY;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_FORMAT;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_FROM_DATE;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_ORDER_BY;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_PAGE;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_PAGE_SIZE;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_Q_QUERY;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_SHOW_FIELDS;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_SHOW_TAGS;
+import static stephenkyne.example.org.newsapp.MainActivity.REQUEST_FORMAT;
+import static stephenkyne.example.org.newsapp.MainActivity.SHOW_FIELDS_TRAILTEXT_THUMBNAIL;
+import static stephenkyne.example.org.newsapp.MainActivity.SHOW_TAGS_CONTRIBUTOR;
+
+/**
+ * A local stand-in for content.guardianapis.com, so loads can be tested and measured
+ * without the network, the rate limit of the "test" key or news that changes every minute.
+ * Answers any section, page, page-size, order-by and from-date with articles made by
+ * {@link GuardianPayloads}, or with a response recorded for a section.
+ * Latency, bandwidth and failures can be added to every response.
+ * Listens on 127.0.0.1 over plain http and keeps connections alive like the real API.
+ */
+final class GuardianStandIn implements Closeable {
+
+    // Response code that makes the stand-in close the connection without answering
+    static final int FAULT_DROP_CONNECTION = 0;
+
+    // Pages the API sends when the request does not say
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    // Most results the API sends in one page
+    private static final int MAX_PAGE_SIZE = 200;
+
+    // Bytes written at a time when the bandwidth is limited
+    private static final int CHUNK_SIZE = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int articlesPerSection;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionPool = Executors.newCachedThreadPool();
+    private final Set<Socket> openSockets = new HashSet<>();
+    private final Thread acceptThread;
+
+    // Bodies recorded for a section, served for every page of it
+    private final Map<String, String> recorded = new HashMap<>();
+
+    // Faults, set by the test, read by the connection threads
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private double errorRate;
+    private int errorResponseCode;
+    private int failNextCount;
+    private int failNextResponseCode;
+    private volatile int retryAfterSeconds;
+    private final Random random = new Random(42);
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    /**
+     * Starts the stand-in on a free port.
+     *
+     * @param articlesPerSection number of articles in every section
+     */
+    GuardianStandIn(int articlesPerSection) throws IOException {
+        this.articlesPerSection = articlesPerSection;
+        serverSocket = new ServerSocket(0, 128, InetAddress.getByName("127.0.0.1"));
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "GuardianStandIn");
+        acceptThread.start();
+    }
+
+    // Web address the API paths are added to, "http://127.0.0.1:port/"
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    /**
+     * A query URL with the same parameters {@link ArticleQuery} sends to the real API.
+     *
+     * @param section "search" for all sections, or a section id like "world"
+     * @param orderBy "newest" or "oldest"
+     */
+    String buildUrl(String section, int page, int pageSize, String orderBy) {
+        Uri.Builder uriBuilder = Uri.parse(getBaseUrl()).buildUpon();
+        uriBuilder.appendEncodedPath(section);
+        uriBuilder.appendQueryParameter(PARAM_Q_QUERY, "");
+        uriBuilder.appendQueryParameter(PARAM_FORMAT, REQUEST_FORMAT);
+        uriBuilder.appendQueryParameter(PARAM_PAGE_SIZE, String.valueOf(pageSize));
+        uriBuilder.appendQueryParameter(PARAM_PAGE, String.valueOf(page));
+        uriBuilder.appendQueryParameter(PARAM_SHOW_TAGS, SHOW_TAGS_CONTRIBUTOR);
+        uriBuilder.appendQueryParameter(PARAM_SHOW_FIELDS, SHOW_FIELDS_TRAILTEXT_THUMBNAIL);
+        uriBuilder.appendQueryParameter(PARAM_ORDER_BY, orderBy);
+        uriBuilder.appendQueryParameter(PARAM_API_KEY, API_KEY);
+        return uriBuilder.toString();
+    }
+
+    // Serves body for every page of the section, like a response saved from the real API
+    synchronized void record(String section, String body) {
+        recorded.put(section, body);
+    }
+
+    // Waits this long before answering each request
+    void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    // Sends each response no faster than this, 0 for as fast as possible
+    void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Fails a share of the requests, picked by a seeded Random so runs are repeatable.
+     *
+     * @param rate         0 for none, 1 for every request
+     * @param responseCode sent instead of the articles, or {@link #FAULT_DROP_CONNECTION}
+     */
+    synchronized void setErrorRate(double rate, int responseCode) {
+        errorRate = rate;
+        errorResponseCode = responseCode;
+    }
+
+    // Fails the next count requests with the response code, before any error rate applies
+    synchronized void failNext(int count, int responseCode) {
+        failNextCount = count;
+        failNextResponseCode = responseCode;
+    }
+
+    // Sent in a Retry-After header with 429 and 503 responses, 0 for none
+    void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    // Number of requests answered or failed
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    // Number of requests failed on purpose
+    int getErrorCount() {
+        return errorCount.get();
+    }
+
+    // Number of connections opened by clients, fewer than requests when they are kept alive
+    int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    // Number of response bytes written, headers included
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        synchronized (openSockets) {
+            for (Socket socket : openSockets) {
+                closeQuietly(socket);
+            }
+        }
+        connectionPool.shutdownNow();
+        try {
+            acceptThread.join();
+            connectionPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptConnections() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // Closed
+                return;
+            }
+            connectionCount.incrementAndGet();
+            synchronized (openSockets) {
+                openSockets.add(socket);
+            }
+            connectionPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serveConnection(socket);
+                    } catch (IOException | InterruptedException e) {
+                        // The client went away or the stand-in was closed
+                    } finally {
+                        synchronized (openSockets) {
+                            openSockets.remove(socket);
+                        }
+                        closeQuietly(socket);
+                    }
+                }
+            });
+        }
+    }
+
+    // Answers requests on one connection until the client closes it or asks to
+    private void serveConnection(Socket socket) throws IOException, InterruptedException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        while (true) {
+            String requestLine = readLine(in);
+            if (requestLine == null) {
+                return;
+            }
+            boolean keepAlive = true;
+            String header;
+            while ((header = readLine(in)) != null && !header.isEmpty()) {
+                if (header.toLowerCase(Locale.US).startsWith("connection:")
+                        && header.toLowerCase(Locale.US).contains("close")) {
+                    keepAlive = false;
+                }
+            }
+            requestCount.incrementAndGet();
+
+            long latency = latencyMillis;
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+
+            int fault = nextFault();
+            if (fault == FAULT_DROP_CONNECTION) {
+                errorCount.incrementAndGet();
+                return;
+            }
+            if (fault > 0) {
+                errorCount.incrementAndGet();
+                writeResponse(out, fault, GuardianPayloads.generateError("Injected failure"),
+                        false);
+                return;
+            }
+
+            String[] parts = requestLine.split(" ");
+            Response response = answer(parts.length > 1 ? parts[1] : "/");
+            writeResponse(out, response.code, response.body, keepAlive);
+            if (!keepAlive) {
+                return;
+            }
+        }
+    }
+
+    // The response code of the failure for the next request, -1 for none
+    private synchronized int nextFault() {
+        if (failNextCount > 0) {
+            failNextCount--;
+            return failNextResponseCode;
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            return errorResponseCode;
+        }
+        return -1;
+    }
+
+    // Works out the articles for the path and query of a request
+    private Response answer(String target) throws IOException {
+        int queryStart = target.indexOf('?');
+        String path = queryStart < 0 ? target : target.substring(0, queryStart);
+        Map<String, String> params = parseQuery(
+                queryStart < 0 ? "" : target.substring(queryStart + 1));
+
+        if (path.indexOf('/', 1) > 0) {
+            // An article id, "/world/2021/may/30/generated-story-3"
+            return new Response(QueryUtils.SUCCESS_RESPONSE_CODE,
+                    GuardianPayloads.generateItem(path.substring(1)));
+        }
+
+        String section = path.substring(path.lastIndexOf('/') + 1);
+        synchronized (this) {
+            String body = recorded.get(section);
+            if (body != null) {
+                return new Response(QueryUtils.SUCCESS_RESPONSE_CODE, body);
+            }
+        }
+
+        int page = parseInt(params.get(PARAM_PAGE), 1);
+        int pageSize = parseInt(params.get(PARAM_PAGE_SIZE), DEFAULT_PAGE_SIZE);
+        if (page < 1 || pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            return new Response(400, GuardianPayloads.generateError(
+                    "page and page-size must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        boolean oldestFirst = "oldest".equals(params.get(PARAM_ORDER_BY));
+
+        // Only the articles published at or after from-date match
+        int total = articlesPerSection;
+        String fromDate = params.get(PARAM_FROM_DATE);
+        if (fromDate != null) {
+            long fromMillis = Timestamps.parseIso8601(fromDate);
+            if (fromMillis != Article.NO_DATE) {
+                long newerMinutes = (GuardianPayloads.NEWEST_MILLIS - fromMillis) / 60000;
+                total = fromMillis > GuardianPayloads.NEWEST_MILLIS
+                        ? 0 : (int) Math.min(total, newerMinutes + 1);
+            }
+        }
+        int pages = (total + pageSize - 1) / pageSize;
+        if (page > Math.max(1, pages)) {
+            return new Response(400, GuardianPayloads.generateError(
+                    "requested page is beyond the number of available pages"));
+        }
+
+        String sectionId = "search".equals(section) || section.isEmpty() ? null : section;
+        return new Response(QueryUtils.SUCCESS_RESPONSE_CODE,
+                GuardianPayloads.generate(sectionId, page, pageSize, total, oldestFirst));
+    }
+
+    private void writeResponse(OutputStream out, int code, String body, boolean keepAlive)
+            throws IOException, InterruptedException {
+        byte[] bodyBytes = body.getBytes(UTF_8);
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code))
+                .append("\r\nContent-Type: application/json; charset=utf-8")
+                .append("\r\nContent-Length: ").append(bodyBytes.length)
+                .append("\r\nConnection: ").append(keepAlive ? "keep-alive" : "close");
+        if (retryAfterSeconds > 0 && (code == 429 || code == 503)) {
+            head.append("\r\nRetry-After: ").append(retryAfterSeconds);
+        }
+        head.append("\r\n\r\n");
+        byte[] headBytes = head.toString().getBytes(UTF_8);
+
+        ByteArrayOutputStream response = new ByteArrayOutputStream(
+                headBytes.length + bodyBytes.length);
+        response.write(headBytes);
+        response.write(bodyBytes);
+        writeThrottled(out, response.toByteArray());
+    }
+
+    // Writes the bytes no faster than the bandwidth allows
+    private void writeThrottled(OutputStream out, byte[] bytes)
+            throws IOException, InterruptedException {
+        long rate = bytesPerSecond;
+        if (rate <= 0) {
+            out.write(bytes);
+            out.flush();
+            bytesSent.addAndGet(bytes.length);
+            return;
+        }
+        long start = System.nanoTime();
+        for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, bytes.length - offset);
+            out.write(bytes, offset, length);
+            out.flush();
+            bytesSent.addAndGet(length);
+            // Waits until the bytes written so far are due
+            long dueNanos = (offset + length) * 1000000000L / rate;
+            long aheadMillis = (dueNanos - (System.nanoTime() - start)) / 1000000;
+            if (aheadMillis > 0) {
+                Thread.sleep(aheadMillis);
+            }
+        }
+    }
+
+    // Reads one header line without its line break, null at the end of the stream
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String reasonPhrase(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 400:
+                return "Bad Request";
+            case 429:
+                return "Too Many Requests";
+            case 500:
+                return "Internal Server Error";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status";
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    private static final class Response {
+        final int code;
+        final String body;
+
+        Response(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package stephenkyne.example.org.newsapp;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link ImageLoader}, pictures are served by a small http server
+ * on the device that counts the requests it gets.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageLoaderTest {
+
+    // Size of the served picture, a typical Guardian thumbnail
+    private static final int PICTURE_WIDTH = 800;
+    private static final int PICTURE_HEIGHT = 480;
+
+    // Size of the thumbnail view
+    private static final int VIEW_WIDTH = 120;
+    private static final int VIEW_HEIGHT = 72;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private byte[] picture;
+    private ServerSocket serverSocket;
+    private Thread serverThread;
+    private String pictureUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(PICTURE_WIDTH, PICTURE_HEIGHT,
+                Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLUE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, bytes);
+        picture = bytes.toByteArray();
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        pictureUrl = "http://127.0.0.1:" + serverSocket.getLocalPort() + "/thumbnail.png";
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        });
+        serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        serverSocket.close();
+        serverThread.join();
+    }
+
+    @Test
+    public void decodeSampled_coversTheViewExactly() throws IOException {
+        File file = folder.newFile("thumbnail.png");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(picture);
+        } finally {
+            out.close();
+        }
+
+        Bitmap bitmap = ImageLoader.decodeSampled(file, VIEW_WIDTH, VIEW_HEIGHT);
+        assertEquals(VIEW_WIDTH, bitmap.getWidth(), 1);
+        assertEquals(VIEW_HEIGHT, bitmap.getHeight(), 1);
+        assertEquals(Bitmap.Config.RGB_565, bitmap.getConfig());
+
+        Bitmap fullSize = ImageLoader.decodeSampled(file, 0, 0);
+        assertEquals(PICTURE_WIDTH, fullSize.getWidth());
+        assertEquals(PICTURE_HEIGHT, fullSize.getHeight());
+    }
+
+    @Test
+    public void sameThumbnail_isDownloadedAndDecodedOnce() throws Exception {
+        final ImageLoader loader = new ImageLoader(folder.newFolder("thumbnails"),
+                4 * 1024 * 1024);
+        int callers = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Bitmap>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(new Callable<Bitmap>() {
+                    @Override
+                    public Bitmap call() throws Exception {
+                        start.await();
+                        return loader.getBitmap(pictureUrl, VIEW_WIDTH, VIEW_HEIGHT);
+                    }
+                }));
+            }
+            start.countDown();
+            Bitmap first = results.get(0).get();
+            for (Future<Bitmap> result : results) {
+                assertSame(first, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, requestCount.get());
+        assertEquals(1, loader.getDownloadCount());
+        assertEquals(1, loader.getDecodeCount());
+
+        // Asked again it comes from memory
+        assertSame(loader.getBitmap(pictureUrl, VIEW_WIDTH, VIEW_HEIGHT),
+                loader.getBitmap(pictureUrl, VIEW_WIDTH, VIEW_HEIGHT));
+        assertEquals(1, loader.getDecodeCount());
+    }
+
+    @Test
+    public void otherSize_isDecodedFromTheDiskCache() throws Exception {
+        ImageLoader loader = new ImageLoader(folder.newFolder("thumbnails"), 4 * 1024 * 1024);
+        loader.getBitmap(pictureUrl, VIEW_WIDTH, VIEW_HEIGHT);
+        Bitmap larger = loader.getBitmap(pictureUrl, VIEW_WIDTH * 2, VIEW_HEIGHT * 2);
+
+        assertEquals(VIEW_WIDTH * 2, larger.getWidth(), 1);
+        assertEquals(1, requestCount.get());
+        assertEquals(1, loader.getDiskHitCount());
+        assertEquals(2, loader.getDecodeCount());
+    }
+
+    @Test
+    public void trim_deletesOnlyTemporaryFilesLeftByAKilledProcess() throws Exception {
+        File dir = folder.newFolder("thumbnails");
+        File left = new File(dir, "left.tmp1");
+        File writing = new File(dir, "writing.tmp2");
+        assertTrue(left.createNewFile());
+        assertTrue(writing.createNewFile());
+        assertTrue(left.setLastModified(
+                System.currentTimeMillis() - ImageLoader.TEMP_EXPIRES_MILLIS - 60000));
+
+        // The download trims the cache
+        ImageLoader loader = new ImageLoader(dir, 4 * 1024 * 1024);
+        assertNotNull(loader.getBitmap(pictureUrl, VIEW_WIDTH, VIEW_HEIGHT));
+
+        assertFalse(left.exists());
+        assertTrue(writing.exists());
+        assertEquals(1, loader.getDownloadCount());
+    }
+
+    // Answers every request with the picture, slowly so callers overlap, until closed
+    private void serve() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            try {
+                requestCount.incrementAndGet();
+                InputStream in = socket.getInputStream();
+                // Reads the request up to the empty line that ends the headers
+                int matched = 0;
+                int b;
+                while (matched < 4 && (b = in.read()) != -1) {
+                    matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : 0;
+                }
+                Thread.sleep(200);
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: image/png\r\nContent-Length: "
+                        + picture.length + "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+                out.write(picture);
+                out.flush();
+            } catch (IOException | InterruptedException e) {
+                // The client went away, nothing to answer
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package stephenkyne.example.org.newsapp;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the same load from several threads at once and reports how many loads finished
+ * per second and the p50 and p99 time of one load.
+ * Used with {@link GuardianStandIn} to measure transport and parser changes end to end.
+ */
+final class LoadHarness {
+
+    /**
+     * One load, run by a client thread. A load fails when it throws.
+     */
+    interface Load {
+        void run(int client, int iteration) throws Exception;
+    }
+
+    private LoadHarness() {
+    }
+
+    /**
+     * Runs iterations loads on each of clients threads, all threads start together.
+     * Every load is timed, failed ones are counted but not timed.
+     */
+    static Report run(int clients, final int iterations, final Load load)
+            throws InterruptedException {
+        final long[] latencies = new long[clients * iterations];
+        final AtomicInteger timed = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final Throwable[] firstFailure = new Throwable[1];
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            threads[c] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < iterations; i++) {
+                        long begin = System.nanoTime();
+                        try {
+                            load.run(client, i);
+                            latencies[timed.getAndIncrement()] = System.nanoTime() - begin;
+                        } catch (Throwable e) {
+                            failures.incrementAndGet();
+                            synchronized (firstFailure) {
+                                if (firstFailure[0] == null) {
+                                    firstFailure[0] = e;
+                                }
+                            }
+                        }
+                    }
+                }
+            }, "LoadHarness-" + c);
+            threads[c].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        long[] sorted = Arrays.copyOf(latencies, timed.get());
+        Arrays.sort(sorted);
+        return new Report(clients, sorted, failures.get(), firstFailure[0], elapsed);
+    }
+
+    /**
+     * The result of one run.
+     */
+    static final class Report {
+
+        private final int clients;
+        private final long[] sortedLatencyNanos;
+        private final int failures;
+        private final Throwable firstFailure;
+        private final long elapsedNanos;
+
+        Report(int clients, long[] sortedLatencyNanos, int failures, Throwable firstFailure,
+               long elapsedNanos) {
+            this.clients = clients;
+            this.sortedLatencyNanos = sortedLatencyNanos;
+            this.failures = failures;
+            this.firstFailure = firstFailure;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // Number of loads that worked
+        int getLoads() {
+            return sortedLatencyNanos.length;
+        }
+
+        int getFailures() {
+            return failures;
+        }
+
+        // What the first failed load threw, null if none failed
+        Throwable getFirstFailure() {
+            return firstFailure;
+        }
+
+        // Loads that worked per second of the whole run
+        double getLoadsPerSecond() {
+            return getLoads() * 1e9 / elapsedNanos;
+        }
+
+        // Time of one load that percent of the loads were as fast as, nearest rank
+        double getPercentileMillis(double percent) {
+            if (sortedLatencyNanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percent / 100 * sortedLatencyNanos.length);
+            return sortedLatencyNanos[Math.max(0, rank - 1)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "clients=%d loads=%d failures=%d %.1f loads/s p50=%.1f ms p99=%.1f ms",
+                    clients, getLoads(), failures, getLoadsPerSecond(),
+                    getPercentileMillis(50), getPercentileMillis(99));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package stephenkyne.example.org.newsapp;
+
+import android.util.Log;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks {@link QueryUtils#extractFeatureFromJson} on generated Guardian responses
+ * of 10, 200, 2,000 and 20,000 results.
+ * Time per response is reported by BenchmarkRule. Allocation per article is logged and
+ * checked against {@link #MAX_BYTES_PER_ARTICLE}, it stays the same as the response grows.
+ */
+@RunWith(Parameterized.class)
+public class ParseBenchmark {
+
+    private static final String LOG_TAG = "ParseBenchmark";
+
+    // Most bytes allocated to parse one article, about twice what it takes now
+    private static final long MAX_BYTES_PER_ARTICLE = 4096;
+
+    @Parameterized.Parameters(name = "results={0}")
+    public static List<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{10}, {200}, {2000}, {20000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int resultCount;
+
+    private String payload;
+
+    public ParseBenchmark(int resultCount) {
+        this.resultCount = resultCount;
+    }
+
+    @Before
+    public void setUp() {
+        payload = GuardianPayloads.generate(resultCount);
+        // Checks the parser reads every generated article before timing it
+        assertEquals(resultCount, QueryUtils.extractFeatureFromJson(payload).size());
+    }
+
+    @Test
+    public void extractFeatureFromJson() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            QueryUtils.extractFeatureFromJson(payload);
+        }
+    }
+
+    @Test
+    public void extractFeatureFromJson_allocationPerArticle() {
+        long bytes = AllocationCounter.assertBytesPerRun("results=" + resultCount,
+                MAX_BYTES_PER_ARTICLE * resultCount, new Runnable() {
+                    @Override
+                    public void run() {
+                        QueryUtils.extractFeatureFromJson(payload);
+                    }
+                }, resultCount >= 2000 ? 3 : 20);
+        Log.i(LOG_TAG, "results=" + resultCount + " bytes per article: " + bytes / resultCount);
+    }
+}
@@ -0,0 +1,184 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Benchmarks the work done for every row: date parsing and formatting, trailText sanitizing
+ * and the section color lookup. Each call handles one article.
+ * Time per article is reported by BenchmarkRule. Allocation per article is logged, and for
+ * the app's own code checked against a bound of about twice what it takes now, the
+ * replaced code it is compared with is only logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RowBindBenchmark {
+
+    private static final String LOG_TAG = "RowBindBenchmark";
+
+    // Number of calls averaged for the allocation count
+    private static final int ALLOCATION_RUNS = 1000;
+
+    // Most bytes a call that should not allocate may show, what other threads allocate
+    private static final long NO_ALLOCATION_BYTES = 64;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private ArticleRowFactory rowFactory;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        rowFactory = new ArticleRowFactory(context);
+    }
+
+    @Test
+    public void parseWebDate() {
+        final String webDate = GuardianPayloads.dateMinutesAgo(90);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Timestamps.parseIso8601(webDate);
+        }
+        checkAllocation("parseWebDate", NO_ALLOCATION_BYTES, new Runnable() {
+            @Override
+            public void run() {
+                Timestamps.parseIso8601(webDate);
+            }
+        });
+    }
+
+    // The SimpleDateFormat parse used before Timestamps, kept to compare against parseWebDate
+    @Test
+    public void parseWebDateSimpleDateFormat() throws ParseException {
+        final String webDate = GuardianPayloads.dateMinutesAgo(90);
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            format.parse(webDate);
+        }
+        logAllocation("parseWebDateSimpleDateFormat", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    format.parse(webDate);
+                } catch (ParseException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void formatDate() {
+        final long date = QueryUtils.parseWebDate(GuardianPayloads.dateMinutesAgo(90));
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            ArticleRowFactory.formatDate(date);
+        }
+        checkAllocation("formatDate", 2048, new Runnable() {
+            @Override
+            public void run() {
+                ArticleRowFactory.formatDate(date);
+            }
+        });
+    }
+
+    // The regex used before TrailTextSanitizer, kept to compare against sanitizeTrailText
+    @Test
+    public void removeHtmlTagsRegex() {
+        final String[] trailTexts = GuardianPayloads.TRAIL_TEXTS;
+        BenchmarkState state = benchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            trailTexts[i++ % trailTexts.length].replaceAll("<.*?>", "");
+        }
+        logAllocation("removeHtmlTagsRegex", new Runnable() {
+            @Override
+            public void run() {
+                trailTexts[2].replaceAll("<.*?>", "");
+            }
+        });
+    }
+
+    @Test
+    public void sanitizeTrailText() {
+        final String[] trailTexts = GuardianPayloads.TRAIL_TEXTS;
+        BenchmarkState state = benchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            TrailTextSanitizer.sanitize(trailTexts[i++ % trailTexts.length]);
+        }
+        checkAllocation("sanitizeTrailText", 1024, new Runnable() {
+            @Override
+            public void run() {
+                TrailTextSanitizer.sanitize(trailTexts[2]);
+            }
+        });
+    }
+
+    // Binding a row again, the summary comes from memory
+    @Test
+    public void sanitizeTrailTextCached() {
+        final String[] trailTexts = GuardianPayloads.TRAIL_TEXTS;
+        final String[] ids = new String[trailTexts.length];
+        for (int n = 0; n < ids.length; n++) {
+            ids[n] = "world/2021/may/30/article-" + n;
+        }
+        BenchmarkState state = benchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            int n = i++ % trailTexts.length;
+            TrailTextSanitizer.sanitize(ids[n], trailTexts[n]);
+        }
+        checkAllocation("sanitizeTrailTextCached", NO_ALLOCATION_BYTES, new Runnable() {
+            @Override
+            public void run() {
+                TrailTextSanitizer.sanitize(ids[2], trailTexts[2]);
+            }
+        });
+    }
+
+    @Test
+    public void getSectionColor() {
+        final String[] sections = GuardianPayloads.SECTIONS;
+        BenchmarkState state = benchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            rowFactory.getSectionColor(sections[i++ % sections.length]);
+        }
+        checkAllocation("getSectionColor", NO_ALLOCATION_BYTES, new Runnable() {
+            @Override
+            public void run() {
+                rowFactory.getSectionColor(sections[3]);
+            }
+        });
+    }
+
+    // For the code that was replaced, only logged
+    private static void logAllocation(String name, Runnable code) {
+        long bytes = AllocationCounter.bytesPerRun(code, ALLOCATION_RUNS);
+        Log.i(LOG_TAG, name + " bytes per article: " + bytes);
+    }
+
+    // For the app's code, fails above maxBytes per article
+    private static void checkAllocation(String name, long maxBytes, Runnable code) {
+        long bytes = AllocationCounter.assertBytesPerRun(name, maxBytes, code, ALLOCATION_RUNS);
+        Log.i(LOG_TAG, name + " bytes per article: " + bytes);
+    }
+}
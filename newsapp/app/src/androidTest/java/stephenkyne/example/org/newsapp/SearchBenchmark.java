@@ -0,0 +1,55 @@
+package stephenkyne.example.org.newsapp;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks {@link ArticleIndex#search} over 50,000 indexed articles with a short prefix,
+ * the slowest kind of query. Each search runs on the UI thread as the user types, so it
+ * should take well under a frame, 16 ms. Time per search is reported by BenchmarkRule.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SearchBenchmark {
+
+    private static final int ARTICLES = 50000;
+
+    private static final String[] WORDS = {"election", "football", "climate", "market", "film",
+            "science", "london", "budget", "health", "music", "space", "energy"};
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private ArticleIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ArticleIndex();
+        List<ArticleRow> rows = new ArrayList<>(ARTICLES);
+        for (int i = 0; i < ARTICLES; i++) {
+            String title = WORDS[i % WORDS.length] + " story " + WORDS[(i / 7) % WORDS.length]
+                    + " number" + i;
+            String author = "Author " + (i % 100);
+            Article article = new Article("id" + i, "News", i, title,
+                    "https://www.theguardian.com/id" + i, author, null);
+            rows.add(new ArticleRow(article, title, "News", 0, "", author, "Summary Missing"));
+        }
+        index.addAll(rows);
+    }
+
+    @Test
+    public void searchShortPrefix() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            index.search("e st", 200);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package stephenkyne.example.org.newsapp;
+
+import android.util.Log;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks loading a saved list of 200 and 5,000 articles from a {@link SnapshotStore},
+ * whole, first screen only and compressed, against parsing the same articles again from
+ * a saved Guardian response with {@link QueryUtils#readArticlesFromStream}.
+ * Time per load is reported by BenchmarkRule, the size of each file is logged.
+ */
+@RunWith(Parameterized.class)
+public class SnapshotBenchmark {
+
+    private static final String LOG_TAG = "SnapshotBenchmark";
+
+    private static final String FEED = "https://content.guardianapis.com/search?page=1";
+
+    @Parameterized.Parameters(name = "articles={0}")
+    public static List<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{200}, {5000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FeedStore.Clock clock = new FeedStore.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return 1622419140000L;
+        }
+    };
+
+    private final int articleCount;
+
+    private File jsonFile;
+    private SnapshotStore store;
+    private SnapshotStore compressedStore;
+
+    public SnapshotBenchmark(int articleCount) {
+        this.articleCount = articleCount;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        jsonFile = folder.newFile("feed.json");
+        FileOutputStream out = new FileOutputStream(jsonFile);
+        try {
+            out.write(GuardianPayloads.generate(articleCount).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+        List<Article> articles = readJson();
+        // Checks the parser reads every generated article before timing it
+        assertEquals(articleCount, articles.size());
+
+        File binaryFile = new File(folder.getRoot(), "feed.snapshot");
+        store = new SnapshotStore(binaryFile, clock, false);
+        store.save(FEED, articles);
+        File compressedFile = new File(folder.getRoot(), "feed.snapshot.deflate");
+        compressedStore = new SnapshotStore(compressedFile, clock, true);
+        compressedStore.save(FEED, articles);
+        assertEquals(articleCount, compressedStore.load(FEED).getArticles().size());
+
+        Log.i(LOG_TAG, "articles=" + articleCount + " bytes json=" + jsonFile.length()
+                + " binary=" + binaryFile.length() + " compressed=" + compressedFile.length());
+    }
+
+    @Test
+    public void parseJson() throws IOException {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            readJson();
+        }
+    }
+
+    @Test
+    public void loadSnapshot() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            store.load(FEED).getArticles();
+        }
+    }
+
+    @Test
+    public void loadSnapshot_firstScreen() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            store.load(FEED).getFirstArticles(SnapshotLoader.FIRST_SCREEN_ARTICLES);
+        }
+    }
+
+    @Test
+    public void loadCompressedSnapshot() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            compressedStore.load(FEED).getArticles();
+        }
+    }
+
+    @Test
+    public void loadCompressedSnapshot_firstScreen() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            compressedStore.load(FEED).getFirstArticles(SnapshotLoader.FIRST_SCREEN_ARTICLES);
+        }
+    }
+
+    private List<Article> readJson() throws IOException {
+        InputStream in = new FileInputStream(jsonFile);
+        try {
+            return QueryUtils.readArticlesFromStream(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package stephenkyne.example.org.newsapp;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link SnapshotStore}, with a fake clock.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SnapshotStoreTest {
+
+    private static final String FEED = "https://content.guardianapis.com/world?page=1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final long now = 1622419140000L;
+
+    private final FeedStore.Clock clock = new FeedStore.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    };
+
+    private File file;
+    private SnapshotStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.newFile(SnapshotStore.SNAPSHOT_FILE);
+        store = new SnapshotStore(file, clock);
+    }
+
+    @Test
+    public void savedList_isLoadedBackInOrder() {
+        List<Article> articles = Arrays.asList(
+                new Article("world/1", "World news", now - 60000, "First", "https://g.co/1",
+                        "Jane Doe", "<b>Summary</b> &amp; more"),
+                new Article("world/2", null, Article.NO_DATE, null, "https://g.co/2", null, null));
+        store.save(FEED, articles);
+
+        SnapshotStore.Snapshot snapshot = store.load(FEED);
+        assertNotNull(snapshot);
+        assertEquals(now, snapshot.getSavedAtMillis());
+        List<Article> loaded = snapshot.getArticles();
+        assertEquals(2, loaded.size());
+        Article first = loaded.get(0);
+        assertEquals("world/1", first.getId());
+        assertEquals("World news", first.getSection());
+        assertEquals(now - 60000, first.getPublishedMillis());
+        assertEquals("First", first.getTitle());
+        assertEquals("https://g.co/1", first.getWebUrl());
+        assertEquals("Jane Doe", first.getAuthor());
+        assertEquals("<b>Summary</b> &amp; more", first.getSummary());
+        assertNull(first.getThumbnailUrl());
+        Article second = loaded.get(1);
+        assertNull(second.getSection());
+        assertEquals(Article.NO_DATE, second.getPublishedMillis());
+        assertNull(second.getSummary());
+    }
+
+    @Test
+    public void listOfAnotherFeed_isNotLoaded() {
+        store.save(FEED, Arrays.asList(
+                new Article("world/1", "World news", now, "First", "https://g.co/1", null, null)));
+        assertNull(store.load("https://content.guardianapis.com/sport?page=1"));
+    }
+
+    @Test
+    public void emptyOrMissingFile_isNotLoaded() {
+        assertNull(store.load(FEED));
+    }
+
+    @Test
+    public void compressedList_isLoadedBackInOrder() {
+        List<Article> articles = createArticles(300);
+        new SnapshotStore(file, clock, true).save(FEED, articles);
+
+        SnapshotStore.Snapshot snapshot = store.load(FEED);
+        assertNotNull(snapshot);
+        List<Article> loaded = snapshot.getArticles();
+        assertEquals(300, loaded.size());
+        for (int i = 0; i < loaded.size(); i++) {
+            assertEquals(articles.get(i).getId(), loaded.get(i).getId());
+            assertEquals(articles.get(i).getSection(), loaded.get(i).getSection());
+            assertEquals(articles.get(i).getAuthor(), loaded.get(i).getAuthor());
+            assertEquals(articles.get(i).getSummary(), loaded.get(i).getSummary());
+            assertEquals(articles.get(i).getThumbnailUrl(), loaded.get(i).getThumbnailUrl());
+        }
+    }
+
+    @Test
+    public void firstArticles_areGivenWithoutTheRest() {
+        store.save(FEED, createArticles(50));
+
+        SnapshotStore.Snapshot snapshot = store.load(FEED);
+        assertEquals(50, snapshot.size());
+        List<Article> first = snapshot.getFirstArticles(5);
+        assertEquals(5, first.size());
+        assertEquals("world/4", first.get(4).getId());
+        assertEquals(50, snapshot.getArticles().size());
+        assertEquals(50, snapshot.getFirstArticles(100).size());
+    }
+
+    @Test
+    public void damagedFile_givesTheArticlesBeforeTheDamage() throws IOException {
+        store.save(FEED, createArticles(3));
+        RandomAccessFile damaged = new RandomAccessFile(file, "rw");
+        try {
+            damaged.setLength(damaged.length() - 10);
+        } finally {
+            damaged.close();
+        }
+
+        SnapshotStore.Snapshot snapshot = store.load(FEED);
+        assertNotNull(snapshot);
+        List<Article> loaded = snapshot.getArticles();
+        assertEquals(2, loaded.size());
+        assertEquals("world/1", loaded.get(1).getId());
+        assertEquals(2, snapshot.size());
+    }
+
+    @Test
+    public void fileOfAnotherVersion_isNotLoaded() throws IOException {
+        store.save(FEED, createArticles(3));
+        RandomAccessFile other = new RandomAccessFile(file, "rw");
+        try {
+            // The version follows the four magic bytes
+            other.seek(4);
+            other.write(SnapshotStore.VERSION + 1);
+        } finally {
+            other.close();
+        }
+        assertNull(store.load(FEED));
+    }
+
+    @Test
+    public void articleCountLargerThanTheFile_isNotLoaded() throws IOException {
+        // No articles, so the count is the last byte and can be written over
+        byte[] empty = SnapshotStore.encode(FEED, now, new ArrayList<Article>(), false);
+        RandomAccessFile damaged = new RandomAccessFile(file, "rw");
+        try {
+            damaged.write(empty, 0, empty.length - 1);
+            // Integer.MAX_VALUE as a varint
+            damaged.write(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+            damaged.write(new byte[64]);
+        } finally {
+            damaged.close();
+        }
+        assertNull(store.load(FEED));
+    }
+
+    @Test
+    public void oldJsonSnapshot_isRemovedOnSave() throws IOException {
+        File legacy = folder.newFile(SnapshotStore.LEGACY_SNAPSHOT_FILE);
+        store.save(FEED, createArticles(1));
+        assertFalse(legacy.exists());
+    }
+
+    // Articles in a few sections, by a few authors, with the odd missing value
+    static List<Article> createArticles(int count) {
+        String[] sections = {"World news", "Sport", "Culture", null};
+        String[] authors = {"Jane Doe", "John Roe", "Ana Lima", null, "Kim Park"};
+        List<Article> articles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            articles.add(new Article("world/" + i, sections[i % sections.length],
+                    1622419140000L - i * 60000L, "Title of article " + i,
+                    "https://www.theguardian.com/world/" + i, authors[i % authors.length],
+                    i % 7 == 0 ? null : "A summary of article " + i + " \u2013 caf\u00e9 &amp; more",
+                    i % 3 == 0 ? null : "https://media.guim.co.uk/" + i + "/500.jpg"));
+        }
+        return articles;
+    }
+}
@@ -0,0 +1,152 @@
+package stephenkyne.example.org.newsapp;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link QueryUtils#readArticlesFromStream}, the parser that reads a
+ * response straight off the connection.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StreamingParseTest {
+
+    private static final String LOG_TAG = "StreamingParseTest";
+
+    // The heap is measured each time this many bytes have been read
+    private static final int SAMPLE_BYTES = 64 * 1024;
+
+    @Test
+    public void truncatedBody_throws() throws Exception {
+        byte[] payload = GuardianPayloads.generate(20).getBytes(StandardCharsets.UTF_8);
+        // Cut inside a string, between values and before the last brace
+        int[] lengths = {payload.length / 4, payload.length / 2, payload.length - 3,
+                payload.length - 1};
+        for (int length : lengths) {
+            try {
+                QueryUtils.readArticlesFromStream(
+                        new ByteArrayInputStream(Arrays.copyOf(payload, length)));
+                fail("A body cut at " + length + " is not a whole page");
+            } catch (IOException expected) {
+                // The connection ended early, nothing is kept
+            }
+        }
+    }
+
+    @Test
+    public void connectionReset_throws() throws Exception {
+        byte[] payload = GuardianPayloads.generate(20).getBytes(StandardCharsets.UTF_8);
+        final int resetAt = payload.length / 2;
+        InputStream resetting = new FilterInputStream(new ByteArrayInputStream(payload)) {
+            private int read;
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (read >= resetAt) {
+                    throw new IOException("Connection reset");
+                }
+                int n = super.read(buffer, offset, Math.min(length, resetAt - read));
+                read += Math.max(n, 0);
+                return n;
+            }
+        };
+        try {
+            QueryUtils.readArticlesFromStream(resetting);
+            fail("A reset connection is not a whole page");
+        } catch (IOException expected) {
+            assertEquals("Connection reset", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void malformedJson_keepsTheArticlesReadSoFar() throws Exception {
+        // Something that is not JSON after the fifth result
+        String payload = GuardianPayloads.generate(10);
+        int fifth = 0;
+        for (int i = 0; i < 5; i++) {
+            fifth = payload.indexOf(",{\"id\":", fifth + 1);
+        }
+        String broken = payload.substring(0, fifth + 1) + "x" + payload.substring(fifth + 1);
+        List<Article> articles = QueryUtils.readArticlesFromStream(
+                new ByteArrayInputStream(broken.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(5, articles.size());
+    }
+
+    /**
+     * The heap used while parsing, less the articles it returns, stays the same whatever the
+     * page size: the body is never held whole. Per article the peak is flat.
+     */
+    @Test
+    public void peakHeapPerArticle_staysFlatAsThePageGrows() throws Exception {
+        long[] small = measureParse(1000);
+        long[] large = measureParse(20000);
+        long smallPerArticle = small[0] / 1000;
+        long largePerArticle = large[0] / 20000;
+        Log.i(LOG_TAG, "peak bytes per article: 1,000 results " + smallPerArticle
+                + ", 20,000 results " + largePerArticle
+                + ", working set " + small[1] + " / " + large[1]);
+
+        assertTrue("peak per article grew from " + smallPerArticle + " to " + largePerArticle,
+                largePerArticle <= smallPerArticle * 3 / 2);
+        // A copy of the 20,000 result body would be several MB on its own
+        assertTrue("working set " + large[1], large[1] < large[2] / 10);
+    }
+
+    /**
+     * Parses a generated page of the given size and returns, in bytes, the peak heap used
+     * while parsing, the part of that peak not taken by the returned articles, and the size
+     * of the body.
+     */
+    private static long[] measureParse(int resultCount) throws IOException {
+        byte[] payload = GuardianPayloads.generate(resultCount).getBytes(StandardCharsets.UTF_8);
+        long baseline = AllocationCounter.usedHeapAfterGc();
+        PeakHeapInputStream in = new PeakHeapInputStream(new ByteArrayInputStream(payload),
+                baseline);
+        List<Article> articles = QueryUtils.readArticlesFromStream(in);
+        assertEquals(resultCount, articles.size());
+        long retained = AllocationCounter.usedHeapAfterGc() - baseline;
+        long peak = Math.max(in.getPeak(), retained);
+        return new long[]{peak, Math.max(0, peak - retained), payload.length};
+    }
+
+    // Measures the heap in use above a baseline each time SAMPLE_BYTES have been read
+    private static final class PeakHeapInputStream extends FilterInputStream {
+
+        private final long baseline;
+        private long untilSample = SAMPLE_BYTES;
+        private long peak;
+
+        PeakHeapInputStream(InputStream in, long baseline) {
+            super(in);
+            this.baseline = baseline;
+        }
+
+        long getPeak() {
+            return peak;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            untilSample -= Math.max(n, 0);
+            if (untilSample <= 0) {
+                untilSample = SAMPLE_BYTES;
+                peak = Math.max(peak, AllocationCounter.usedHeapAfterGc() - baseline);
+            }
+            return n;
+        }
+    }
+}
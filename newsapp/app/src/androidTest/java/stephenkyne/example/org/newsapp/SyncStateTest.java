@@ -0,0 +1,70 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link SyncState}, each test uses a section of its own.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncStateTest {
+
+    private final long now = 1622419140000L;
+
+    private Context context;
+    private SyncState syncState;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        syncState = SyncState.getInstance(context);
+    }
+
+    @Test
+    public void update_isOnlySavedWhenTheListIsDelivered() {
+        String section = "sync-test-" + System.nanoTime();
+        String url = ArticleQuery.buildDeltaUrl(context, section, now - 60000,
+                RefreshLoader.DELTA_PAGE_SIZE);
+        List<Article> articles = Arrays.asList(
+                new Article(section + "/1", "News", now - 30000, "First", "https://g.co/1",
+                        null, null),
+                new Article(section + "/2", "News", now, "Second", "https://g.co/2", null, null));
+
+        SyncState.Update update = syncState.newUpdate();
+        update.add(url, articles);
+        // A later section failed and the list was never shown
+        assertEquals(Article.NO_DATE, syncState.getNewestMillis(section));
+
+        update.save();
+        assertEquals(now, syncState.getNewestMillis(section));
+    }
+
+    @Test
+    public void update_keepsTheNewerDate() {
+        String section = "sync-test-" + System.nanoTime();
+        SyncState.Update first = syncState.newUpdate();
+        first.add(ArticleQuery.buildDeltaUrl(context, section, now - 60000,
+                RefreshLoader.DELTA_PAGE_SIZE), Arrays.asList(new Article(section + "/1",
+                "News", now, "First", "https://g.co/1", null, null)));
+        first.save();
+
+        // Delivered late, an older date does not replace the newer one
+        SyncState.Update older = syncState.newUpdate();
+        older.add(ArticleQuery.buildDeltaUrl(context, section, now - 120000,
+                RefreshLoader.DELTA_PAGE_SIZE), Arrays.asList(new Article(section + "/0",
+                "News", now - 90000, "Older", "https://g.co/0", null, null)));
+        older.save();
+        assertEquals(now, syncState.getNewestMillis(section));
+    }
+}
@@ -0,0 +1,168 @@
+package stephenkyne.example.org.newsapp;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the {@link BlockingTransport} with the {@link NioTransport} for 1 to 50 requests
+ * in flight at once, against a {@link GuardianStandIn} that waits 50 ms before answering,
+ * like a server across the network.
+ * A blocking request runs on a thread of its own, the way each loader runs its request on
+ * its own thread. NIO requests are all started from the test thread, which does not wait
+ * for them, and end on the transport's own threads.
+ * For each round every request is started at once and the round ends when the last one is
+ * back. The time of one request and the rounds per second are logged.
+ */
+@RunWith(Parameterized.class)
+public class TransportBenchmark {
+
+    private static final String LOG_TAG = "TransportBenchmark";
+
+    // Time the stand-in waits before each answer, in milliseconds
+    private static final int SERVER_LATENCY_MILLIS = 50;
+
+    private static final int PAGE_SIZE = 20;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 20;
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    @Parameterized.Parameters(name = "{0} requests={1}")
+    public static List<Object[]> cases() {
+        List<Object[]> cases = new ArrayList<>();
+        for (String transport : Arrays.asList(BlockingTransport.NAME, NioTransport.NAME)) {
+            for (int concurrency : new int[]{1, 5, 10, 25, 50}) {
+                cases.add(new Object[]{transport, concurrency});
+            }
+        }
+        return cases;
+    }
+
+    private final String transportName;
+    private final int concurrency;
+
+    private GuardianStandIn standIn;
+    private ArticleTransport transport;
+
+    // A thread per request for the blocking transport, null for the NIO one
+    private ExecutorService threads;
+
+    public TransportBenchmark(String transportName, int concurrency) {
+        this.transportName = transportName;
+        this.concurrency = concurrency;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        standIn = new GuardianStandIn(1000);
+        standIn.setLatencyMillis(SERVER_LATENCY_MILLIS);
+        transport = QueryUtils.getTransport(transportName);
+        if (BlockingTransport.NAME.equals(transportName)) {
+            threads = Executors.newFixedThreadPool(concurrency);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (threads != null) {
+            threads.shutdownNow();
+        }
+        standIn.close();
+    }
+
+    @Test
+    public void concurrentRequests() throws Exception {
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            runRound(round, null);
+        }
+
+        long[] latencies = new long[ROUNDS * concurrency];
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            runRound(round, latencies);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        LoadHarness.Report report = new LoadHarness.Report(concurrency, latencies, 0, null,
+                elapsed);
+        Log.i(LOG_TAG, transportName + " requests=" + concurrency + ": " + report
+                + " rounds/s=" + String.format(Locale.US, "%.1f", ROUNDS * 1e9 / elapsed));
+        if (transport instanceof NioTransport) {
+            // Connections opened and reused over every case so far
+            Log.i(LOG_TAG, transport.toString());
+        }
+    }
+
+    /**
+     * Starts concurrency requests and waits for all of them.
+     *
+     * @param latencies the time of each request is put here, at round * concurrency + i
+     */
+    private void runRound(int round, final long[] latencies) throws Exception {
+        final CountDownLatch finished = new CountDownLatch(concurrency);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < concurrency; i++) {
+            final int slot = round * concurrency + i;
+            final long begin = System.nanoTime();
+            final URL url = new URL(standIn.buildUrl("world", 1 + i % 10, PAGE_SIZE, "newest"));
+            final ArticleTransport.Callback<List<Article>> callback =
+                    new ArticleTransport.Callback<List<Article>>() {
+                        @Override
+                        public void onResult(List<Article> articles) {
+                            if (latencies != null) {
+                                latencies[slot] = System.nanoTime() - begin;
+                            }
+                            if (articles.size() != PAGE_SIZE) {
+                                failures.incrementAndGet();
+                            }
+                            finished.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(FetchException failure) {
+                            Log.e(LOG_TAG, "Request failed", failure);
+                            failures.incrementAndGet();
+                            finished.countDown();
+                        }
+                    };
+            if (threads == null) {
+                // Returns at once, the callback is told on a transport thread
+                startRequest(url, callback);
+            } else {
+                threads.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Returns once the request is done, the callback was told by then
+                        startRequest(url, callback);
+                    }
+                });
+            }
+        }
+        finished.await();
+        assertEquals(0, failures.get());
+    }
+
+    private void startRequest(URL url, ArticleTransport.Callback<List<Article>> callback) {
+        transport.fetch(url, null, TIMEOUT_MILLIS, TIMEOUT_MILLIS,
+                SystemClock.elapsedRealtime() + TIMEOUT_MILLIS, null, callback);
+    }
+}
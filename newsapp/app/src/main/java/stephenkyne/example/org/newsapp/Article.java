@@ -2,40 +2,74 @@ package stephenkyne.example.org.newsapp;
 
 public class Article {
 
-    private String articleSection;
+    // Publication time used when the article has no date, or it could not be read
+    public static final long NO_DATE = Long.MIN_VALUE;
 
-    private String articleWebDate;
+    // Guardian content id, for example "world/2021/may/30/story", same for every page and section
+    private final String articleId;
 
-    private String articleTitle;
+    // Section and author names repeat across most of a page, so one shared String is kept
+    // for each name instead of a copy per article.
+    private final String articleSection;
 
-    private String articleWebUrl;
+    // Published time in milliseconds since 1970-01-01 UTC, NO_DATE if missing
+    private final long articlePublishedMillis;
 
-    private String articleAuthor;
+    private final String articleTitle;
 
-    private String articleSummary;
+    private final String articleWebUrl;
+
+    private final String articleAuthor;
+
+    private final String articleSummary;
+
+    // Web address of a small picture of the article, null if there is none
+    private final String articleThumbnailUrl;
+
+    // An article without a thumbnail
+    public Article (String id, String section, long publishedMillis, String title, String webUrl,
+                    String author, String summary){
+        this(id, section, publishedMillis, title, webUrl, author, summary, null);
+    }
 
     // From JSON
-    // sectionName, webPublicationDate, webTitle ( Article title), webUrl, webTitle (author Name),
-    // trailText (Summary of article).
-    public Article (String section, String webDate, String title, String webUrl, String author,
-                    String summary){
-        articleSection = section;
-        articleWebDate = webDate;
+    // id, sectionName, webPublicationDate, webTitle ( Article title), webUrl,
+    // webTitle (author Name), trailText (Summary of article), thumbnail.
+    public Article (String id, String section, long publishedMillis, String title, String webUrl,
+                    String author, String summary, String thumbnailUrl){
+        // The web address is unique too, used if the id is missing
+        articleId = id != null ? id : webUrl;
+        articleSection = intern(section);
+        articlePublishedMillis = publishedMillis;
         articleTitle = title;
         articleWebUrl = webUrl;
-        articleAuthor = author;
+        articleAuthor = intern(author);
         articleSummary = summary;
+        articleThumbnailUrl = thumbnailUrl;
 
     }
 
+    // Gives back the one shared copy of the String, the copy read from the JSON can be freed.
+    // The runtime only keeps weak references to interned Strings, names no longer used go away.
+    private static String intern(String text) {
+        return text != null ? text.intern() : null;
+    }
+
+    // Gets the Guardian content id of the article, stays the same when the article moves
+    // between pages or shows in more than one section
+    public String getId(){
+        return articleId;
+    }
+
     // Gets the section the article is in, example, "Sport", "World news"
     public String getSection(){
         return articleSection;
     }
 
-    // Gets the date the article was published in UTC time.
-    public String getWebDate(){
-        return articleWebDate;
+    // Gets the time the article was published, milliseconds since 1970-01-01 UTC,
+    // or NO_DATE if it is missing
+    public long getPublishedMillis(){
+        return articlePublishedMillis;
     }
 
     // Gets the Title of article
@@ -53,6 +87,11 @@ public class Article {
         return articleAuthor;
     }
 
+    // Gets the web address of the article's thumbnail, null if it has none
+    public String getThumbnailUrl(){
+        return articleThumbnailUrl;
+    }
+
     // Gets gets the trailText, Summary text of the article
     public String getSummary(){
         return articleSummary;
@@ -0,0 +1,610 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gets the text of articles for the {@link ReaderActivity}.
+ * The text of the first rows on screen is downloaded ahead of time on one thread of the
+ * lowest priority, and saved gzip compressed in a disk cache of bounded size, so opening one
+ * of those articles reads a small file instead of waiting for the network.
+ * Opening an article whose text is still downloading joins that download, one that is
+ * only queued is taken off the queue and downloaded at once. Downloads go through
+ * {@link QueryUtils#fetchBodyText}, with the transport, retries and circuit breaker of
+ * every other request.
+ * Counters tell how many opens found their text prefetched, and how many downloaded
+ * bytes were thrown away without being read.
+ * The lock is only held to update the maps, file checks, reads and the trim of the disk
+ * cache are done without it, so {@link #prefetch} on the UI thread never waits for them.
+ */
+public final class ArticleBodies {
+
+    // LOG TAG
+    private static final String LOG_TAG = "ArticleBodies Error: ";
+
+    // Rows from the top of the screen whose text is downloaded ahead of time
+    static final int PREFETCH_COUNT = 5;
+
+    // Most bytes of compressed text kept on disk, the least recently used go first
+    static final long DISK_CACHE_BYTES = 2 * 1024 * 1024;
+
+    // Folder inside the app cache directory where the text is saved
+    static final String DISK_CACHE_DIR = "bodies";
+
+    // Ending of a text that is still being downloaded
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // A temporary file older than this was left by a process that was killed, in milliseconds
+    static final long TEMP_EXPIRES_MILLIS = 10 * 60 * 1000;
+
+    private static ArticleBodies instance;
+
+    private final File diskCacheDir;
+
+    private final long diskCacheBytes;
+
+    // Where the articles are asked for, the Guardian API or a stand-in in tests
+    private final String baseUrl;
+
+    // One thread, prefetching never competes with the loaders or an open
+    private final ThreadPoolExecutor executor;
+
+    // Downloads running or queued by article id, guarded by "this"
+    private final Map<String, Download> inFlight = new HashMap<>();
+
+    // Bytes downloaded for each prefetched text that was not opened yet, by file name.
+    // Guarded by "this".
+    private final Map<String, Long> unopenedPrefetches = new HashMap<>();
+
+    // Names of the files being read by an open, not deleted by the trim. Guarded by "this".
+    private final Set<String> reading = new HashSet<>();
+
+    // Only one trim of the disk cache runs at a time, taken before "this"
+    private final Object trimLock = new Object();
+
+    // Counters, written to the load metrics dump
+    private final AtomicLong openCount = new AtomicLong();
+    private final AtomicLong prefetchHitCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong downloadCount = new AtomicLong();
+    private final AtomicLong prefetchCount = new AtomicLong();
+    private final AtomicLong prefetchBytes = new AtomicLong();
+    private final AtomicLong wastedBytes = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    ArticleBodies(File diskCacheDir, long diskCacheBytes, String baseUrl) {
+        this.diskCacheDir = diskCacheDir;
+        this.diskCacheBytes = diskCacheBytes;
+        this.baseUrl = baseUrl;
+        executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                // Text nobody asked for yet waits behind everything else
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                                runnable.run();
+                            }
+                        }, "ArticleBodies");
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // Gets the one cache used by the whole app
+    public static synchronized ArticleBodies getInstance(Context context) {
+        if (instance == null) {
+            instance = new ArticleBodies(
+                    new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIR),
+                    DISK_CACHE_BYTES, MainActivity.ARTICLE_JSON_BASE_URL);
+        }
+        return instance;
+    }
+
+    /**
+     * Downloads the text of the first {@link #PREFETCH_COUNT} articles ahead of time, in order.
+     * Texts downloading are skipped, texts already on disk are skipped by the prefetch thread.
+     * Queued prefetches of articles that are not in the list any more are dropped, one
+     * already downloading is finished. Touches no files, it can be called on the UI thread.
+     */
+    public void prefetch(List<Article> articles) {
+        Set<String> wanted = new LinkedHashSet<>();
+        for (Article article : articles) {
+            if (wanted.size() == PREFETCH_COUNT) {
+                break;
+            }
+            if (article.getId() != null) {
+                wanted.add(article.getId());
+            }
+        }
+
+        synchronized (this) {
+            Iterator<Download> downloads = inFlight.values().iterator();
+            while (downloads.hasNext()) {
+                Download download = downloads.next();
+                // remove() only succeeds for a download that has not started
+                if (download.prefetch && download.waiting == 0 && !wanted.contains(download.id)
+                        && executor.remove(download.task)) {
+                    downloads.remove();
+                    droppedCount.incrementAndGet();
+                }
+            }
+
+            for (String id : wanted) {
+                if (inFlight.containsKey(id)) {
+                    continue;
+                }
+                Download download = new Download(id, true);
+                inFlight.put(id, download);
+                executor.execute(download.task);
+            }
+        }
+    }
+
+    // Same as getBody(String, CancellationSignal, boolean), counted as an open
+    public String getBody(String articleId, CancellationSignal signal) throws FetchException {
+        return getBody(articleId, signal, true);
+    }
+
+    /**
+     * Gets the text of the article, from the disk cache, from a download already running,
+     * or from a new download run on the calling thread. Empty when the article has none.
+     * Not for the UI thread.
+     *
+     * @param signal    cancelling it stops the download when nothing else waits for it,
+     *                  may be null
+     * @param countOpen false when the same open asks again, after its loader was restarted,
+     *                  so the open and its hit are only counted once
+     * @throws FetchException if the text could not be downloaded
+     * @throws OperationCanceledException when the signal was cancelled
+     */
+    public String getBody(String articleId, CancellationSignal signal, boolean countOpen)
+            throws FetchException {
+        if (countOpen) {
+            openCount.incrementAndGet();
+        }
+        return readOrDownload(articleId, signal, countOpen);
+    }
+
+    private String readOrDownload(String articleId, CancellationSignal signal,
+                                  boolean countOpen) throws FetchException {
+        // Hashed and looked up without the lock, the UI thread may be waiting for it
+        File file = fileFor(articleId);
+        boolean saved = file.isFile();
+        Download download;
+        boolean owner = false;
+        // Counted once the text is back
+        AtomicLong counter;
+        synchronized (this) {
+            download = inFlight.get(articleId);
+            if (download == null) {
+                if (saved) {
+                    // Not deleted by the trim until it has been read
+                    reading.add(file.getName());
+                    counter = unopenedPrefetches.remove(file.getName()) != null
+                            ? prefetchHitCount : diskHitCount;
+                } else {
+                    counter = downloadCount;
+                    download = new Download(articleId, false);
+                    inFlight.put(articleId, download);
+                    owner = true;
+                }
+            } else if (download.prefetch && executor.remove(download.task)) {
+                // Queued behind other prefetches, it is downloaded now on this thread instead
+                counter = downloadCount;
+                download.prefetch = false;
+                owner = true;
+            } else {
+                counter = download.prefetch && !download.opened
+                        ? prefetchHitCount : downloadCount;
+                download.opened = true;
+                unopenedPrefetches.remove(file.getName());
+            }
+            if (download != null) {
+                download.waiting++;
+            }
+        }
+        if (!countOpen) {
+            counter = null;
+        }
+
+        if (download == null) {
+            try {
+                // The least recently read texts are trimmed first
+                file.setLastModified(System.currentTimeMillis());
+                String body = readFile(file);
+                count(counter);
+                return body;
+            } catch (IOException e) {
+                if (!file.exists()) {
+                    // Trimmed between the look up and the read, it is downloaded again
+                    return readOrDownload(articleId, signal, countOpen);
+                }
+                Log.e(LOG_TAG, "Problem reading the saved text: " + file, e);
+                // The file is damaged, it is downloaded again on the next open
+                if (!file.delete()) {
+                    Log.e(LOG_TAG, "Can not delete " + file);
+                }
+                throw new FetchException(FetchException.Kind.NETWORK,
+                        "saved text could not be read", e);
+            } finally {
+                synchronized (this) {
+                    reading.remove(file.getName());
+                }
+            }
+        }
+
+        final Download joined = download;
+        if (signal != null) {
+            // Called at once if the signal is already cancelled
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    stopWaiting(joined);
+                }
+            });
+        }
+        String body = null;
+        boolean alreadySaved = false;
+        try {
+            if (owner) {
+                // The first caller does the download on its own thread
+                download.task.run();
+            }
+            body = download.task.get();
+            alreadySaved = body == null;
+        } catch (CancellationException e) {
+            throw new OperationCanceledException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OperationCanceledException) {
+                throw (OperationCanceledException) e.getCause();
+            }
+            if (e.getCause() instanceof FetchException) {
+                throw (FetchException) e.getCause();
+            }
+            throw new FetchException(FetchException.Kind.NETWORK, "body problem", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FetchException(FetchException.Kind.NETWORK, "body interrupted", e);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+            count(alreadySaved && counter != null ? diskHitCount : counter);
+        }
+        if (signal != null) {
+            // The download finished for the other callers after this one gave up
+            signal.throwIfCanceled();
+        }
+        if (alreadySaved) {
+            // The text was on disk before the download started, it is read from there
+            return readOrDownload(articleId, signal, false);
+        }
+        return body;
+    }
+
+    private static void count(AtomicLong counter) {
+        if (counter != null) {
+            counter.incrementAndGet();
+        }
+    }
+
+    // A caller gave up. A download it started is stopped when nobody else waits for it,
+    // a prefetch it joined is finished anyway.
+    private void stopWaiting(Download download) {
+        synchronized (this) {
+            download.waiting--;
+            if (download.waiting > 0 || download.prefetch) {
+                return;
+            }
+            if (inFlight.get(download.id) == download) {
+                inFlight.remove(download.id);
+            }
+        }
+        download.signal.cancel();
+    }
+
+    // Called when a download ends, on the thread that ran it. One that saved its text
+    // is already gone.
+    private synchronized void onDownloadDone(Download download) {
+        if (inFlight.get(download.id) == download) {
+            inFlight.remove(download.id);
+        }
+    }
+
+    // Downloads the text and saves it compressed, nothing is left behind if it fails.
+    // Null when the text was already saved, a prefetch is queued without looking.
+    private String download(Download download) throws FetchException {
+        File file = fileFor(download.id);
+        if (file.isFile()) {
+            synchronized (this) {
+                if (inFlight.get(download.id) == download) {
+                    inFlight.remove(download.id);
+                }
+            }
+            return null;
+        }
+        File temp = new File(file.getPath() + TEMP_SUFFIX + Thread.currentThread().getId());
+        String url = ArticleQuery.buildBodyUrl(baseUrl, download.id);
+        // Bytes on the wire, to know what a prefetch that is never read cost
+        AtomicLong counted = new AtomicLong();
+        String body;
+        try {
+            // A prefetch is not worth a retry, the open downloads it again if it fails
+            body = QueryUtils.fetchBodyText(url,
+                    download.prefetch ? FetchPolicy.SINGLE_ATTEMPT : FetchPolicy.DEFAULT,
+                    download.signal, counted);
+            if (body == null) {
+                body = "";
+            }
+            if (!diskCacheDir.isDirectory() && !diskCacheDir.mkdirs()) {
+                throw new IOException("Can not create " + diskCacheDir);
+            }
+            writeFile(temp, body);
+            if (!temp.renameTo(file)) {
+                throw new IOException("Can not save " + file);
+            }
+        } catch (FetchException e) {
+            countWasted(download, counted);
+            throw e;
+        } catch (IOException e) {
+            countWasted(download, counted);
+            throw new FetchException(FetchException.Kind.NETWORK, "body not saved: " + url, e);
+        } finally {
+            if (temp.exists() && !temp.delete()) {
+                Log.e(LOG_TAG, "Can not delete " + temp);
+            }
+        }
+
+        synchronized (this) {
+            // From now on an open reads the file, and is counted by it
+            if (inFlight.get(download.id) == download) {
+                inFlight.remove(download.id);
+            }
+            if (download.prefetch && !download.opened) {
+                unopenedPrefetches.put(file.getName(), counted.get());
+            }
+        }
+        // On the download thread without the lock, opens and prefetch do not wait for it
+        trimDiskCache();
+        if (download.prefetch) {
+            prefetchCount.incrementAndGet();
+            prefetchBytes.addAndGet(counted.get());
+        }
+        return body;
+    }
+
+    // The bytes a failed prefetch read were for nothing
+    private void countWasted(Download download, AtomicLong counted) {
+        if (download.prefetch) {
+            wastedBytes.addAndGet(counted.get());
+        }
+    }
+
+    /**
+     * Deletes the least recently used texts until the cache fits in its size.
+     * A prefetched text deleted before it was opened counts as wasted bytes.
+     * Temporary files being written are not counted, ones left by a killed process are
+     * deleted. The lock is only taken for each delete, a text being read is kept.
+     */
+    private void trimDiskCache() {
+        synchronized (trimLock) {
+            File[] files = diskCacheDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long total = 0;
+            List<SavedText> texts = new ArrayList<>(files.length);
+            for (File file : files) {
+                long lastModified = file.lastModified();
+                if (file.getName().contains(TEMP_SUFFIX)) {
+                    if (now - lastModified > TEMP_EXPIRES_MILLIS && !file.delete()) {
+                        Log.e(LOG_TAG, "Can not delete " + file);
+                    }
+                    continue;
+                }
+                SavedText text = new SavedText(file, file.length(), lastModified);
+                total += text.length;
+                texts.add(text);
+            }
+            if (total <= diskCacheBytes) {
+                return;
+            }
+            Collections.sort(texts, new Comparator<SavedText>() {
+                @Override
+                public int compare(SavedText a, SavedText b) {
+                    return Long.compare(a.lastModified, b.lastModified);
+                }
+            });
+            for (SavedText text : texts) {
+                if (total <= diskCacheBytes) {
+                    break;
+                }
+                String name = text.file.getName();
+                synchronized (this) {
+                    if (reading.contains(name) || !text.file.delete()) {
+                        continue;
+                    }
+                    Long downloaded = unopenedPrefetches.remove(name);
+                    if (downloaded != null) {
+                        wastedBytes.addAndGet(downloaded);
+                    }
+                }
+                total -= text.length;
+            }
+        }
+    }
+
+    // The saved text of an article, named by a hash of its id
+    private File fileFor(String articleId) {
+        return new File(diskCacheDir, FeedStore.sha1Hex(articleId));
+    }
+
+    // Writes the text gzip compressed, plain text shrinks to about a third
+    static void writeFile(File file, String body) throws IOException {
+        OutputStream out = new GZIPOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), QueryUtils.BUFFER_SIZE));
+        try {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    static String readFile(File file) throws IOException {
+        InputStream in = new GZIPInputStream(new FileInputStream(file), QueryUtils.BUFFER_SIZE);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length() * 3);
+            byte[] buffer = new byte[QueryUtils.BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Number of articles opened in the reader
+    public long getOpenCount() {
+        return openCount.get();
+    }
+
+    // Number of opens whose text was prefetched, on disk or still downloading
+    public long getPrefetchHitCount() {
+        return prefetchHitCount.get();
+    }
+
+    // Number of opens whose text was on disk from an earlier open
+    public long getDiskHitCount() {
+        return diskHitCount.get();
+    }
+
+    // Number of opens that had to wait for a download of their own
+    public long getDownloadCount() {
+        return downloadCount.get();
+    }
+
+    // Part of the opens that found their text prefetched, 0 before the first open
+    public double getPrefetchHitRate() {
+        long opens = getOpenCount();
+        return opens == 0 ? 0 : (double) getPrefetchHitCount() / opens;
+    }
+
+    // Number of texts prefetched, and their bytes on the wire
+    public long getPrefetchCount() {
+        return prefetchCount.get();
+    }
+
+    public long getPrefetchBytes() {
+        return prefetchBytes.get();
+    }
+
+    // Bytes prefetched that were never read: deleted from the cache before they were
+    // opened, or part of a prefetch that failed
+    public long getWastedBytes() {
+        return wastedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ArticleBodies opens: " + getOpenCount()
+                + " prefetch hits: " + getPrefetchHitCount()
+                + String.format(Locale.US, " (%.0f%%)", getPrefetchHitRate() * 100)
+                + " disk hits: " + getDiskHitCount()
+                + " downloads: " + getDownloadCount()
+                + " prefetched: " + getPrefetchCount() + " (" + getPrefetchBytes() + " bytes)"
+                + " wasted bytes: " + getWastedBytes()
+                + " dropped: " + droppedCount.get();
+    }
+
+    /**
+     * A file of the disk cache with its size and last use, read once for the trim.
+     */
+    private static final class SavedText {
+
+        final File file;
+        final long length;
+        final long lastModified;
+
+        SavedText(File file, long length, long lastModified) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * One download of the text of one article, and the number of opens waiting for it.
+     */
+    private final class Download {
+
+        final String id;
+        final CancellationSignal signal = new CancellationSignal();
+        final FutureTask<String> task;
+
+        // Started ahead of time rather than by an open, guarded by the ArticleBodies
+        boolean prefetch;
+
+        // An open has waited for this prefetch, guarded by the ArticleBodies
+        boolean opened;
+
+        // Opens waiting, guarded by the ArticleBodies
+        int waiting;
+
+        Download(String id, boolean prefetch) {
+            this.id = id;
+            this.prefetch = prefetch;
+            task = new FutureTask<String>(new Callable<String>() {
+                @Override
+                public String call() throws FetchException {
+                    return download(Download.this);
+                }
+            }) {
+                @Override
+                protected void done() {
+                    onDownloadDone(Download.this);
+                }
+            };
+        }
+    }
+}
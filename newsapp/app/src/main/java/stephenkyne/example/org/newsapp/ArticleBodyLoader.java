@@ -0,0 +1,41 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+
+/**
+ * Loads the text of one article for the {@link ReaderActivity} from {@link ArticleBodies}.
+ * The text is kept by the {@link CancellableLoader}, so rotating the reader shows it again
+ * without reading it again. Cancelling the load stops a download nobody else is waiting for.
+ */
+public class ArticleBodyLoader extends CancellableLoader<String> {
+
+    /** Id of the article, "world/2021/may/31/story" */
+    private final String articleId;
+
+    /** True once the open was counted, a restarted load is not counted again */
+    private boolean counted;
+
+    public ArticleBodyLoader(Context context, String articleId) {
+        super(context);
+        this.articleId = articleId;
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    protected String load(CancellationSignal signal) {
+        boolean countOpen = !counted;
+        counted = true;
+        try {
+            String body = ArticleBodies.getInstance(getContext())
+                    .getBody(articleId, signal, countOpen);
+            setError(null);
+            return body;
+        } catch (FetchException e) {
+            setError(e);
+            return null;
+        }
+    }
+}
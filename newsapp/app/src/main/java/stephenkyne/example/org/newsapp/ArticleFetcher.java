@@ -0,0 +1,235 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide way to get the articles for a query URL.
+ * Callers asking for a URL that is already being fetched wait for that fetch instead of
+ * starting their own, and a result younger than {@link #FRESH_FOR_MILLIS} is given back
+ * from memory. Returning to the list or rotating the screen no longer goes to the network
+ * every time.
+ * A caller can give up waiting with a CancellationSignal, the fetch itself is only stopped
+ * when no caller is waiting for it any more.
+ */
+public final class ArticleFetcher {
+
+    // LOG TAG
+    private static final String LOG_TAG = "ArticleFetcher Error: ";
+
+    // Most results kept in memory, the least recently used is removed first
+    static final int MAX_RESULTS = 32;
+
+    // How long a result is given back from memory, in milliseconds
+    static final long FRESH_FOR_MILLIS = 60 * 1000;
+
+    private static ArticleFetcher instance;
+
+    // Results by query URL
+    private final LruCache<String, Result> results = new LruCache<>(MAX_RESULTS);
+
+    // Fetches running now by query URL, guarded by "this"
+    private final Map<String, Fetch> inFlight = new HashMap<>();
+
+    // Counters, read with getHitCount(), getMissCount() and getCoalescedCount()
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private ArticleFetcher() {
+    }
+
+    // Gets the one fetcher used by the whole app
+    public static synchronized ArticleFetcher getInstance() {
+        if (instance == null) {
+            instance = new ArticleFetcher();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the articles for the URL, from memory, from a fetch already running, or from a
+     * new fetch run on the calling thread.
+     * The list is shared with other callers and can not be changed.
+     *
+     * @throws FetchException if the articles could not be loaded, callers that waited for
+     *                        the same fetch get the same exception
+     */
+    public List<Article> fetch(Context context, String url) throws FetchException {
+        return fetch(context, url, null);
+    }
+
+    /**
+     * Same as fetch(Context, String), cancelling the signal stops the wait.
+     * When other callers still wait for the same fetch it goes on for them, and this call
+     * returns once it is done.
+     *
+     * @throws OperationCanceledException when the signal was cancelled
+     */
+    public List<Article> fetch(Context context, final String url, CancellationSignal signal)
+            throws FetchException {
+        Fetch fetch;
+        boolean owner = false;
+        synchronized (this) {
+            Result result = results.get(url);
+            if (result != null && result.isFresh()) {
+                hitCount.incrementAndGet();
+                return result.articles;
+            }
+            fetch = inFlight.get(url);
+            if (fetch != null) {
+                // Someone is already fetching this URL, wait for their result
+                coalescedCount.incrementAndGet();
+                fetch.waiting++;
+            } else {
+                missCount.incrementAndGet();
+                fetch = new Fetch(context.getApplicationContext(), url);
+                inFlight.put(url, fetch);
+                owner = true;
+            }
+        }
+
+        final Fetch joined = fetch;
+        if (signal != null) {
+            // Called at once if the signal is already cancelled
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    stopWaiting(url, joined);
+                }
+            });
+        }
+        List<Article> articles = null;
+        try {
+            if (owner) {
+                // The first caller does the fetch on its own thread
+                fetch.task.run();
+            }
+            articles = fetch.task.get();
+        } catch (CancellationException e) {
+            throw new OperationCanceledException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OperationCanceledException) {
+                // Stopped because every caller gave up
+                throw (OperationCanceledException) e.getCause();
+            }
+            Log.e(LOG_TAG, "fetch problem: ", e.getCause());
+            if (e.getCause() instanceof FetchException) {
+                throw (FetchException) e.getCause();
+            }
+            throw new FetchException(FetchException.Kind.NETWORK, "fetch problem", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FetchException(FetchException.Kind.NETWORK, "fetch interrupted", e);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+            if (owner) {
+                synchronized (this) {
+                    if (inFlight.get(url) == fetch) {
+                        inFlight.remove(url);
+                    }
+                    // Only results that loaded are kept, a failure is tried again next time
+                    if (articles != null) {
+                        results.put(url, new Result(articles));
+                    }
+                }
+            }
+        }
+        if (signal != null) {
+            // The fetch finished for the other callers after this one gave up
+            signal.throwIfCanceled();
+        }
+        return articles;
+    }
+
+    // A caller gave up, the fetch is stopped when it was the last one waiting
+    private void stopWaiting(String url, Fetch fetch) {
+        synchronized (this) {
+            fetch.waiting--;
+            if (fetch.waiting > 0) {
+                return;
+            }
+            // A caller that comes now starts a new fetch instead of joining this one
+            if (inFlight.get(url) == fetch) {
+                inFlight.remove(url);
+            }
+        }
+        fetch.signal.cancel();
+    }
+
+    // Number of fetch calls answered from memory
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    // Number of fetch calls that started a new fetch
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    // Number of fetch calls that waited for a fetch another caller started
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ArticleFetcher hits: " + getHitCount() + " misses: " + getMissCount()
+                + " coalesced: " + getCoalescedCount();
+    }
+
+    /**
+     * A fetch running for one URL and the number of callers waiting for it.
+     */
+    private static final class Fetch {
+
+        final CancellationSignal signal = new CancellationSignal();
+        final FutureTask<List<Article>> task;
+
+        // Guarded by the ArticleFetcher
+        int waiting = 1;
+
+        Fetch(final Context appContext, final String url) {
+            task = new FutureTask<>(new Callable<List<Article>>() {
+                @Override
+                public List<Article> call() throws FetchException {
+                    return ArticleLoader.loadArticles(appContext, url, signal);
+                }
+            });
+        }
+    }
+
+    /**
+     * Articles for one URL and when they were loaded.
+     */
+    private static final class Result {
+
+        final List<Article> articles;
+        final long loadedAt;
+
+        Result(List<Article> articles) {
+            this.articles = Collections.unmodifiableList(articles);
+            this.loadedAt = SystemClock.elapsedRealtime();
+        }
+
+        boolean isFresh() {
+            return SystemClock.elapsedRealtime() - loadedAt <= FRESH_FOR_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package stephenkyne.example.org.newsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over the title, author and summary of every article the app has loaded.
+ * Words are kept in sorted order so a search word matches every indexed word it starts,
+ * "elect" finds "election" and "electric". Each new page is added as it arrives.
+ * Searching never goes to the network. Thread safe.
+ */
+public final class ArticleIndex {
+
+    private static ArticleIndex instance;
+
+    // Every indexed row, the position is the document number used in the postings
+    private final List<ArticleRow> documents = new ArrayList<>();
+
+    // Article id to document number, an article is only indexed once
+    private final Map<String, Integer> documentsById = new HashMap<>();
+
+    // Word to the sorted document numbers it appears in
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+    ArticleIndex() {
+    }
+
+    // Gets the index used by the whole app
+    public static synchronized ArticleIndex getInstance() {
+        if (instance == null) {
+            instance = new ArticleIndex();
+        }
+        return instance;
+    }
+
+    // Adds the rows that are not indexed yet, a row already indexed is replaced by the new one
+    public synchronized void addAll(List<ArticleRow> rows) {
+        if (rows == null) {
+            return;
+        }
+        for (ArticleRow row : rows) {
+            add(row);
+        }
+    }
+
+    private void add(ArticleRow row) {
+        String id = row.getArticle().getId();
+        Integer existing = id != null ? documentsById.get(id) : null;
+        if (existing != null) {
+            // Newer copy of the same article, shown in results from now on.
+            // If its words changed, the old ones no longer find it.
+            List<String> oldWords = indexedWords(documents.get(existing));
+            List<String> newWords = indexedWords(row);
+            documents.set(existing, row);
+            if (!oldWords.equals(newWords)) {
+                removeWords(oldWords, existing);
+                addWords(newWords, existing);
+            }
+            return;
+        }
+        int document = documents.size();
+        documents.add(row);
+        if (id != null) {
+            documentsById.put(id, document);
+        }
+        addWords(indexedWords(row), document);
+    }
+
+    // Words the row is found by, from its title, author and summary
+    private static List<String> indexedWords(ArticleRow row) {
+        Article article = row.getArticle();
+        List<String> words = new ArrayList<>(tokenize(article.getTitle()));
+        words.addAll(tokenize(article.getAuthor()));
+        // The summary without HTML tags, the row holds "Summary Missing" when there is none
+        if (article.getSummary() != null) {
+            words.addAll(tokenize(row.getSummary()));
+        }
+        return words;
+    }
+
+    private void addWords(List<String> words, int document) {
+        for (String word : words) {
+            Postings list = postings.get(word);
+            if (list == null) {
+                list = new Postings();
+                postings.put(word, list);
+            }
+            list.add(document);
+        }
+    }
+
+    private void removeWords(List<String> words, int document) {
+        for (String word : words) {
+            Postings list = postings.get(word);
+            if (list != null) {
+                list.remove(document);
+                if (list.isEmpty()) {
+                    // No article has the word any more
+                    postings.remove(word);
+                }
+            }
+        }
+    }
+
+    // Number of articles in the index
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    /**
+     * Return the articles that match every word of the query, newest first.
+     * Each query word matches indexed words that start with it.
+     *
+     * @param query      words typed by the user
+     * @param maxResults most rows returned
+     */
+    public synchronized List<ArticleRow> search(String query, int maxResults) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+
+        // Documents that match all of the words so far
+        BitSet matches = null;
+        for (String word : words) {
+            BitSet wordMatches = matchPrefix(word);
+            if (matches == null) {
+                matches = wordMatches;
+            } else {
+                matches.and(wordMatches);
+            }
+            if (matches.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        // Keeps the newest maxResults, the oldest of them is at the head of the queue
+        PriorityQueue<ArticleRow> newest = new PriorityQueue<>(maxResults,
+                new Comparator<ArticleRow>() {
+                    @Override
+                    public int compare(ArticleRow first, ArticleRow second) {
+                        return FeedMerger.compareDates(first.getArticle().getPublishedMillis(),
+                                second.getArticle().getPublishedMillis(), false);
+                    }
+                });
+        for (int document = matches.nextSetBit(0); document >= 0;
+             document = matches.nextSetBit(document + 1)) {
+            ArticleRow row = documents.get(document);
+            if (newest.size() < maxResults) {
+                newest.add(row);
+            } else if (FeedMerger.compareDates(row.getArticle().getPublishedMillis(),
+                    newest.peek().getArticle().getPublishedMillis(), false) > 0) {
+                newest.poll();
+                newest.add(row);
+            }
+        }
+
+        List<ArticleRow> results = new ArrayList<>(newest);
+        Collections.sort(results, Collections.reverseOrder(newest.comparator()));
+        return results;
+    }
+
+    // Documents containing any indexed word that starts with the prefix
+    private BitSet matchPrefix(String prefix) {
+        BitSet matches = new BitSet(documents.size());
+        SortedMap<String, Postings> words = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+        for (Postings list : words.values()) {
+            list.addTo(matches);
+        }
+        return matches;
+    }
+
+    /**
+     * Splits text into lower case words of letters and digits.
+     * Each word is returned once.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> words = new ArrayList<>();
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean wordChar = i < lowerCase.length()
+                    && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String word = lowerCase.substring(start, i);
+                if (!words.contains(word)) {
+                    words.add(word);
+                }
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Sorted document numbers for one word, in a growing int array.
+     */
+    private static final class Postings {
+
+        private int[] documents = new int[2];
+        private int size;
+
+        // The same document twice is kept once. New documents have the highest number,
+        // so they are appended, a replaced one is put back in its place.
+        void add(int document) {
+            int index = size > 0 && documents[size - 1] < document
+                    ? -size - 1 : Arrays.binarySearch(documents, 0, size, document);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            System.arraycopy(documents, insertAt, documents, insertAt + 1, size - insertAt);
+            documents[insertAt] = document;
+            size++;
+        }
+
+        void remove(int document) {
+            int index = Arrays.binarySearch(documents, 0, size, document);
+            if (index >= 0) {
+                System.arraycopy(documents, index + 1, documents, index, size - index - 1);
+                size--;
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void addTo(BitSet matches) {
+            for (int i = 0; i < size; i++) {
+                matches.set(documents[i]);
+            }
+        }
+    }
+}
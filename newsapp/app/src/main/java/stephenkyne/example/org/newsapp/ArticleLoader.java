@@ -1,46 +1,224 @@
 package stephenkyne.example.org.newsapp;
 
-import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
+import java.io.File;
 import java.util.List;
 
 /**
  * Loads a list of articles by using an AsyncTask to perform the
  * network request to the given URL.
+ * The articles are turned into ready to bind {@link ArticleRow}s before they are delivered.
+ * The last result is kept by the {@link CancellableLoader}, only a refresh or another feed
+ * loads again, so coming back to the screen keeps the pages and scroll position.
+ * Cancelling a load closes its connection and stops the parser. The newest date of each
+ * section is saved in {@link SyncState}, and the first page in the {@link SnapshotStore},
+ * only when the rows are delivered, so a failed or superseded load saves nothing.
  */
-public class ArticleLoader extends AsyncTaskLoader <List<Article>> {
+public class ArticleLoader extends CancellableLoader<List<ArticleRow>> {
+
+    // LOG TAG
+    private static final String LOG_TAG = "ArticleLoader Error: ";
 
     /** Query URL */
     private String newsUrl;
 
+    /** The page of results the URL asks for */
+    private int newsPage;
+
+    /** Makes the rows, created on the first load */
+    private ArticleRowFactory rowFactory;
+
+    /** The feed picked in the settings when the loader was made */
+    private final String feedKey;
+
+    /** What the last load saves when its rows are delivered */
+    private volatile PendingSave pendingSave;
+
+    /** Used to deliver part of a result from the background thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
     /**
      * Constructs a new {@link ArticleLoader}.
      *
      * @param context of the activity
      * @param url to load data from
+     * @param page the page of results that url asks for
      */
-    public ArticleLoader(Context context, String url) {
+    public ArticleLoader(Context context, String url, int page) {
         super(context);
         newsUrl = url;
+        newsPage = page;
+        feedKey = ArticleQuery.getFeedKey(context);
+    }
+
+    // Gets the page of results this loader loads, used to put the page in the right place
+    public int getPage() {
+        return newsPage;
+    }
+
+    // Gets the feed the loader was made for, another one means the settings changed since
+    public String getFeedKey() {
+        return feedKey;
+    }
+
+    @Override
+    public void deliverResult(List<ArticleRow> rows) {
+        if (!isReset()) {
+            savePending(rows);
+        }
+        super.deliverResult(rows);
     }
 
     @Override
-    protected void onStartLoading() {
-        forceLoad();
+    public void onCanceled(List<ArticleRow> rows) {
+        // The rows are not shown, so a refresh has to ask for them again
+        PendingSave pending = pendingSave;
+        if (rows != null && pending != null && rows == pending.rows) {
+            pendingSave = null;
+        }
+    }
+
+    /**
+     * Keeps the newest dates of the rows the load returns, they are saved in SyncState
+     * when the rows are delivered. Called on the loader thread at the end of a load.
+     */
+    protected void setPendingSync(List<ArticleRow> rows, SyncState.Update update) {
+        setPendingSave(rows, update, null);
+    }
+
+    /**
+     * Keeps the newest dates of the rows the load returns and the articles of the first
+     * page, saved in SyncState and the SnapshotStore when the rows are delivered.
+     * Called on the loader thread at the end of a load.
+     *
+     * @param snapshot the articles to show at the next launch, null to keep the saved ones
+     */
+    protected void setPendingSave(List<ArticleRow> rows, SyncState.Update update,
+                                  List<Article> snapshot) {
+        pendingSave = new PendingSave(rows, update, snapshot);
+    }
+
+    // Saves the newest dates and the snapshot when the rows delivered are the ones they
+    // came from
+    private void savePending(List<ArticleRow> rows) {
+        PendingSave pending = pendingSave;
+        if (rows == null || pending == null || rows != pending.rows) {
+            return;
+        }
+        pendingSave = null;
+        if (pending.sync != null) {
+            pending.sync.save();
+        }
+        if (pending.snapshot != null) {
+            // Shown at the next launch before the network answers, written off the UI thread
+            SnapshotStore.getInstance(getContext()).saveInBackground(feedKey, pending.snapshot);
+        }
+    }
+
+    /**
+     * Delivers the rows loaded so far from the background thread, the whole result
+     * replaces them when the load is done. They are not kept as the result.
+     */
+    protected void deliverPartialResult(final List<ArticleRow> rows) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isStarted() && !isAbandoned()) {
+                    deliverWithoutKeeping(rows);
+                }
+            }
+        });
     }
 
     /**
-     * This is on a background thread.
+     * Loads the rows, on a background thread.
      */
     @Override
-    public List<Article> loadInBackground() {
+    protected List<ArticleRow> load(CancellationSignal signal) {
         if (newsUrl == null) {
             return null;
         }
 
         // Perform the network request, parse the response, and extract a list of articles.
-        List<Article> articles = QueryUtils.fetchArticleData(newsUrl);
+        // The fetcher shares a request that is already running or a result that was just loaded.
+        List<Article> articles;
+        try {
+            articles = ArticleFetcher.getInstance().fetch(getContext(), newsUrl, signal);
+            setError(null);
+        } catch (FetchException e) {
+            setError(e);
+            return null;
+        }
+        signal.throwIfCanceled();
+
+        // The text, color and date of each row are worked out here, off the UI thread
+        List<ArticleRow> rows = getRowFactory().createRows(articles);
+        // Makes the new articles searchable
+        ArticleIndex.getInstance().addAll(rows);
+        // The newest date is kept for the next refresh once the rows are shown
+        SyncState.Update sync = SyncState.getInstance(getContext()).newUpdate();
+        sync.add(newsUrl, articles);
+        setPendingSave(rows, sync, newsPage == ArticleQuery.FIRST_PAGE ? articles : null);
+        return rows;
+    }
+
+    /**
+     * Gets the articles for the URL from the network. The HTTP response cache revalidates
+     * what the prefetch job downloaded, so an unchanged feed costs a 304.
+     * When the network fails, a whole body the prefetch job saved within
+     * {@link FeedStore#OFFLINE_FOR_MILLIS} is used instead.
+     *
+     * @param signal cancelling it stops the request, may be null
+     * @throws FetchException if the network request failed after its retries and nothing
+     *                        was saved
+     */
+    static List<Article> loadArticles(Context context, String url, CancellationSignal signal)
+            throws FetchException {
+        List<Article> articles;
+        try {
+            articles = QueryUtils.fetchArticles(url, null, FetchPolicy.DEFAULT, signal);
+        } catch (FetchException e) {
+            if (signal != null) {
+                // A cancelled load shows nothing, the saved body is not needed
+                signal.throwIfCanceled();
+            }
+            FeedStore store = new FeedStore(context);
+            File saved = store.getFresh(url, FeedStore.OFFLINE_FOR_MILLIS);
+            articles = saved == null ? null : QueryUtils.readArticlesFromFile(store, saved);
+            if (articles == null) {
+                throw e;
+            }
+            Log.e(LOG_TAG, "Network failed, showing the saved body for " + url, e);
+        }
         return articles;
     }
-}
\ No newline at end of file
+
+    // Gets the factory that makes the rows, only used on the loader thread
+    protected ArticleRowFactory getRowFactory() {
+        if (rowFactory == null) {
+            rowFactory = new ArticleRowFactory(getContext());
+        }
+        return rowFactory;
+    }
+
+    // The rows a load returned and what is saved when they are delivered
+    private static final class PendingSave {
+
+        final List<ArticleRow> rows;
+
+        final SyncState.Update sync;
+
+        final List<Article> snapshot;
+
+        PendingSave(List<ArticleRow> rows, SyncState.Update sync, List<Article> snapshot) {
+            this.rows = rows;
+            this.sync = sync;
+            this.snapshot = snapshot;
+        }
+    }
+}
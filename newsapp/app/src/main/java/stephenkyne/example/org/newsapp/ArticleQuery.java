@@ -0,0 +1,230 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static stephenkyne.example.org.newsapp.MainActivity.API_KEY;
+import static stephenkyne.example.org.newsapp.MainActivity.ARTICLE_JSON_BASE_URL;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_API_KEY;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_FORMAT;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_FROM_DATE;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_ORDER_BY;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_PAGE;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_PAGE_SIZE;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_Q_QUERY;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_SHOW_FIELDS;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_SHOW_TAGS;
+import static stephenkyne.example.org.newsapp.MainActivity.REQUEST_FORMAT;
+import static stephenkyne.example.org.newsapp.MainActivity.SHOW_FIELDS_BODY_TEXT;
+import static stephenkyne.example.org.newsapp.MainActivity.SHOW_FIELDS_TRAILTEXT_THUMBNAIL;
+import static stephenkyne.example.org.newsapp.MainActivity.SHOW_TAGS_CONTRIBUTOR;
+
+/**
+ * Builds the Guardian query URL from the values the user picked in the settings.
+ * Used by anything that needs to ask for the same articles the list shows.
+ */
+public final class ArticleQuery {
+
+    // The first page of results, the Guardian API counts pages from 1
+    public static final int FIRST_PAGE = 1;
+
+    private ArticleQuery() {
+    }
+
+    // Creates the query to access and call the select information from the news site.
+    public static String buildUrl(Context context, int page) {
+        return buildUrl(context, getSelectedFeed(context), page);
+    }
+
+    // Creates the query for one section, the other values come from the settings.
+    public static String buildUrl(Context context, String newsSectionSelected, int page) {
+
+        // Creates sharedPrefs to access the keys and values for the query
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+
+        // Gets the number of Articles to be displayed value
+        String numberOfArticles = getPageSizeSetting(context);
+
+        // Gets the order by settings
+        String orderBy = sharedPrefs.getString(
+                context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default));
+        // Base web address/
+        Uri baseUri = Uri.parse(ARTICLE_JSON_BASE_URL);
+        Uri.Builder uriBuilder = baseUri.buildUpon();
+        // the Section (like "sports", "world news" or "search"
+        uriBuilder.appendEncodedPath(newsSectionSelected);
+        uriBuilder.appendQueryParameter(PARAM_Q_QUERY, "");
+        uriBuilder.appendQueryParameter(PARAM_FORMAT, REQUEST_FORMAT);
+        uriBuilder.appendQueryParameter(PARAM_PAGE_SIZE, numberOfArticles);
+        // The page of results, page 1 is the newest (or oldest) articles
+        uriBuilder.appendQueryParameter(PARAM_PAGE, String.valueOf(page));
+        // Show Tags, gets the author
+        uriBuilder.appendQueryParameter(PARAM_SHOW_TAGS, SHOW_TAGS_CONTRIBUTOR);
+        // Gets the trailText / the summary of the article and its thumbnail
+        uriBuilder.appendQueryParameter(PARAM_SHOW_FIELDS, SHOW_FIELDS_TRAILTEXT_THUMBNAIL);
+        // order by, "newest" or "oldest"
+        uriBuilder.appendQueryParameter(PARAM_ORDER_BY, orderBy);
+        // API key
+        uriBuilder.appendQueryParameter(PARAM_API_KEY, API_KEY);
+        // returns the build URI / URL
+        return uriBuilder.toString();
+    }
+
+    /**
+     * Creates the query for the articles of one section published at or after fromMillis,
+     * newest first. Used by the {@link RefreshLoader}, the other values come from the settings.
+     */
+    public static String buildDeltaUrl(Context context, String section, long fromMillis,
+                                       int pageSize) {
+        Uri baseUri = Uri.parse(ARTICLE_JSON_BASE_URL);
+        Uri.Builder uriBuilder = baseUri.buildUpon();
+        uriBuilder.appendEncodedPath(section);
+        uriBuilder.appendQueryParameter(PARAM_Q_QUERY, "");
+        uriBuilder.appendQueryParameter(PARAM_FORMAT, REQUEST_FORMAT);
+        uriBuilder.appendQueryParameter(PARAM_PAGE_SIZE, String.valueOf(pageSize));
+        uriBuilder.appendQueryParameter(PARAM_PAGE, String.valueOf(FIRST_PAGE));
+        uriBuilder.appendQueryParameter(PARAM_SHOW_TAGS, SHOW_TAGS_CONTRIBUTOR);
+        uriBuilder.appendQueryParameter(PARAM_SHOW_FIELDS, SHOW_FIELDS_TRAILTEXT_THUMBNAIL);
+        // Only articles published since the last load
+        uriBuilder.appendQueryParameter(PARAM_FROM_DATE, Timestamps.formatIso8601(fromMillis));
+        uriBuilder.appendQueryParameter(PARAM_ORDER_BY,
+                context.getString(R.string.settings_order_newest_value));
+        uriBuilder.appendQueryParameter(PARAM_API_KEY, API_KEY);
+        return uriBuilder.toString();
+    }
+
+    /**
+     * Creates the query for the text of one article, "world/2021/may/31/story" is asked
+     * for at ".../world/2021/may/31/story?show-fields=bodyText". Used by {@link ArticleBodies}.
+     */
+    public static String buildBodyUrl(String baseUrl, String articleId) {
+        Uri.Builder uriBuilder = Uri.parse(baseUrl).buildUpon();
+        // The id is already a path, its slashes are kept
+        uriBuilder.appendEncodedPath(articleId);
+        uriBuilder.appendQueryParameter(PARAM_FORMAT, REQUEST_FORMAT);
+        uriBuilder.appendQueryParameter(PARAM_SHOW_FIELDS, SHOW_FIELDS_BODY_TEXT);
+        uriBuilder.appendQueryParameter(PARAM_API_KEY, API_KEY);
+        return uriBuilder.toString();
+    }
+
+    /**
+     * Gets a key for the feed picked in the settings, the same for as long as the settings
+     * ask for the same articles. Used to check a saved list still belongs to the feed.
+     */
+    public static String getFeedKey(Context context) {
+        if (isMySectionsSelected(context)) {
+            return TextUtils.join(" ", buildMySectionsUrls(context));
+        }
+        return buildUrl(context, FIRST_PAGE);
+    }
+
+    // Gets the section id of a query URL, "world" for ".../world?page=1"
+    public static String getSectionOfUrl(String url) {
+        return Uri.parse(url).getLastPathSegment();
+    }
+
+    //Gets the section / news feed to be displayed
+    public static String getSelectedFeed(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return sharedPrefs.getString(
+                context.getString(R.string.settings_select_feed_key),
+                context.getString(R.string.settings_select_feed_default));
+    }
+
+    // True when the feed is "My Sections", several sections loaded together
+    public static boolean isMySectionsSelected(Context context) {
+        return context.getString(R.string.settings_my_sections_feed_value)
+                .equals(getSelectedFeed(context));
+    }
+
+    // Gets the query URLs for page 1 of every section picked for "My Sections"
+    public static List<String> buildMySectionsUrls(Context context) {
+        List<String> urls = new ArrayList<>();
+        for (String section : getMySections(context)) {
+            urls.add(buildUrl(context, section, FIRST_PAGE));
+        }
+        return urls;
+    }
+
+    // Gets the section ids picked for "My Sections", in the order listed in the settings
+    public static List<String> getMySections(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        Set<String> defaultSections = new HashSet<>(Arrays.asList(
+                context.getResources().getStringArray(R.array.settings_my_sections_default)));
+        Set<String> picked = sharedPrefs.getStringSet(
+                context.getString(R.string.settings_my_sections_key), defaultSections);
+
+        List<String> sections = new ArrayList<>();
+        for (String section :
+                context.getResources().getStringArray(R.array.settings_my_sections_values)) {
+            if (picked.contains(section)) {
+                sections.add(section);
+            }
+        }
+        return sections;
+    }
+
+    // Gets the section ids of the feed shown, several for "My Sections"
+    public static List<String> getSelectedSections(Context context) {
+        if (isMySectionsSelected(context)) {
+            return getMySections(context);
+        }
+        List<String> sections = new ArrayList<>(1);
+        sections.add(getSelectedFeed(context));
+        return sections;
+    }
+
+    // True when the articles are ordered "newest" first
+    public static boolean isNewestFirst(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String orderBy = sharedPrefs.getString(
+                context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default));
+        return context.getString(R.string.settings_order_newest_value).equals(orderBy);
+    }
+
+    // Gets the number of Articles per page, as typed in the settings
+    public static String getPageSizeSetting(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return sharedPrefs.getString(
+                context.getString(R.string.settings_number_articles_key),
+                context.getString(R.string.settings_number_articles_default));
+    }
+
+    // Gets how many rows from the end of the list the next page starts loading
+    public static int getPrefetchDistance(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String distance = sharedPrefs.getString(
+                context.getString(R.string.settings_prefetch_distance_key),
+                context.getString(R.string.settings_prefetch_distance_default));
+        return parseIntOrDefault(distance,
+                Integer.parseInt(context.getString(R.string.settings_prefetch_distance_default)));
+    }
+
+    // Gets the name of the transport requests are sent with, see QueryUtils.getTransport
+    public static String getTransportSetting(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return sharedPrefs.getString(
+                context.getString(R.string.settings_transport_key),
+                context.getString(R.string.settings_transport_default));
+    }
+
+    // The settings are typed in by the user, anything that is not a number uses the default
+    static int parseIntOrDefault(String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            return defaultValue;
+        }
+    }
+}
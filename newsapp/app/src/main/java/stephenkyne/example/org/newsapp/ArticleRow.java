@@ -0,0 +1,123 @@
+package stephenkyne.example.org.newsapp;
+
+/**
+ * One row of the article list, with every value already checked and formatted.
+ * Built on the loader thread by {@link ArticleRowFactory} so binding a row
+ * only has to set the text and color. The date is formatted again when it is bound
+ * after the time zone or locale changed.
+ */
+public final class ArticleRow {
+
+    // The article the row was made from
+    private final Article article;
+
+    // Title, or "Title Missing"
+    private final String title;
+
+    // Section name, or "Section Unknown"
+    private final String sectionLabel;
+
+    // Background color for the section area, as a color int
+    private final int sectionColor;
+
+    // Published date and time in the users local time, or "Date Missing". Replaced as a
+    // whole so a row shared with ArticleIndex on a worker thread never sees half an update.
+    private volatile FormattedDate date;
+
+    // Author name, or "Author missing"
+    private final String author;
+
+    // Summary with the HTML tags removed, or "Summary Missing"
+    private final String summary;
+
+    public ArticleRow(Article article, String title, String sectionLabel, int sectionColor,
+                      String formattedDate, String author, String summary) {
+        this(article, title, sectionLabel, sectionColor, formattedDate,
+                Timestamps.getFormatterGeneration(), author, summary);
+    }
+
+    /**
+     * @param dateGeneration the {@link Timestamps#getFormatterGeneration()} read before
+     *                       the date was formatted
+     */
+    ArticleRow(Article article, String title, String sectionLabel, int sectionColor,
+               String formattedDate, int dateGeneration, String author, String summary) {
+        this.article = article;
+        this.title = title;
+        this.sectionLabel = sectionLabel;
+        this.sectionColor = sectionColor;
+        this.date = new FormattedDate(formattedDate, dateGeneration);
+        this.author = author;
+        this.summary = summary;
+    }
+
+    // Gets the article the row was made from
+    public Article getArticle() {
+        return article;
+    }
+
+    // Gets the website address of the article
+    public String getWebUrl() {
+        return article.getWebUrl();
+    }
+
+    // Gets the web address of the thumbnail, null when the row has no picture
+    public String getThumbnailUrl() {
+        return article.getThumbnailUrl();
+    }
+
+    // Gets the title to display
+    public String getTitle() {
+        return title;
+    }
+
+    // Gets the section name to display
+    public String getSectionLabel() {
+        return sectionLabel;
+    }
+
+    // Gets the color int for the section area
+    public int getSectionColor() {
+        return sectionColor;
+    }
+
+    // Gets the formatted local date and time to display. Called on the UI thread, the date
+    // is formatted again when the time zone or locale changed since the row was built.
+    public String getFormattedDate() {
+        FormattedDate current = date;
+        long publishedMillis = article.getPublishedMillis();
+        if (publishedMillis == Article.NO_DATE) {
+            return current.text;
+        }
+        int generation = Timestamps.getFormatterGeneration();
+        if (generation != current.generation) {
+            current = new FormattedDate(ArticleRowFactory.formatDate(publishedMillis),
+                    generation);
+            date = current;
+        }
+        return current.text;
+    }
+
+    // Gets the author name to display
+    public String getAuthor() {
+        return author;
+    }
+
+    // Gets the summary to display, no HTML tags
+    public String getSummary() {
+        return summary;
+    }
+
+    // A formatted date and the Timestamps formatter generation it was formatted with
+    private static final class FormattedDate {
+
+        final String text;
+
+        final int generation;
+
+        FormattedDate(String text, int generation) {
+            this.text = text;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns {@link Article}s into ready to bind {@link ArticleRow}s.
+ * All the string, color and date work that used to be done in
+ * {@link ArticleAdapter#getView} is done here, on the loader thread.
+ * Not thread safe, each loader uses its own factory.
+ */
+public class ArticleRowFactory {
+
+    // Sections with the same color are listed together, color matches the guardian website
+    // Section text and their color are listed in strings.xml and colors.xml
+    private static final int[] WORLD_SECTIONS = {
+            R.string.section_world_news,
+            R.string.section_us_news,
+            R.string.section_australia_news};
+    private static final int[] SCIENCE_SECTIONS = {
+            R.string.section_science,
+            R.string.section_technology_news};
+    private static final int[] SPORT_SECTIONS = {
+            R.string.section_sport_news,
+            R.string.section_rugby_union,
+            R.string.section_cricket,
+            R.string.section_golf,
+            R.string.section_f1,
+            R.string.section_boxing,
+            R.string.section_football};
+    private static final int[] ENVIRONMENT_SECTIONS = {
+            R.string.section_environment};
+    private static final int[] SOCIETY_SECTIONS = {
+            R.string.section_society};
+    private static final int[] FASHION_SECTIONS = {
+            R.string.section_fashion};
+    private static final int[] BUSINESS_SECTIONS = {
+            R.string.section_business};
+    private static final int[] CULTURE_SECTIONS = {
+            R.string.section_culture,
+            R.string.section_film,
+            R.string.section_stage,
+            R.string.section_life_and_style,
+            R.string.section_books,
+            R.string.section_music,
+            R.string.section_art_design,
+            R.string.section_media,
+            R.string.section_games,
+            R.string.section_television_radio};
+
+    // Section name to color int, built once from the resources
+    private final Map<String, Integer> sectionColors = new HashMap<>();
+
+    // Color used when the section is not in the table
+    private final int defaultColor;
+
+    // Text shown when a value is missing
+    private final String unknownTitle;
+    private final String unknownSection;
+    private final String unknownDate;
+    private final String unknownAuthor;
+    private final String unknownSummary;
+
+    public ArticleRowFactory(Context context) {
+        addSectionColors(context, WORLD_SECTIONS, R.color.world_color);
+        addSectionColors(context, SCIENCE_SECTIONS, R.color.science_color);
+        addSectionColors(context, SPORT_SECTIONS, R.color.sport_color);
+        addSectionColors(context, ENVIRONMENT_SECTIONS, R.color.environment_color);
+        addSectionColors(context, SOCIETY_SECTIONS, R.color.society_color);
+        addSectionColors(context, FASHION_SECTIONS, R.color.fashion_color);
+        addSectionColors(context, BUSINESS_SECTIONS, R.color.business_color);
+        addSectionColors(context, CULTURE_SECTIONS, R.color.culture_color);
+        defaultColor = ContextCompat.getColor(context, R.color.default_color);
+
+        unknownTitle = context.getString(R.string.unknown_title);
+        unknownSection = context.getString(R.string.unknown_Section);
+        unknownDate = context.getString(R.string.unknown_date);
+        unknownAuthor = context.getString(R.string.unknown_author);
+        unknownSummary = context.getString(R.string.unknown_summary);
+    }
+
+    // Adds every section in the list to the table with the same color
+    private void addSectionColors(Context context, int[] sectionNames, int colorRes) {
+        int color = ContextCompat.getColor(context, colorRes);
+        for (int sectionName : sectionNames) {
+            sectionColors.put(context.getString(sectionName), color);
+        }
+    }
+
+    // Makes a row for every article, in the same order
+    public List<ArticleRow> createRows(List<Article> articles) {
+        if (articles == null) {
+            return null;
+        }
+        List<ArticleRow> rows = new ArrayList<>(articles.size());
+        for (Article article : articles) {
+            rows.add(createRow(article));
+        }
+        return rows;
+    }
+
+    // Checks for nulls and empty strings, missing values are replaced with the "unknown" text
+    public ArticleRow createRow(Article article) {
+        // Title / Name of the Article
+        String title = article.getTitle();
+        if (isEmpty(title)) {
+            title = unknownTitle;
+        }
+
+        // Section and its color, even if the section is missing a color is selected
+        String section = article.getSection();
+        int sectionColor = getSectionColor(section);
+        if (isEmpty(section)) {
+            section = unknownSection;
+        }
+
+        // Date and time the article was published on the web, changed into local time
+        long publishedMillis = article.getPublishedMillis();
+        // Read first, a time zone change while formatting makes the row format it again
+        int dateGeneration = Timestamps.getFormatterGeneration();
+        String formattedDate;
+        if (publishedMillis == Article.NO_DATE) {
+            formattedDate = unknownDate;
+        } else {
+            formattedDate = formatDate(publishedMillis);
+        }
+
+        // Author name of the article
+        String author = article.getAuthor();
+        if (isEmpty(author)) {
+            author = unknownAuthor;
+        }
+
+        // Summary / trailText, may have HTML tags and entities, changed into plain text
+        String summary = article.getSummary();
+        if (isEmpty(summary)) {
+            summary = unknownSummary;
+        } else {
+            summary = TrailTextSanitizer.sanitize(article.getId(), summary);
+        }
+
+        return new ArticleRow(article, title, section, sectionColor, formattedDate,
+                dateGeneration, author, summary);
+    }
+
+    // Looks up the color for the section, sections not in the table get the default color
+    int getSectionColor(String section) {
+        if (section == null) {
+            return defaultColor;
+        }
+        Integer color = sectionColors.get(section);
+        return color != null ? color : defaultColor;
+    }
+
+    /**
+     * Return the formatted date time string in the users local time.
+     * Articles without a date are checked before calling the method.
+     *
+     * @param publishedMillis milliseconds since 1970-01-01 UTC
+     *                        returns in "MMM d, yyyy  h:mm a"
+     */
+    static String formatDate(long publishedMillis) {
+        return Timestamps.formatLocal(publishedMillis);
+    }
+
+    private static boolean isEmpty(String text) {
+        return text == null || text.isEmpty();
+    }
+}
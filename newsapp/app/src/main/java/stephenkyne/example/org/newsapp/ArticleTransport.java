@@ -0,0 +1,67 @@
+package stephenkyne.example.org.newsapp;
+
+import android.os.CancellationSignal;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends one request for a query URL and parses the response.
+ * A request is started and its result is given by the returned Future and, if one is
+ * passed, by a {@link Callback}. The {@link BlockingTransport} sends the request on the
+ * calling thread and returns a Future that is already done, the {@link NioTransport}
+ * returns at once and many requests share its few threads.
+ * Retries, deadlines and the circuit breaker stay in {@link QueryUtils#fetchArticles} and
+ * {@link QueryUtils#fetchBodyText}, a transport only makes single attempts.
+ * The one used by the app is picked in the settings, see {@link QueryUtils#setTransport}.
+ */
+public interface ArticleTransport {
+
+    /**
+     * Told how a request ended, on the thread that ended it. Not called for a cancelled
+     * request.
+     */
+    interface Callback<T> {
+        void onResult(T result);
+
+        void onFailure(FetchException failure);
+    }
+
+    /**
+     * Starts a request for the URL, the response is parsed as articles.
+     * The Future throws an ExecutionException caused by a {@link FetchException} when the
+     * request fails. Cancelling the Future or the signal stops the request, the Future then
+     * throws a CancellationException, or an ExecutionException caused by an
+     * {@link android.os.OperationCanceledException}.
+     *
+     * @param url                  query URL
+     * @param store                a copy of the body is saved there when it is not null
+     * @param connectTimeoutMillis time allowed to connect
+     * @param readTimeoutMillis    time allowed between two reads of the response
+     * @param deadline             SystemClock.elapsedRealtime() after which reading the
+     *                             response fails with a TIMEOUT
+     * @param signal               cancelling it closes the connection, may be null. Its
+     *                             listener is removed before the Future is done, unless it
+     *                             was the signal that cancelled it.
+     * @param callback             told how the request ended, may be null
+     */
+    Future<List<Article>> fetch(URL url, FeedStore store, int connectTimeoutMillis,
+                                int readTimeoutMillis, long deadline, CancellationSignal signal,
+                                Callback<List<Article>> callback);
+
+    /**
+     * Starts a request for the text of one article, see {@link QueryUtils#readBodyText}.
+     * The Future, timeouts, deadline and signal are the same as for fetch.
+     *
+     * @param wireBytes the bytes of the body read from the connection are added to it, also
+     *                  when the request fails
+     */
+    Future<String> fetchBodyText(URL url, int connectTimeoutMillis, int readTimeoutMillis,
+                                 long deadline, CancellationSignal signal, AtomicLong wireBytes,
+                                 Callback<String> callback);
+
+    // Short name of the transport, the value of the transport setting
+    String getName();
+}
@@ -0,0 +1,106 @@
+package stephenkyne.example.org.newsapp;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link ArticleTransport} the app has always used, HttpURLConnection with the response
+ * cache and the connection pool of the platform.
+ * The request is sent and its response parsed on the calling thread, so a request in
+ * flight holds only the loader thread that asked for it, and the Future returned is
+ * already done. Cancelling a request disconnects its connection, so the thread is not held
+ * until the response has been read.
+ * Works for http and https.
+ */
+public final class BlockingTransport implements ArticleTransport {
+
+    // Name of this transport
+    public static final String NAME = "blocking";
+
+    private static BlockingTransport instance;
+
+    private BlockingTransport() {
+    }
+
+    // Gets the one blocking transport used by the whole app
+    public static synchronized BlockingTransport getInstance() {
+        if (instance == null) {
+            instance = new BlockingTransport();
+        }
+        return instance;
+    }
+
+    @Override
+    public Future<List<Article>> fetch(final URL url, final FeedStore store,
+                                       final int connectTimeoutMillis,
+                                       final int readTimeoutMillis, final long deadline,
+                                       final CancellationSignal signal,
+                                       Callback<List<Article>> callback) {
+        return runHere(new Callable<List<Article>>() {
+            @Override
+            public List<Article> call() throws FetchException {
+                return QueryUtils.makeHttpRequest(url, store, connectTimeoutMillis,
+                        readTimeoutMillis, deadline, signal);
+            }
+        }, callback);
+    }
+
+    @Override
+    public Future<String> fetchBodyText(final URL url, final int connectTimeoutMillis,
+                                        final int readTimeoutMillis, final long deadline,
+                                        final CancellationSignal signal,
+                                        final AtomicLong wireBytes, Callback<String> callback) {
+        return runHere(new Callable<String>() {
+            @Override
+            public String call() throws FetchException {
+                return QueryUtils.makeBodyRequest(url, connectTimeoutMillis, readTimeoutMillis,
+                        deadline, signal, wireBytes);
+            }
+        }, callback);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    // Runs the request on the calling thread, the Future is done when this returns
+    private static <T> Future<T> runHere(Callable<T> request, final Callback<T> callback) {
+        FutureTask<T> task = new FutureTask<T>(request) {
+            @Override
+            protected void done() {
+                if (callback != null && !isCancelled()) {
+                    tellCallback(this, callback);
+                }
+            }
+        };
+        task.run();
+        return task;
+    }
+
+    // Gives the result of a finished request to the callback, a cancelled one is not told
+    static <T> void tellCallback(Future<T> done, Callback<T> callback) {
+        try {
+            callback.onResult(done.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof OperationCanceledException) {
+                return;
+            }
+            callback.onFailure(cause instanceof FetchException
+                    ? (FetchException) cause
+                    : new FetchException(FetchException.Kind.NETWORK, "fetch problem", cause));
+        } catch (InterruptedException e) {
+            // Not reached, the request is done
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+/**
+ * An AsyncTaskLoader that keeps its last result and can stop a load down to its connection.
+ * The result is delivered again when the loader is started. A finished load, even one that
+ * failed, is not run again by a start, only when the content changed or the loader was reset.
+ * Cancelling a load cancels the {@link CancellationSignal} given to {@link #load}.
+ * Used by {@link ArticleLoader} and {@link ArticleBodyLoader}.
+ *
+ * @param <D> the result delivered
+ */
+public abstract class CancellableLoader<D> extends AsyncTaskLoader<D> {
+
+    /** Why the last load failed, null if it worked */
+    private volatile FetchException error;
+
+    /** The last result delivered, null when there is none or the load failed */
+    private D result;
+
+    /** True once a load finished, even when it gave no result */
+    private boolean loaded;
+
+    /** Cancels the load running now, null when none is. Guarded by "this". */
+    private CancellationSignal cancellationSignal;
+
+    public CancellableLoader(Context context) {
+        super(context);
+    }
+
+    // Gets why the last load returned null, null when it worked.
+    // Read on the UI thread in onLoadFinished.
+    public FetchException getError() {
+        return error;
+    }
+
+    // Saves why the load failed, null when it worked
+    protected void setError(FetchException error) {
+        this.error = error;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (result != null) {
+            // Shown again at once, the loader manager skips it if nothing changed
+            super.deliverResult(result);
+        }
+        if (takeContentChanged() || !loaded) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        // A load for a screen that is not shown is not finished
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        result = null;
+        loaded = false;
+    }
+
+    @Override
+    public void deliverResult(D data) {
+        if (isReset()) {
+            return;
+        }
+        result = data;
+        loaded = true;
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+    }
+
+    // Delivers data to the listener without keeping it as the result. Main thread.
+    protected final void deliverWithoutKeeping(D data) {
+        super.deliverResult(data);
+    }
+
+    /**
+     * This is on a background thread.
+     * Runs {@link #load(CancellationSignal)} with a signal that
+     * {@link #cancelLoadInBackground()} cancels.
+     */
+    @Override
+    public final D loadInBackground() {
+        CancellationSignal signal;
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            signal = new CancellationSignal();
+            cancellationSignal = signal;
+        }
+        try {
+            return load(signal);
+        } finally {
+            synchronized (this) {
+                cancellationSignal = null;
+            }
+        }
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (cancellationSignal != null) {
+                cancellationSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * Loads the result, on a background thread.
+     *
+     * @param signal cancelled when the load is not wanted any more, the load then throws
+     *               OperationCanceledException
+     */
+    protected abstract D load(CancellationSignal signal);
+}
@@ -0,0 +1,88 @@
+package stephenkyne.example.org.newsapp;
+
+/**
+ * Stops requests to the API after it failed several times in a row.
+ * While open, requests fail at once instead of each waiting for its own timeouts.
+ * After {@link #getOpenMillis()} one request is let through to test the API, if it works
+ * requests go through again, if not the breaker stays open for another period.
+ * Thread safe.
+ */
+public class CircuitBreaker {
+
+    enum State {
+        // Requests go through, failures are counted
+        CLOSED,
+        // Requests fail at once
+        OPEN,
+        // One request is testing the API, others fail at once
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final FeedStore.Clock clock;
+
+    // Guarded by "this"
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * @param failureThreshold failures in a row that open the breaker
+     * @param openMillis       time the breaker stays open before a test request
+     * @param clock            gives the time, must not go backwards
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis, FeedStore.Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    // Returns true if a request may be sent now, a true must be followed by onSuccess or onFailure
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.currentTimeMillis() - openedAt >= openMillis) {
+                    // This request tests the API
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                // A test request is already running
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.currentTimeMillis();
+        }
+    }
+
+    // A request that was allowed but ended without saying anything about the API,
+    // a test request that ends this way lets the next request test the API instead
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openedAt = clock.currentTimeMillis() - openMillis;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+}
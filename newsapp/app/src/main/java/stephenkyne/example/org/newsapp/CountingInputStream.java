@@ -0,0 +1,67 @@
+package stephenkyne.example.org.newsapp;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that counts the bytes read through it, and the time spent waiting on reads.
+ * Placed under and over the gzip stream to compare bytes on the wire with decoded bytes.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    // Number of bytes read so far
+    private long count;
+
+    // Time spent inside read calls, in nanoseconds
+    private long readNanos;
+
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    // Gets the number of bytes read so far
+    long getCount() {
+        return count;
+    }
+
+    // Gets the time spent inside read calls so far, in nanoseconds
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        readNanos += System.nanoTime() - start;
+        if (b != -1) {
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(buffer, offset, length);
+        readNanos += System.nanoTime() - start;
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    // mark / reset would count bytes twice, so they are not supported
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
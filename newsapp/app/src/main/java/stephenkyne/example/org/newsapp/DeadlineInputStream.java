@@ -0,0 +1,48 @@
+package stephenkyne.example.org.newsapp;
+
+import android.os.SystemClock;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * An InputStream that fails with a SocketTimeoutException once a deadline has passed.
+ * The read timeout of a connection only bounds the wait for each read, so a body that
+ * trickles in a few bytes at a time could otherwise run far past the deadline of the fetch.
+ */
+class DeadlineInputStream extends FilterInputStream {
+
+    // SystemClock.elapsedRealtime() after which reads fail
+    private final long deadline;
+
+    DeadlineInputStream(InputStream in, long deadline) {
+        super(in);
+        this.deadline = deadline;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkDeadline();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        checkDeadline();
+        return super.read(buffer, offset, length);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkDeadline();
+        return super.skip(n);
+    }
+
+    private void checkDeadline() throws SocketTimeoutException {
+        if (SystemClock.elapsedRealtime() > deadline) {
+            throw new SocketTimeoutException("Deadline passed while reading the response");
+        }
+    }
+}
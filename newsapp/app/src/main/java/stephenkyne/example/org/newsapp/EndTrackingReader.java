@@ -0,0 +1,44 @@
+package stephenkyne.example.org.newsapp;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A Reader that remembers when it reached the end of its input.
+ * JsonReader reports a body cut off inside a string as malformed JSON, this tells the
+ * two apart: malformed JSON found before the end is the server's, found at the end it is
+ * a body that stopped short.
+ */
+class EndTrackingReader extends FilterReader {
+
+    // True once a read has returned -1
+    private boolean atEnd;
+
+    EndTrackingReader(Reader in) {
+        super(in);
+    }
+
+    // Gets whether the end of the input has been read
+    boolean isAtEnd() {
+        return atEnd;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        if (c == -1) {
+            atEnd = true;
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read == -1) {
+            atEnd = true;
+        }
+        return read;
+    }
+}
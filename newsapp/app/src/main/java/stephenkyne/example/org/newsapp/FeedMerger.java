@@ -0,0 +1,94 @@
+package stephenkyne.example.org.newsapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges lists of article rows that are each already in date order into one list in date order.
+ * A k-way merge, so each row is compared against at most log(k) others instead of
+ * sorting the whole joined list again.
+ * An article that is in more than one list, the same story in two sections, is only kept once.
+ */
+final class FeedMerger {
+
+    private FeedMerger() {
+    }
+
+    /**
+     * Return one list with every row from the given lists, ordered by publication date.
+     * A row whose article id was already taken from another list is left out.
+     *
+     * @param sortedLists  lists that are each ordered the same way as the result
+     * @param newestFirst  true for "newest" order, false for "oldest"
+     */
+    static List<ArticleRow> mergeByDate(List<List<ArticleRow>> sortedLists,
+                                        final boolean newestFirst) {
+        int total = 0;
+        // The next row of every list that is not empty, the first row to take is at the head
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()));
+        for (List<ArticleRow> list : sortedLists) {
+            if (list != null && !list.isEmpty()) {
+                total += list.size();
+                heads.add(new Cursor(list, newestFirst));
+            }
+        }
+
+        List<ArticleRow> merged = new ArrayList<>(total);
+        SeenIdSet seenIds = new SeenIdSet();
+        while (!heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            if (seenIds.add(cursor.current().getArticle().getId())) {
+                merged.add(cursor.current());
+            }
+            // Moves to the next row of the same list and puts it back in the queue
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    // Compares two publication times. Rows without a date go to the end of the list.
+    static int compareDates(long first, long second, boolean newestFirst) {
+        if (first == Article.NO_DATE || second == Article.NO_DATE) {
+            if (first == second) {
+                return 0;
+            }
+            return first == Article.NO_DATE ? 1 : -1;
+        }
+        int result = first < second ? -1 : (first == second ? 0 : 1);
+        return newestFirst ? -result : result;
+    }
+
+    /**
+     * Position in one of the lists being merged.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+
+        private final List<ArticleRow> list;
+        private final boolean newestFirst;
+        private int position;
+
+        Cursor(List<ArticleRow> list, boolean newestFirst) {
+            this.list = list;
+            this.newestFirst = newestFirst;
+        }
+
+        ArticleRow current() {
+            return list.get(position);
+        }
+
+        // Returns false when the list has no more rows
+        boolean advance() {
+            position++;
+            return position < list.size();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return compareDates(current().getArticle().getPublishedMillis(),
+                    other.current().getArticle().getPublishedMillis(), newestFirst);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package stephenkyne.example.org.newsapp;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads the feed picked in the settings into the {@link FeedStore} in the background.
+ * The download also fills the HTTP response cache, so the request made at launch is
+ * answered with a 304 when nothing changed, and the saved body is shown when it fails.
+ * The first page is also saved in the {@link SnapshotStore}, so the next launch shows it
+ * before the network answers, or without a connection.
+ * Only runs on an unmetered network while the device is charging.
+ */
+public class FeedPrefetchJobService extends JobService {
+
+    // LOG TAG
+    private static final String LOG_TAG = "FeedPrefetchJob Error: ";
+
+    // ID of the job, unique inside the app
+    static final int JOB_ID = 1001;
+
+    // How often the feed is downloaded, in milliseconds
+    static final long PERIOD_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // Wait before the first retry after a failed download, doubled on each retry
+    static final long INITIAL_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Cancelled when the job is stopped, closes the connection of the download running
+    private CancellationSignal signal;
+
+    /**
+     * Schedules the job if it is not already scheduled.
+     * Called when the app starts, the job is kept over reboots.
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+        for (JobInfo pendingJob : jobScheduler.getAllPendingJobs()) {
+            if (pendingJob.getId() == JOB_ID) {
+                return;
+            }
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, FeedPrefetchJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(PERIOD_MILLIS)
+                .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true)
+                .build();
+        if (jobScheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Prefetch job could not be scheduled");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final List<String> urls = buildFeedUrls(this);
+        final FeedStore store = new FeedStore(this);
+        // The feed the snapshot is saved for, read with the URLs
+        final String feedKey = ArticleQuery.getFeedKey(this);
+        final boolean newestFirst = ArticleQuery.isNewestFirst(this);
+        final CancellationSignal jobSignal = new CancellationSignal();
+        signal = jobSignal;
+        // The job runs on the main thread, the downloads are done on a worker thread
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<List<Article>> sections = prefetch(urls, store, jobSignal);
+                if (sections != null && !sections.isEmpty()) {
+                    saveSnapshot(FeedPrefetchJobService.this, feedKey, sections, newestFirst);
+                }
+                if (!jobSignal.isCanceled()) {
+                    // A failed download is tried again later, with the job's backoff
+                    jobFinished(params, sections == null);
+                }
+            }
+        }, "FeedPrefetch");
+        worker.start();
+        // The work is still running
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints are no longer met, the download is stopped and tried again later.
+        // An interrupt does not stop a blocking read, the signal closes the connection.
+        if (signal != null) {
+            signal.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Downloads every URL into the store, one attempt each.
+     * Returns the articles of each URL in the same order, or null if any of them failed
+     * or the signal was cancelled.
+     */
+    static List<List<Article>> prefetch(List<String> urls, FeedStore store,
+                                        CancellationSignal signal) {
+        List<List<Article>> sections = new ArrayList<>(urls.size());
+        boolean success = true;
+        for (String url : urls) {
+            try {
+                sections.add(QueryUtils.fetchArticles(url, store, FetchPolicy.SINGLE_ATTEMPT,
+                        signal));
+            } catch (FetchException e) {
+                Log.e(LOG_TAG, "Prefetch failed: " + url, e);
+                success = false;
+            } catch (OperationCanceledException e) {
+                return null;
+            }
+        }
+        return success ? sections : null;
+    }
+
+    // Saves the first page the way the list shows it, "My Sections" merged by date
+    static void saveSnapshot(Context context, String feedKey, List<List<Article>> sections,
+                             boolean newestFirst) {
+        List<Article> articles;
+        if (sections.size() == 1) {
+            articles = sections.get(0);
+        } else {
+            ArticleRowFactory rowFactory = new ArticleRowFactory(context);
+            List<List<ArticleRow>> sectionRows = new ArrayList<>(sections.size());
+            for (List<Article> section : sections) {
+                sectionRows.add(rowFactory.createRows(section));
+            }
+            List<ArticleRow> merged = FeedMerger.mergeByDate(sectionRows, newestFirst);
+            articles = new ArrayList<>(merged.size());
+            for (ArticleRow row : merged) {
+                articles.add(row.getArticle());
+            }
+        }
+        SnapshotStore.getInstance(context).save(feedKey, articles);
+    }
+
+    // The same page 1 URLs the list asks for at launch
+    static List<String> buildFeedUrls(Context context) {
+        if (ArticleQuery.isMySectionsSelected(context)) {
+            return ArticleQuery.buildMySectionsUrls(context);
+        }
+        List<String> urls = new ArrayList<>(1);
+        urls.add(ArticleQuery.buildUrl(context, ArticleQuery.FIRST_PAGE));
+        return urls;
+    }
+}
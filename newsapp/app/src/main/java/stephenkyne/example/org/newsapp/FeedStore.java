@@ -0,0 +1,228 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local store of Guardian response bodies, one file for each query URL.
+ * Filled by {@link FeedPrefetchJobService} in the background. The list is always asked for
+ * on the network, a saved body is only shown when that fails.
+ * The oldest bodies are deleted once the store is over {@link #MAX_BYTES}.
+ */
+public class FeedStore {
+
+    // LOG TAG
+    private static final String LOG_TAG = "FeedStore Error: ";
+
+    // Folder inside the app files directory where the bodies are saved
+    static final String STORE_DIR = "feeds";
+
+    // A saved body older than this is not shown even when the network fails, and is deleted
+    static final long OFFLINE_FOR_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // Most bytes kept, the oldest bodies are deleted first
+    static final long MAX_BYTES = 1024 * 1024;
+
+    // Ending of a body that is still being written
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // A body still being written after this long was left by a process that was killed,
+    // every download gives up well before
+    static final long TEMP_EXPIRES_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Gives the current time, tests can use their own clock.
+     */
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    // Clock that gives the system time
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final File directory;
+    private final Clock clock;
+    private final long maxBytes;
+
+    public FeedStore(Context context) {
+        this(new File(context.getFilesDir(), STORE_DIR), SYSTEM_CLOCK);
+    }
+
+    FeedStore(File directory, Clock clock) {
+        this(directory, clock, MAX_BYTES);
+    }
+
+    FeedStore(File directory, Clock clock, long maxBytes) {
+        this.directory = directory;
+        this.clock = clock;
+        this.maxBytes = maxBytes;
+    }
+
+    // Gets the saved body for the URL if it was saved in the last maxAgeMillis, otherwise null
+    public File getFresh(String url, long maxAgeMillis) {
+        File file = fileFor(url);
+        if (!file.isFile()) {
+            return null;
+        }
+        long age = clock.currentTimeMillis() - file.lastModified();
+        return age >= 0 && age <= maxAgeMillis ? file : null;
+    }
+
+    // Opens the saved body for reading, the caller closes it
+    public InputStream open(File file) throws IOException {
+        return new BufferedInputStream(new FileInputStream(file), QueryUtils.BUFFER_SIZE);
+    }
+
+    /**
+     * Starts saving a new body for the URL.
+     * The old body is kept until {@link Editor#commit()} is called.
+     */
+    public Editor edit(String url) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        File target = fileFor(url);
+        return new Editor(target, new File(target.getPath() + TEMP_SUFFIX));
+    }
+
+    /**
+     * Deletes bodies older than {@link #OFFLINE_FOR_MILLIS} and left over temp files, then
+     * the oldest bodies until the store fits in its size. The body just saved is kept.
+     */
+    void trim(File keep) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = clock.currentTimeMillis();
+        List<File> bodies = new ArrayList<>(files.length);
+        long total = 0;
+        for (File file : files) {
+            long age = now - file.lastModified();
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // A body being written now is left alone and not counted
+                if (age > TEMP_EXPIRES_MILLIS) {
+                    delete(file);
+                }
+            } else if (age > OFFLINE_FOR_MILLIS && !file.equals(keep)) {
+                delete(file);
+            } else {
+                bodies.add(file);
+                total += file.length();
+            }
+        }
+        // Oldest first
+        Collections.sort(bodies, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : bodies) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (!file.equals(keep)) {
+                total -= file.length();
+                delete(file);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            Log.e(LOG_TAG, "Can not delete " + file);
+        }
+    }
+
+    // The file name is a hash of the URL, so any URL can be used as the key
+    private File fileFor(String url) {
+        return new File(directory, sha1Hex(url));
+    }
+
+    // Hex SHA-1 of the text, also names the files of the ImageLoader disk cache
+    static String sha1Hex(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A body being written. It only replaces the saved body when it is committed,
+     * so a failed download never leaves half a response in the store.
+     */
+    public final class Editor {
+
+        private final File target;
+        private final File temp;
+        private final OutputStream stream;
+
+        private Editor(File target, File temp) throws IOException {
+            this.target = target;
+            this.temp = temp;
+            this.stream = new BufferedOutputStream(new FileOutputStream(temp),
+                    QueryUtils.BUFFER_SIZE);
+        }
+
+        // Where the body is written to
+        public OutputStream stream() {
+            return stream;
+        }
+
+        // Replaces the saved body with the new one, saved time is now.
+        // The oldest bodies are then deleted if the store is too big.
+        public void commit() throws IOException {
+            stream.close();
+            if (!temp.renameTo(target)) {
+                abort();
+                throw new IOException("Can not save " + target);
+            }
+            target.setLastModified(clock.currentTimeMillis());
+            trim(target);
+        }
+
+        // Throws away the new body, the saved body is kept
+        public void abort() {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "abort problem: ", e);
+            }
+            if (temp.exists() && !temp.delete()) {
+                Log.e(LOG_TAG, "Can not delete " + temp);
+            }
+        }
+    }
+}
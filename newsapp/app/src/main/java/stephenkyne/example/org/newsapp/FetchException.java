@@ -0,0 +1,75 @@
+package stephenkyne.example.org.newsapp;
+
+import java.io.IOException;
+
+/**
+ * Why the articles for a URL could not be loaded.
+ * The {@link Kind} lets the screen tell the user what went wrong and lets
+ * {@link QueryUtils} decide if the request is worth trying again.
+ */
+public class FetchException extends IOException {
+
+    public enum Kind {
+        // The device has no connection, the host name could not be looked up
+        OFFLINE,
+        // The server did not answer in time
+        TIMEOUT,
+        // The connection failed or was lost part way through
+        NETWORK,
+        // HTTP 429, too many requests for the API key
+        THROTTLED,
+        // HTTP 5xx, the API is having problems
+        SERVER,
+        // Any other HTTP error, the request itself is wrong and is not tried again
+        CLIENT,
+        // The API failed too many times in a row, it is not asked again for a while
+        CIRCUIT_OPEN
+    }
+
+    // Response code returned with the error, -1 when there was no response
+    public static final int NO_RESPONSE_CODE = -1;
+
+    private final Kind kind;
+    private final int responseCode;
+    private final long retryAfterMillis;
+
+    public FetchException(Kind kind, String message, Throwable cause) {
+        this(kind, message, cause, NO_RESPONSE_CODE, 0);
+    }
+
+    public FetchException(Kind kind, String message, Throwable cause, int responseCode,
+                          long retryAfterMillis) {
+        super(kind + ": " + message, cause);
+        this.kind = kind;
+        this.responseCode = responseCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    // HTTP response code, NO_RESPONSE_CODE when the error happened before a response
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    // Time the server asked to wait before the next request with Retry-After, 0 if not given
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    // True when the same request may work if it is sent again.
+    // These are also the failures that count against the API's CircuitBreaker.
+    public boolean isTransient() {
+        switch (kind) {
+            case TIMEOUT:
+            case NETWORK:
+            case THROTTLED:
+            case SERVER:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
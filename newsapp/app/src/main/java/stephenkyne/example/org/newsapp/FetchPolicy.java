@@ -0,0 +1,83 @@
+package stephenkyne.example.org.newsapp;
+
+import java.util.Random;
+
+/**
+ * How hard {@link QueryUtils} tries to load a URL: the time allowed for all the attempts
+ * together, the number of attempts and the wait between them.
+ * The wait doubles after each failure up to a limit and a random part of it is used, so
+ * many devices that failed together do not all come back at the same moment.
+ */
+public final class FetchPolicy {
+
+    // Used by the screens, a few quick retries within 30 seconds
+    public static final FetchPolicy DEFAULT = new FetchPolicy(30000, 4, 500, 8000,
+            QueryUtils.TIMEOUT_CONNECT, QueryUtils.TIMEOUT_READ);
+
+    // Used by the prefetch job, JobScheduler already tries a failed job again later
+    public static final FetchPolicy SINGLE_ATTEMPT = new FetchPolicy(60000, 1, 0, 0,
+            QueryUtils.TIMEOUT_CONNECT, QueryUtils.TIMEOUT_READ);
+
+    private final long deadlineMillis;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    /**
+     * @param deadlineMillis       time allowed for every attempt and wait together
+     * @param maxAttempts          most requests sent, at least 1
+     * @param baseBackoffMillis    longest wait after the first failure
+     * @param maxBackoffMillis     longest wait after any failure
+     * @param connectTimeoutMillis connect timeout of one attempt
+     * @param readTimeoutMillis    read timeout of one attempt
+     */
+    public FetchPolicy(long deadlineMillis, int maxAttempts, long baseBackoffMillis,
+                       long maxBackoffMillis, int connectTimeoutMillis, int readTimeoutMillis) {
+        if (deadlineMillis <= 0 || maxAttempts < 1 || baseBackoffMillis < 0
+                || maxBackoffMillis < baseBackoffMillis) {
+            throw new IllegalArgumentException("Invalid fetch policy");
+        }
+        this.deadlineMillis = deadlineMillis;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Return the wait before the next attempt, a random time up to
+     * baseBackoffMillis * 2^failedAttempts, never more than maxBackoffMillis.
+     *
+     * @param failedAttempts attempts that failed so far, 1 after the first failure
+     */
+    public long backoffMillis(int failedAttempts, Random random) {
+        long ceiling = baseBackoffMillis;
+        for (int i = 1; i < failedAttempts && ceiling < maxBackoffMillis; i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxBackoffMillis);
+        if (ceiling == 0) {
+            return 0;
+        }
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+}
@@ -0,0 +1,560 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.ImageView;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads article thumbnails into the rows.
+ * Pictures are downloaded once into a disk cache and decoded at the size of the view
+ * on a few background threads. Decoded pictures are kept in memory up to a byte limit,
+ * so scrolling back to a row shows its picture at once.
+ * Two rows asking for the same picture share one download and decode, and a row that is
+ * recycled before its picture is ready stops the work if no other row wants it.
+ */
+public final class ImageLoader {
+
+    // LOG TAG
+    private static final String LOG_TAG = "ImageLoader Error: ";
+
+    // Pictures downloaded and decoded at the same time
+    static final int THREADS = 3;
+
+    // Part of the app's memory used for decoded pictures
+    static final int MEMORY_CACHE_FRACTION = 8;
+
+    // Most bytes of downloaded pictures kept on disk, the least recently used go first
+    static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+
+    // Folder inside the app cache directory where pictures are saved
+    static final String DISK_CACHE_DIR = "thumbnails";
+
+    // Ending of a picture that is still being downloaded
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Age after which a temporary file was left by a killed process and is deleted
+    static final long TEMP_EXPIRES_MILLIS = 10 * 60 * 1000;
+
+    private static ImageLoader instance;
+
+    // Decoded pictures by URL and size
+    private final LruCache<String, Bitmap> memoryCache;
+
+    private final File diskCacheDir;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Downloads and decodes running now by URL and size, guarded by "this"
+    private final Map<String, Request> inFlight = new HashMap<>();
+
+    // The request each view is waiting for. UI thread only.
+    private final Map<ImageView, Request> viewRequests = new WeakHashMap<>();
+
+    // Names of the files being downloaded or decoded, not deleted by the trim, with the
+    // number of requests using each. Guarded by "this".
+    private final Map<String, Integer> reading = new HashMap<>();
+
+    // Only one trim of the disk cache runs at a time, taken before "this"
+    private final Object trimLock = new Object();
+
+    // Counters, written to the load metrics dump
+    private final AtomicLong memoryHitCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong downloadCount = new AtomicLong();
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong cancelCount = new AtomicLong();
+
+    ImageLoader(File diskCacheDir, int memoryCacheBytes) {
+        this.diskCacheDir = diskCacheDir;
+        memoryCache = new LruCache<String, Bitmap>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                // Pictures wait behind the loaders and the UI
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "ImageLoader");
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // Gets the one loader used by the whole app
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (instance == null) {
+            int memoryCacheBytes =
+                    (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_FRACTION);
+            instance = new ImageLoader(
+                    new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIR),
+                    memoryCacheBytes);
+        }
+        return instance;
+    }
+
+    /**
+     * Shows the picture at the URL in the view, decoded at the view's layout size.
+     * The view is hidden when the URL is null. UI thread only.
+     */
+    public void load(String url, ImageView view) {
+        cancel(view);
+        if (url == null || url.isEmpty()) {
+            view.setImageDrawable(null);
+            view.setVisibility(View.GONE);
+            return;
+        }
+        view.setVisibility(View.VISIBLE);
+
+        int width = targetSize(view.getLayoutParams().width, view.getWidth());
+        int height = targetSize(view.getLayoutParams().height, view.getHeight());
+        String key = cacheKey(url, width, height);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            memoryHitCount.incrementAndGet();
+            view.setImageBitmap(bitmap);
+            return;
+        }
+
+        // The row's old picture is cleared until the new one is ready
+        view.setImageDrawable(null);
+        Request request = obtain(key, url, width, height);
+        request.views.add(view);
+        viewRequests.put(view, request);
+    }
+
+    /**
+     * Stops waiting for the picture asked for by the view, called when its row is recycled.
+     * The download and decode stop when no other view or caller wants the picture.
+     * UI thread only.
+     */
+    public void cancel(ImageView view) {
+        Request request = viewRequests.remove(view);
+        if (request != null) {
+            request.views.remove(view);
+            release(request);
+        }
+    }
+
+    /**
+     * Gets the picture decoded at the size, waiting for it on the calling thread.
+     * Shares the work with views and other callers asking for the same picture.
+     * Not for the UI thread.
+     */
+    Bitmap getBitmap(String url, int width, int height) throws IOException,
+            InterruptedException {
+        String key = cacheKey(url, width, height);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            memoryHitCount.incrementAndGet();
+            return bitmap;
+        }
+        Request request = obtain(key, url, width, height);
+        try {
+            return request.task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            release(request);
+        }
+    }
+
+    // Joins the running request for the key, or starts one
+    private synchronized Request obtain(String key, String url, int width, int height) {
+        Request request = inFlight.get(key);
+        if (request == null) {
+            request = new Request(key, url, width, height);
+            inFlight.put(key, request);
+            executor.execute(request.task);
+        }
+        request.waiters++;
+        return request;
+    }
+
+    // One waiter less, the work is stopped when nobody waits for it any more
+    private synchronized void release(Request request) {
+        request.waiters--;
+        if (request.waiters == 0 && !request.task.isDone()) {
+            cancelCount.incrementAndGet();
+            request.task.cancel(true);
+            if (inFlight.get(request.key) == request) {
+                inFlight.remove(request.key);
+            }
+        }
+    }
+
+    // Called on a worker thread when a request ends, the picture is given to its views
+    private void onRequestDone(final Request request) {
+        synchronized (this) {
+            if (inFlight.get(request.key) == request) {
+                inFlight.remove(request.key);
+            }
+        }
+        if (request.task.isCancelled()) {
+            return;
+        }
+        final Bitmap bitmap;
+        try {
+            bitmap = request.task.get();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Thumbnail problem: " + request.url, e.getCause());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (bitmap == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (ImageView view : request.views) {
+                    // The view may have been given another picture since
+                    if (viewRequests.get(view) == request) {
+                        viewRequests.remove(view);
+                        view.setImageBitmap(bitmap);
+                    }
+                }
+                request.views.clear();
+            }
+        });
+    }
+
+    // Downloads the picture if it is not on disk yet, then decodes it. On a worker thread.
+    private Bitmap loadBitmap(Request request) throws IOException, InterruptedException {
+        File file = new File(diskCacheDir, FeedStore.sha1Hex(request.url));
+        // Kept by the trim of another worker until it is decoded, marked before the file is
+        // looked for so it can not be deleted between the look up and the decode
+        startReading(file.getName());
+        try {
+            if (file.isFile()) {
+                diskHitCount.incrementAndGet();
+                // Keeps recently used pictures when the cache is trimmed
+                file.setLastModified(System.currentTimeMillis());
+            } else {
+                download(request.url, file);
+                downloadCount.incrementAndGet();
+                trimDiskCache();
+            }
+            if (Thread.interrupted()) {
+                // The row was recycled while downloading, there is no need to decode
+                throw new InterruptedException();
+            }
+            decodeCount.incrementAndGet();
+            Bitmap bitmap = decodeSampled(file, request.width, request.height);
+            if (bitmap != null) {
+                // Cached before the request ends, so a caller that misses the request finds
+                // it here
+                memoryCache.put(request.key, bitmap);
+            }
+            return bitmap;
+        } finally {
+            stopReading(file.getName());
+        }
+    }
+
+    private synchronized void startReading(String name) {
+        Integer count = reading.get(name);
+        reading.put(name, count == null ? 1 : count + 1);
+    }
+
+    private synchronized void stopReading(String name) {
+        Integer count = reading.get(name);
+        if (count == null || count <= 1) {
+            reading.remove(name);
+        } else {
+            reading.put(name, count - 1);
+        }
+    }
+
+    // Saves the picture at the URL to the file, nothing is left behind if it fails.
+    // The connection is NOT disconnected once the response was read to the end, its socket
+    // goes back to the keep-alive pool for the next picture.
+    private void download(String url, File file) throws IOException {
+        if (!diskCacheDir.isDirectory() && !diskCacheDir.mkdirs()) {
+            throw new IOException("Can not create " + diskCacheDir);
+        }
+        File temp = new File(file.getPath() + TEMP_SUFFIX + Thread.currentThread().getId());
+        HttpURLConnection connection = null;
+        InputStream in = null;
+        // True once the response was read to the end and the socket can be used again
+        boolean reusable = false;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(QueryUtils.TIMEOUT_CONNECT);
+            connection.setReadTimeout(QueryUtils.TIMEOUT_READ);
+            int responseCode = connection.getResponseCode();
+            if (responseCode != QueryUtils.SUCCESS_RESPONSE_CODE) {
+                // The error body is read so the connection can be used again
+                InputStream error = connection.getErrorStream();
+                try {
+                    QueryUtils.drain(error);
+                } finally {
+                    QueryUtils.closeQuietly(error);
+                }
+                reusable = true;
+                throw new IOException("Response code " + responseCode + " for " + url);
+            }
+            in = new BufferedInputStream(connection.getInputStream(), QueryUtils.BUFFER_SIZE);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(temp),
+                    QueryUtils.BUFFER_SIZE);
+            try {
+                byte[] buffer = new byte[QueryUtils.BUFFER_SIZE];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                reusable = true;
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Can not save " + file);
+            }
+        } finally {
+            QueryUtils.closeQuietly(in);
+            if (connection != null && !reusable) {
+                // After a failure the socket state is unknown, so it is not reused.
+                connection.disconnect();
+            }
+            if (temp.exists() && !temp.delete()) {
+                Log.e(LOG_TAG, "Can not delete " + temp);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used pictures until the cache fits in DISK_CACHE_BYTES.
+     * Temporary files being written are not counted, ones left by a killed process are
+     * deleted. The lock is only taken for each delete, a picture being decoded is kept.
+     */
+    private void trimDiskCache() {
+        synchronized (trimLock) {
+            File[] files = diskCacheDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long total = 0;
+            List<SavedPicture> pictures = new ArrayList<>(files.length);
+            for (File file : files) {
+                long lastModified = file.lastModified();
+                if (file.getName().contains(TEMP_SUFFIX)) {
+                    if (now - lastModified > TEMP_EXPIRES_MILLIS && !file.delete()) {
+                        Log.e(LOG_TAG, "Can not delete " + file);
+                    }
+                    continue;
+                }
+                SavedPicture picture = new SavedPicture(file, file.length(), lastModified);
+                total += picture.length;
+                pictures.add(picture);
+            }
+            if (total <= DISK_CACHE_BYTES) {
+                return;
+            }
+            Collections.sort(pictures, new Comparator<SavedPicture>() {
+                @Override
+                public int compare(SavedPicture a, SavedPicture b) {
+                    return Long.compare(a.lastModified, b.lastModified);
+                }
+            });
+            for (SavedPicture picture : pictures) {
+                if (total <= DISK_CACHE_BYTES) {
+                    break;
+                }
+                synchronized (this) {
+                    if (reading.containsKey(picture.file.getName()) || !picture.file.delete()) {
+                        continue;
+                    }
+                }
+                total -= picture.length;
+            }
+        }
+    }
+
+    /**
+     * Decodes the picture so it just covers width x height, the way centerCrop shows it.
+     * A width or height of 0 decodes the picture at full size.
+     * inSampleSize skips whole rows and columns while reading, then the decoder scales
+     * the rest down to the exact size, so the full size picture is never in memory.
+     */
+    static Bitmap decodeSampled(File file, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        // Thumbnails have no transparency, half the bytes of ARGB_8888
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        if (width <= 0 || height <= 0) {
+            options.inScaled = false;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+
+        // The side that needs the least shrinking decides the size
+        float scale = Math.max((float) width / options.outWidth,
+                (float) height / options.outHeight);
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1) {
+            sampleSize *= 2;
+        }
+
+        options.inSampleSize = sampleSize;
+        int sampledWidth = options.outWidth / sampleSize;
+        int targetWidth = Math.round(options.outWidth * scale);
+        if (sampledWidth > targetWidth) {
+            // The decoder scales by inTargetDensity / inDensity
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = targetWidth;
+        } else {
+            options.inScaled = false;
+        }
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    // The layout size if the view has a fixed one, otherwise its current size
+    private static int targetSize(int layoutSize, int currentSize) {
+        if (layoutSize > 0) {
+            return layoutSize;
+        }
+        if (currentSize > 0) {
+            return currentSize;
+        }
+        // Not laid out yet and no fixed size, decoded at full size
+        return 0;
+    }
+
+    private static String cacheKey(String url, int width, int height) {
+        return url + '@' + width + 'x' + height;
+    }
+
+    // Number of pictures shown from memory
+    public long getMemoryHitCount() {
+        return memoryHitCount.get();
+    }
+
+    // Number of pictures read from the disk cache
+    public long getDiskHitCount() {
+        return diskHitCount.get();
+    }
+
+    // Number of pictures downloaded
+    public long getDownloadCount() {
+        return downloadCount.get();
+    }
+
+    // Number of pictures decoded
+    public long getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ImageLoader memory hits: " + getMemoryHitCount()
+                + " disk hits: " + getDiskHitCount()
+                + " downloads: " + getDownloadCount()
+                + " decodes: " + getDecodeCount()
+                + " cancelled: " + cancelCount.get();
+    }
+
+    /**
+     * A file of the disk cache with its size and last use, read once for the trim.
+     */
+    private static final class SavedPicture {
+
+        final File file;
+        final long length;
+        final long lastModified;
+
+        SavedPicture(File file, long length, long lastModified) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * One picture at one size, and everyone waiting for it.
+     */
+    private final class Request {
+
+        final String key;
+        final String url;
+        final int width;
+        final int height;
+        final FutureTask<Bitmap> task;
+
+        // Views and blocking callers waiting, guarded by the ImageLoader
+        int waiters;
+
+        // Views to show the picture in. UI thread only.
+        final List<ImageView> views = new ArrayList<>(1);
+
+        Request(String key, String url, int width, int height) {
+            this.key = key;
+            this.url = url;
+            this.width = width;
+            this.height = height;
+            task = new FutureTask<Bitmap>(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws IOException, InterruptedException {
+                    return loadBitmap(Request.this);
+                }
+            }) {
+                @Override
+                protected void done() {
+                    onRequestDone(Request.this);
+                }
+            };
+        }
+    }
+}
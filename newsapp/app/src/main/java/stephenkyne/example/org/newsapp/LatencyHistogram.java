@@ -0,0 +1,102 @@
+package stephenkyne.example.org.newsapp;
+
+import java.util.Locale;
+
+/**
+ * Counts durations in buckets that grow by 25% each, from 10 microseconds to about 2 minutes.
+ * Percentiles are read back as the upper edge of the bucket they fall in, so they are
+ * never more than 25% too high. Thread safe.
+ */
+final class LatencyHistogram {
+
+    // Upper edge of the first bucket, in nanoseconds
+    private static final long SMALLEST_BUCKET_NANOS = 10_000L;
+
+    // Each bucket is this much wider than the one before
+    private static final double BUCKET_GROWTH = 1.25;
+
+    // Upper edge of every bucket, in nanoseconds. The last bucket counts everything longer.
+    private static final long[] BUCKET_EDGES = buildBucketEdges(SMALLEST_BUCKET_NANOS,
+            120_000_000_000L);
+
+    private final long[] counts = new long[BUCKET_EDGES.length + 1];
+    private long total;
+    private long sumNanos;
+    private long maxNanos;
+
+    private static long[] buildBucketEdges(long smallest, long largest) {
+        int size = (int) Math.ceil(Math.log((double) largest / smallest) / Math.log(BUCKET_GROWTH)) + 1;
+        long[] edges = new long[size];
+        double edge = smallest;
+        for (int i = 0; i < size; i++) {
+            edges[i] = (long) edge;
+            edge *= BUCKET_GROWTH;
+        }
+        return edges;
+    }
+
+    // Adds one duration, in nanoseconds
+    synchronized void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        counts[bucketFor(nanos)]++;
+        total++;
+        sumNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    // Binary search for the first bucket whose upper edge is not below the duration
+    private static int bucketFor(long nanos) {
+        int low = 0;
+        int high = BUCKET_EDGES.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (BUCKET_EDGES[middle] < nanos) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Number of durations recorded
+    synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * Return the duration, in nanoseconds, that the given share of durations are at or below.
+     *
+     * @param percentile from 0 to 100, for example 99 for p99
+     */
+    synchronized long getPercentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // The last bucket has no upper edge, the longest duration is used
+                return i < BUCKET_EDGES.length ? Math.min(BUCKET_EDGES[i], maxNanos) : maxNanos;
+            }
+        }
+        return maxNanos;
+    }
+
+    // One line summary, durations in milliseconds
+    synchronized String summary() {
+        long mean = total == 0 ? 0 : sumNanos / total;
+        return String.format(Locale.US,
+                "count=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                total, millis(mean), millis(getPercentile(50)), millis(getPercentile(90)),
+                millis(getPercentile(99)), millis(maxNanos));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,147 @@
+package stephenkyne.example.org.newsapp;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time spent in each stage of loading the list, kept in a {@link LatencyHistogram} per stage.
+ * Shows whether a slow refresh was the network, the parser or the UI.
+ * Dump with "adb shell dumpsys activity stephenkyne.example.org.newsapp/.MainActivity",
+ * add "--export" to also write the numbers to a file.
+ */
+public final class LoadMetrics {
+
+    // Stage names, in the order they happen
+    // DNS lookup and opening the connection, close to 0 when a kept alive connection is used
+    public static final String STAGE_CONNECT = "connect";
+    // From the request being sent to the status line of the response
+    public static final String STAGE_FIRST_BYTE = "first_byte";
+    // Time spent waiting on the body from the network
+    public static final String STAGE_DOWNLOAD = "download";
+    // Time spent in the JSON parser, reading the body without the network waits
+    public static final String STAGE_PARSE = "parse";
+    // From onLoadFinished to the first row bound by the adapter
+    public static final String STAGE_FIRST_BIND = "first_bind";
+    // From the screen being created to its first row, when the row came from the saved list
+    public static final String STAGE_FIRST_ROW_CACHED = "first_row_cached";
+    // From the screen being created to its first row, when the row came from the network
+    public static final String STAGE_FIRST_ROW_NETWORK = "first_row_network";
+
+    // A row bound longer than this after the load was delivered is not counted as its first bind,
+    // for example when the new list had no changed rows
+    static final long MAX_FIRST_BIND_WAIT_MILLIS = 2000;
+
+    // Name of the file written by export
+    static final String EXPORT_FILE_NAME = "load-metrics.txt";
+
+    private static LoadMetrics instance;
+
+    private final Map<String, LatencyHistogram> stages = new LinkedHashMap<>();
+
+    // When the last load was delivered, 0 once its first row was bound. UI thread only.
+    private long deliveredAtMillis;
+
+    // When the screen was created, 0 once its first row was bound. UI thread only.
+    private long createdAtMillis;
+
+    // Stage the first row is recorded in, set by the first load delivered. UI thread only.
+    private String firstRowStage;
+
+    private LoadMetrics() {
+        stages.put(STAGE_CONNECT, new LatencyHistogram());
+        stages.put(STAGE_FIRST_BYTE, new LatencyHistogram());
+        stages.put(STAGE_DOWNLOAD, new LatencyHistogram());
+        stages.put(STAGE_PARSE, new LatencyHistogram());
+        stages.put(STAGE_FIRST_BIND, new LatencyHistogram());
+        stages.put(STAGE_FIRST_ROW_CACHED, new LatencyHistogram());
+        stages.put(STAGE_FIRST_ROW_NETWORK, new LatencyHistogram());
+    }
+
+    // Gets the metrics used by the whole app
+    public static synchronized LoadMetrics getInstance() {
+        if (instance == null) {
+            instance = new LoadMetrics();
+        }
+        return instance;
+    }
+
+    // Adds a duration, in nanoseconds, to a stage
+    public void record(String stage, long nanos) {
+        LatencyHistogram histogram = stages.get(stage);
+        if (histogram != null) {
+            histogram.record(nanos);
+        }
+    }
+
+    // Called when the list screen is created, its first row is timed from here. UI thread only.
+    public void onScreenCreated() {
+        createdAtMillis = SystemClock.uptimeMillis();
+        firstRowStage = null;
+    }
+
+    /**
+     * Called by onLoadFinished, the next row bound is timed from here. UI thread only.
+     *
+     * @param firstRowStage STAGE_FIRST_ROW_CACHED or STAGE_FIRST_ROW_NETWORK, where the rows
+     *                      came from, used if no row was bound since the screen was created
+     */
+    public void onLoadDelivered(String firstRowStage) {
+        deliveredAtMillis = SystemClock.uptimeMillis();
+        if (createdAtMillis != 0 && this.firstRowStage == null) {
+            this.firstRowStage = firstRowStage;
+        }
+    }
+
+    // Called for every row bound, only the first one after a load is recorded. UI thread only.
+    public void onRowBound() {
+        if (createdAtMillis != 0 && firstRowStage != null) {
+            record(firstRowStage, (SystemClock.uptimeMillis() - createdAtMillis) * 1_000_000L);
+            createdAtMillis = 0;
+        }
+        if (deliveredAtMillis == 0) {
+            return;
+        }
+        long waited = SystemClock.uptimeMillis() - deliveredAtMillis;
+        deliveredAtMillis = 0;
+        if (waited <= MAX_FIRST_BIND_WAIT_MILLIS) {
+            record(STAGE_FIRST_BIND, waited * 1_000_000L);
+        }
+    }
+
+    // Writes one line for each stage
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Load metrics:");
+        for (Map.Entry<String, LatencyHistogram> stage : stages.entrySet()) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(stage.getKey());
+            writer.print(": ");
+            writer.println(stage.getValue().summary());
+        }
+        writer.print(prefix);
+        writer.print("  ");
+        writer.println(ArticleFetcher.getInstance());
+    }
+
+    // Writes the dump to a file in the given folder, returns the file
+    public File exportTo(File directory) throws IOException {
+        File file = new File(directory, EXPORT_FILE_NAME);
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8));
+        try {
+            dump("", writer);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -1,40 +1,124 @@
 package stephenkyne.example.org.newsapp;
 
 import androidx.appcompat.app.AppCompatActivity;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.IntentFilter;
 import android.content.Loader;
 import android.app.LoaderManager;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.text.format.DateUtils;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.net.NetworkInfo;
 
+import androidx.appcompat.widget.SearchView;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<List<Article>> {
+        LoaderManager.LoaderCallbacks<List<ArticleRow>> {
 
     /**
      * Constant value for the article loader ID. We can choose any integer.
      * This really only comes into play if you're using multiple loaders.
      */
     private static final int ARTICLE_LOADER_ID = 1;
+
+    /**
+     * Loader ID for the next page of articles, loaded while the user scrolls
+     * near the end of the list.
+     */
+    private static final int NEXT_PAGE_LOADER_ID = 2;
+
+    /**
+     * Loader ID for the articles published since the list was loaded, used by refresh.
+     */
+    private static final int REFRESH_LOADER_ID = 3;
+
+    /**
+     * Loader ID for the list saved by the last load, shown while the network loads.
+     */
+    private static final int SNAPSHOT_LOADER_ID = 4;
+
+    // dumpsys argument that writes the load metrics to a file
+    private static final String ARG_EXPORT_METRICS = "--export";
+
+    // Bundle key for the page number given to the next page loader
+    private static final String ARG_PAGE = "page";
     private TextView mEmptyStateTextView;
+
+    // Says how old the list is while the saved list is shown
+    private TextView snapshotBannerView;
+
+    // True while the list shown is the one saved by the last launch
+    private boolean showingSnapshot = false;
+
+    // When the list shown was saved, milliseconds since 1970-01-01 UTC
+    private long snapshotSavedAtMillis;
+
+    // True when there was no connection when the screen was created
+    private boolean offline = false;
     /**
      * Adapter for the list of articles
      */
     private ArticleAdapter articleAdapter;
 
+    // Lays out the rows, tells which ones are on screen
+    private LinearLayoutManager layoutManager;
+
+    // The last page of articles added to the list, 0 when nothing is shown yet
+    private int loadedPage = 0;
+
+    // The page that is being loaded now, 0 when no next page is loading
+    private int loadingPage = 0;
+
+    // True when the API returned fewer articles than asked for, there are no more pages
+    private boolean lastPageReached = false;
+
+    // Ids of the articles in the list, a page that overlaps the last one
+    // (new articles were published in between) or a refresh does not show the same article twice.
+    // Only a hash of each id is kept, so a long session of scrolling stays small.
+    private final SeenIdSet shownArticleIds = new SeenIdSet();
+
+    // The rows in the list, a copy is given to the adapter after every change
+    private final List<ArticleRow> shownArticles = new ArrayList<>();
+
+    // Number of rows from the end of the list where the next page starts loading
+    private int prefetchDistance;
+
+    // Words typed in the search box, empty when the feed is shown
+    private String searchQuery = "";
+
+    // Timestamps formatter generation of the dates on screen
+    private int dateGeneration;
+
+    // Shows the dates in the new time zone while the screen is shown
+    private final BroadcastReceiver timeZoneReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // The application receiver may not have dropped the formatter yet
+            Timestamps.invalidateFormatter();
+            rebindChangedDates();
+        }
+    };
+
+    // Most rows shown for a search
+    private static final int MAX_SEARCH_RESULTS = 200;
+
     // URL base used for news from the Guardian data api
     public static final String ARTICLE_JSON_BASE_URL = "https://content.guardianapis.com/";
 
@@ -45,6 +129,8 @@ public class MainActivity extends AppCompatActivity implements
     public static final String PARAM_Q_QUERY = "q";
     public static final String PARAM_ORDER_BY = "order-by";
     public static final String PARAM_PAGE_SIZE = "page-size";
+    public static final String PARAM_PAGE = "page";
+    public static final String PARAM_FROM_DATE = "from-date";
     public static final String PARAM_SHOW_FIELDS = "show-fields";
     public static final String PARAM_FORMAT = "format";
     public static final String PARAM_SHOW_TAGS = "show-tags";
@@ -55,8 +141,11 @@ public class MainActivity extends AppCompatActivity implements
     public static final String SHOW_TAGS_CONTRIBUTOR = "contributor";
 
     // The show fields we want our API to return
-    // Gets trailText, Summary of the article
-    public static final String SHOW_FIELDS_TRAILTEXT = "trailText";
+    // Gets trailText, Summary of the article, and the thumbnail picture
+    public static final String SHOW_FIELDS_TRAILTEXT_THUMBNAIL = "trailText,thumbnail";
+
+    // The text of the whole article, without HTML, shown by the reader
+    public static final String SHOW_FIELDS_BODY_TEXT = "bodyText";
 
     // The format we want our API to return
     public static final String REQUEST_FORMAT = "json";
@@ -65,42 +154,68 @@ public class MainActivity extends AppCompatActivity implements
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        dateGeneration = Timestamps.getFormatterGeneration();
+        if (savedInstanceState == null) {
+            // The time to the first row is measured from here
+            LoadMetrics.getInstance().onScreenCreated();
+        }
+
+        // Find the {@link RecyclerView} object in the view hierarchy of the {@link Activity}.
+        // There should be a {@link RecyclerView} with the view ID called list, which is declared
+        // in the activity_main.xml layout file.
+        RecyclerView articleListView = findViewById(R.id.list);
 
-        // Find the {@link ListView} object in the view hierarchy of the {@link Activity}.
-        // There should be a {@link ListView} with the view ID called list, which is declared in the
-        // word_list.xml layout file.
-        ListView articleListView = findViewById(R.id.list);
+        // Rows are shown top to bottom
+        layoutManager = new LinearLayoutManager(this);
+        articleListView.setLayoutManager(layoutManager);
 
         // Finds textview to use for empty state
+        // It is shown while the list has no rows
         mEmptyStateTextView = findViewById(R.id.empty_view);
+        snapshotBannerView = findViewById(R.id.snapshot_banner);
 
-        // Tells art article List View to use mEmptyStateTextView on Empty state
-        articleListView.setEmptyView(mEmptyStateTextView);
-        //  ArrayList<Article> articles = QueryUtils.extractArticles();
-        // Create an {@link ArticleAdapter}, whose data source is a list of {@link Article}s. The
-        // adapter knows how to create list items for each item in the list.
+        // Create a new adapter, opens the article in the reader when a row is clicked
+        articleAdapter = new ArticleAdapter(new ArticleAdapter.OnArticleClickListener() {
+            @Override
+            public void onArticleClick(ArticleRow article) {
+                if (article.getArticle().getId() != null) {
+                    startActivity(ReaderActivity.newIntent(MainActivity.this, article));
+                    return;
+                }
+                // Without an id the text can not be asked for, the website is opened instead
+                String websiteUrl = article.getWebUrl();
 
-        // Create a new adapter that takes an empty list of articles as input
-        articleAdapter = new ArticleAdapter(this, new ArrayList<Article>());
+                // Calls an intent to open a webBrowser and go to article website address.
+                Intent intent = new Intent(Intent.ACTION_VIEW);
+                intent.setData(Uri.parse(websiteUrl));
+                startActivity(intent);
+            }
+        }, ImageLoader.getInstance(this));
 
         // Make the {@link articleListView} use the {@link articleAdapter} we created above, so that the
         // {@link articleListView} will display list items for each {@link Article} in the list.
         articleListView.setAdapter(articleAdapter);
 
-        // Set a click listener to open a web browser to go to the article
-        articleListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
+        // How close to the end of the list the next page is asked for
+        prefetchDistance = ArticleQuery.getPrefetchDistance(this);
 
-                // Get the {@link Article} object at the given position the user clicked on
-                Article article = articleAdapter.getItem(position);
-                // gets website address / location of the news article
-                String websiteUrl = article.getWebUrl();
+        // Starts loading the next page when the user scrolls near the end of the list
+        articleListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = layoutManager.getItemCount();
+                int rowsLeft = totalItemCount - 1 - layoutManager.findLastVisibleItemPosition();
+                if (totalItemCount > 0 && rowsLeft <= prefetchDistance) {
+                    loadNextPage();
+                }
+            }
 
-                // Calls an intent to open a webBrowser and go to article website address.
-                Intent intent = new Intent(Intent.ACTION_VIEW);
-                intent.setData(Uri.parse(websiteUrl));
-                startActivity(intent);
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                // The rows the user stopped on are the ones likely to be opened
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchBodies();
+                }
             }
         });
 
@@ -111,96 +226,405 @@ public class MainActivity extends AppCompatActivity implements
         // Get details on the currently active default data network
         NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
 
+        // Get a reference to the LoaderManager, in order to interact with loaders.
+        LoaderManager loaderManager = getLoaderManager();
+
+        // The list saved by the last load is read from the phone and shown first,
+        // with or without a connection
+        loaderManager.initLoader(SNAPSHOT_LOADER_ID, null, this);
+
         // If there is a network connection, fetch data
         if (networkInfo != null && networkInfo.isConnected()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager();
-
             // Initialize the loader. Pass in the int ID constant defined above and pass in null for
             // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
             // because this activity implements the LoaderCallbacks interface).
+            // The saved list is replaced in place when it is back.
             loaderManager.initLoader(ARTICLE_LOADER_ID, null, this);
         } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
-
-            // Update empty state with no connection error message
+            // Otherwise, the saved list is shown with its age, or this error if there is none
+            offline = true;
             mEmptyStateTextView.setText(R.string.no_internet_connection);
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // A locale change makes a new activity, a time zone change does not
+        registerReceiver(timeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+        rebindChangedDates();
+    }
+
+    // Binds the rows again when the time zone or locale changed since they were bound,
+    // each row formats its date again as it is bound
+    private void rebindChangedDates() {
+        int generation = Timestamps.getFormatterGeneration();
+        if (generation != dateGeneration) {
+            dateGeneration = generation;
+            articleAdapter.notifyItemRangeChanged(0, articleAdapter.getItemCount());
+        }
+    }
+
+    @Override
+    protected void onRestart() {
+        super.onRestart();
+        // The loader keeps its list while the screen is hidden and shows it again, unless
+        // the settings were changed meanwhile and another feed is wanted
+        Loader<List<ArticleRow>> loader = getLoaderManager().getLoader(ARTICLE_LOADER_ID);
+        if (loader instanceof ArticleLoader && !((ArticleLoader) loader).getFeedKey()
+                .equals(ArticleQuery.getFeedKey(this))) {
+            restartFirstPage();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        unregisterReceiver(timeZoneReceiver);
+        // Saves the HTTP response cache so the next launch can revalidate instead of downloading
+        NewsApplication.flushHttpCache();
+    }
+
     // Creates the query to access and call the select information from the news site.
     @Override
-    public Loader<List<Article>> onCreateLoader(int i, Bundle bundle) {
-
-        // Creates sharedPrefs to access the keys and values for the query
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-
-        //Gets the section / news feed to be displayed
-        String newsSectionSelected = sharedPrefs.getString(
-                getString(R.string.settings_select_feed_key),
-                getString(R.string.settings_select_feed_default));
-
-        // Gets the number of Articles to be displayed value
-        String numberOfArticles = sharedPrefs.getString(
-                getString(R.string.settings_number_articles_key),
-                getString(R.string.settings_number_articles_default));
-
-        // Gets the order by settings
-        String orderBy = sharedPrefs.getString(
-                getString(R.string.settings_order_by_key),
-                getString(R.string.settings_order_by_default));
-        // Base web address/
-        Uri baseUri = Uri.parse(ARTICLE_JSON_BASE_URL);
-        Uri.Builder uriBuilder = baseUri.buildUpon();
-        // the Section (like "sports", "world news" or "search"
-        uriBuilder.appendEncodedPath(newsSectionSelected);
-        uriBuilder.appendQueryParameter(PARAM_Q_QUERY, "");
-        uriBuilder.appendQueryParameter(PARAM_FORMAT, REQUEST_FORMAT);
-        uriBuilder.appendQueryParameter(PARAM_PAGE_SIZE, numberOfArticles);
-        // Show Tags, gets the author, can also get a thumbnail (not used)
-        uriBuilder.appendQueryParameter(PARAM_SHOW_TAGS, SHOW_TAGS_CONTRIBUTOR);
-        // Gets the trailText / the summary of the article
-        uriBuilder.appendQueryParameter(PARAM_SHOW_FIELDS, SHOW_FIELDS_TRAILTEXT);
-        // order by, "newest" or "oldest"
-        uriBuilder.appendQueryParameter(PARAM_ORDER_BY, orderBy);
-        // API key
-        uriBuilder.appendQueryParameter(PARAM_API_KEY, API_KEY);
+    public Loader<List<ArticleRow>> onCreateLoader(int i, Bundle bundle) {
+        // The first page, unless the next page loader was given another page
+        int page = ArticleQuery.FIRST_PAGE;
+        if (bundle != null) {
+            page = bundle.getInt(ARG_PAGE, ArticleQuery.FIRST_PAGE);
+        }
+        // The list saved by the last load
+        if (i == SNAPSHOT_LOADER_ID) {
+            return new SnapshotLoader(this);
+        }
+        // A refresh only loads what was published since the list was loaded
+        if (i == REFRESH_LOADER_ID) {
+            return new RefreshLoader(this, ArticleQuery.getSelectedSections(this));
+        }
+        // "My Sections" loads page 1 of every picked section together
+        if (page == ArticleQuery.FIRST_PAGE && ArticleQuery.isMySectionsSelected(this)) {
+            return new MultiSectionLoader(this, ArticleQuery.buildMySectionsUrls(this),
+                    ArticleQuery.isNewestFirst(this));
+        }
         // returns the build URI / URL
-        return new ArticleLoader(this, uriBuilder.toString());
+        return new ArticleLoader(this, ArticleQuery.buildUrl(this, page), page);
+    }
+
+    // Asks for the page after the last one shown, if it is not already loading
+    private void loadNextPage() {
+        // Search results come from the index, scrolling them does not load more pages
+        if (loadedPage == 0 || loadingPage != 0 || lastPageReached || !searchQuery.isEmpty()) {
+            return;
+        }
+        loadingPage = loadedPage + 1;
+        Bundle args = new Bundle();
+        args.putInt(ARG_PAGE, loadingPage);
+        getLoaderManager().restartLoader(NEXT_PAGE_LOADER_ID, args, this);
+    }
+
+    // Loads page 1 again, it replaces the whole list
+    private void restartFirstPage() {
+        cancelNextPage();
+        getLoaderManager().restartLoader(ARTICLE_LOADER_ID, null, this);
+    }
+
+    // Stops a next page that is loading, it was asked for after the rows of the old list
+    // and would be added after the rows of the new one
+    private void cancelNextPage() {
+        getLoaderManager().destroyLoader(NEXT_PAGE_LOADER_ID);
+        loadingPage = 0;
     }
 
     @Override
-    public void onLoadFinished(Loader<List<Article>> loader, List<Article> articles) {
+    public void onLoadFinished(Loader<List<ArticleRow>> loader, List<ArticleRow> articles) {
+        if (loader instanceof SnapshotLoader) {
+            onSnapshotFinished((SnapshotLoader) loader, articles);
+            return;
+        }
+
+        // The first row bound from here on is timed
+        LoadMetrics.getInstance().onLoadDelivered(LoadMetrics.STAGE_FIRST_ROW_NETWORK);
+
         // Hide loading indicator because the data has been loaded
         View loadingIndicator = findViewById(R.id.loading_indicator);
         loadingIndicator.setVisibility(View.GONE);
 
-        // Set empty state text to display "Sorry, No articles found."
-        mEmptyStateTextView.setText(R.string.no_articles);
+        if (loader instanceof RefreshLoader) {
+            onRefreshFinished((RefreshLoader) loader, articles);
+            return;
+        }
+
+        // Set empty state text to display "Sorry, No articles found.",
+        // or why the articles could not be loaded
+        FetchException error = ((ArticleLoader) loader).getError();
+        mEmptyStateTextView.setText(
+                error != null ? getErrorMessage(error) : R.string.no_articles);
 
-        // Clear the adapter of previous article data
-        articleAdapter.clear();
+        int page = ((ArticleLoader) loader).getPage();
+        if (page == loadingPage) {
+            // The next page is back, another one can be asked for
+            loadingPage = 0;
+        }
+        if (articles == null && error != null && page != ArticleQuery.FIRST_PAGE) {
+            // A next page that failed is asked for again on the next scroll
+            return;
+        }
 
-        // If there is a valid list of {@link Articles}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
+        if (page == ArticleQuery.FIRST_PAGE && articles == null && showingSnapshot) {
+            // The saved list is better than an error, it stays with its age and the error shown
+            if (error != null && error.getKind() == FetchException.Kind.OFFLINE) {
+                showSnapshotBanner(getString(R.string.snapshot_offline, getSnapshotAge()));
+            } else {
+                showSnapshotBanner(getString(R.string.snapshot_failed, getString(
+                        error != null ? getErrorMessage(error) : R.string.error_request),
+                        getSnapshotAge()));
+            }
+            return;
+        }
+
+        if (page == ArticleQuery.FIRST_PAGE) {
+            // The saved list, if shown, is replaced by the one just loaded
+            showingSnapshot = false;
+            snapshotBannerView.setVisibility(View.GONE);
+            // A next page of the old list must not be added to this one
+            cancelNextPage();
+            // Clear the previous article data, page 1 starts the list again.
+            // The adapter works out which rows are new, so only those are added to the screen.
+            shownArticles.clear();
+            shownArticleIds.clear();
+            loadedPage = 0;
+            lastPageReached = false;
+        } else if (page != loadedPage + 1) {
+            // A page that is already shown or arrived out of order, adding it would
+            // repeat or reorder articles so it is ignored.
+            return;
+        }
+        loadedPage = page;
+
+        // Fewer articles than asked for means this was the last page
+        int pageSize = ArticleQuery.parseIntOrDefault(
+                ArticleQuery.getPageSizeSetting(this), 0);
+        // "My Sections" only shows page 1 of each section
+        if (articles == null || articles.isEmpty() || articles.size() < pageSize
+                || loader instanceof MultiSectionLoader) {
+            lastPageReached = true;
+        }
+
+        // If there is a valid list of {@link Articles}s, then add them to the list.
         if (articles != null && !articles.isEmpty()) {
-            articleAdapter.addAll(articles);
+            shownArticles.addAll(newArticles(articles));
+        }
+        showArticles();
+    }
+
+    // Shows the list saved by the last load, unless the network was quicker
+    private void onSnapshotFinished(SnapshotLoader loader, List<ArticleRow> articles) {
+        if (loadedPage != 0 || articles == null || articles.isEmpty()) {
+            if (offline) {
+                // Nothing else is coming, the empty view shows the error
+                findViewById(R.id.loading_indicator).setVisibility(View.GONE);
+            }
+            return;
+        }
+        // The first row bound from here on is timed
+        LoadMetrics.getInstance().onLoadDelivered(LoadMetrics.STAGE_FIRST_ROW_CACHED);
+        findViewById(R.id.loading_indicator).setVisibility(View.GONE);
+        shownArticles.clear();
+        shownArticleIds.clear();
+        shownArticles.addAll(newArticles(articles));
+        showingSnapshot = true;
+        snapshotSavedAtMillis = loader.getSavedAtMillis();
+        showSnapshotBanner(getString(
+                offline ? R.string.snapshot_offline : R.string.snapshot_updating,
+                getSnapshotAge()));
+        showArticles();
+    }
+
+    // Gets how old the saved list is, "2 hours ago"
+    private CharSequence getSnapshotAge() {
+        return DateUtils.getRelativeTimeSpanString(snapshotSavedAtMillis,
+                System.currentTimeMillis(), DateUtils.MINUTE_IN_MILLIS);
+    }
+
+    private void showSnapshotBanner(String text) {
+        snapshotBannerView.setText(text);
+        snapshotBannerView.setVisibility(View.VISIBLE);
+    }
+
+    // Adds the articles published since the list was loaded to the top of the list
+    private void onRefreshFinished(RefreshLoader loader, List<ArticleRow> articles) {
+        if (loader.isFullResyncNeeded()) {
+            // Too much is new, page 1 is loaded again
+            restartFirstPage();
+            return;
+        }
+        if (articles == null || articles.isEmpty()) {
+            // Nothing new, or the refresh failed and the list shown is kept
+            return;
+        }
+        shownArticles.addAll(0, newArticles(articles));
+        showArticles();
+    }
+
+    // Loads what was published since the list was loaded.
+    // Only "newest" order adds new articles at the top, "oldest" order loads page 1 again.
+    private void refresh() {
+        if (loadedPage == 0 || !ArticleQuery.isNewestFirst(this)) {
+            restartFirstPage();
+        } else {
+            getLoaderManager().restartLoader(REFRESH_LOADER_ID, null, this);
+        }
+    }
+
+    // Picks the text shown for a failed load, also used by the reader
+    static int getErrorMessage(FetchException error) {
+        switch (error.getKind()) {
+            case OFFLINE:
+                return R.string.no_internet_connection;
+            case TIMEOUT:
+                return R.string.error_timeout;
+            case NETWORK:
+                return R.string.error_network;
+            case THROTTLED:
+                return R.string.error_throttled;
+            case SERVER:
+            case CIRCUIT_OPEN:
+                return R.string.error_server;
+            default:
+                return R.string.error_request;
+        }
+    }
+
+    // Gives the adapter the new list, the difference with the old one is worked out on a
+    // background thread and only the changed rows are updated.
+    private void showArticles() {
+        if (!searchQuery.isEmpty()) {
+            // A search is shown, it is run again so new articles can be part of the results
+            showSearchResults();
+            return;
+        }
+        mEmptyStateTextView.setVisibility(shownArticles.isEmpty() ? View.VISIBLE : View.GONE);
+        // Once the rows are on screen, the text of the first ones is prefetched
+        articleAdapter.submitList(new ArrayList<>(shownArticles), new Runnable() {
+            @Override
+            public void run() {
+                prefetchBodies();
+            }
+        });
+    }
+
+    /**
+     * Downloads the text of the rows on screen in the background, starting at the first
+     * one shown, so opening them in the reader reads a file instead of waiting for the
+     * network. Skipped on metered networks, where unread text costs the user money.
+     */
+    private void prefetchBodies() {
+        List<ArticleRow> rows = articleAdapter.getCurrentList();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            // Not laid out yet, the top rows are the ones shown
+            first = 0;
+        }
+        if (first >= rows.size()) {
+            return;
+        }
+        ConnectivityManager connMgr = (ConnectivityManager)
+                getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()
+                || connMgr.isActiveNetworkMetered()) {
+            return;
+        }
+        int end = Math.min(rows.size(), first + ArticleBodies.PREFETCH_COUNT);
+        List<Article> articles = new ArrayList<>(end - first);
+        for (int i = first; i < end; i++) {
+            articles.add(rows.get(i).getArticle());
+        }
+        ArticleBodies.getInstance(this).prefetch(articles);
+    }
+
+    // Shows every loaded article that matches the search box, newest first
+    private void showSearchResults() {
+        List<ArticleRow> results =
+                ArticleIndex.getInstance().search(searchQuery, MAX_SEARCH_RESULTS);
+        mEmptyStateTextView.setVisibility(results.isEmpty() ? View.VISIBLE : View.GONE);
+        articleAdapter.submitList(results);
+    }
+
+    // Returns the articles that are not in the list yet
+    private List<ArticleRow> newArticles(List<ArticleRow> articles) {
+        List<ArticleRow> newArticles = new ArrayList<>(articles.size());
+        for (ArticleRow article : articles) {
+            if (shownArticleIds.add(article.getArticle().getId())) {
+                newArticles.add(article);
+            }
         }
+        return newArticles;
     }
 
     @Override
-    public void onLoaderReset(Loader<List<Article>> loader) {
-        // articleAdapter is cleared and all data removed
-        articleAdapter.clear();
+    public void onLoaderReset(Loader<List<ArticleRow>> loader) {
+        // Only the first page loader owns the whole list
+        if (loader.getId() == ARTICLE_LOADER_ID) {
+            // articleAdapter is cleared and all data removed
+            shownArticles.clear();
+            shownArticleIds.clear();
+            loadedPage = 0;
+            showArticles();
+        }
+    }
+
+    /**
+     * Prints the load metrics, "adb shell dumpsys activity" with this activity.
+     * With the "--export" argument they are also written to a file in the app files directory.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        LoadMetrics metrics = LoadMetrics.getInstance();
+        metrics.dump(prefix, writer);
+        writer.println(prefix + ImageLoader.getInstance(this));
+        writer.println(prefix + ArticleBodies.getInstance(this));
+        List<String> argList = args == null ? new ArrayList<String>() : Arrays.asList(args);
+        ArticleTransport transport = QueryUtils.getTransport();
+        writer.println(prefix + "Transport: " + transport.getName());
+        if (transport instanceof NioTransport) {
+            // Connections opened, handshakes and reuse
+            writer.println(prefix + transport);
+        }
+        if (argList.contains(ARG_EXPORT_METRICS)) {
+            try {
+                File file = metrics.exportTo(getFilesDir());
+                writer.println(prefix + "Load metrics written to " + file);
+            } catch (IOException e) {
+                writer.println(prefix + "Load metrics export failed: " + e);
+            }
+        }
     }
 
     // Menu, used to control some query settings.
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
+
+        // Search box, searches the articles already loaded as the user types
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                onQueryTextChange(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                searchQuery = newText.trim();
+                showArticles();
+                return true;
+            }
+        });
         return true;
     }
 
@@ -212,6 +636,10 @@ public class MainActivity extends AppCompatActivity implements
             startActivity(settingsIntent);
             return true;
         }
+        if (id == R.id.action_refresh) {
+            refresh();
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 }
\ No newline at end of file
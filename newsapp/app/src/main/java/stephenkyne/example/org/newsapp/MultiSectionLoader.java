@@ -0,0 +1,220 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Loads page 1 of several sections at the same time and merges them into one list
+ * ordered by publication date, used for the "My Sections" feed.
+ * The list is delivered each time a section arrives, so the first rows show as soon as
+ * the fastest section is back. A section that takes longer than {@link #SECTION_TIMEOUT_MS}
+ * is given up on without holding back the others.
+ */
+public class MultiSectionLoader extends ArticleLoader {
+
+    // LOG TAG
+    private static final String LOG_TAG = "MultiSectionLoader Error: ";
+
+    // Most sections fetched at the same time, the rest wait for a free thread
+    static final int SECTION_THREADS = 4;
+
+    // Time one section may take from when its fetch starts, in milliseconds
+    static final long SECTION_TIMEOUT_MS = 20000;
+
+    // How often the loader checks for sections that are taking too long, in milliseconds
+    private static final long POLL_INTERVAL_MS = 250;
+
+    // Shared by every MultiSectionLoader, idle threads are stopped after a while
+    private static final ThreadPoolExecutor SECTION_EXECUTOR = new ThreadPoolExecutor(
+            SECTION_THREADS, SECTION_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+
+    static {
+        SECTION_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /** Query URL of page 1 of every section */
+    private final List<String> sectionUrls;
+
+    /** True for "newest" order, false for "oldest" */
+    private final boolean newestFirst;
+
+    /**
+     * Constructs a new {@link MultiSectionLoader}.
+     *
+     * @param context     of the activity
+     * @param sectionUrls the query URL of each section
+     * @param newestFirst the order the sections are returned in
+     */
+    public MultiSectionLoader(Context context, List<String> sectionUrls, boolean newestFirst) {
+        super(context, null, ArticleQuery.FIRST_PAGE);
+        this.sectionUrls = sectionUrls;
+        this.newestFirst = newestFirst;
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    protected List<ArticleRow> load(CancellationSignal signal) {
+        int sectionCount = sectionUrls.size();
+        if (sectionCount == 0) {
+            return null;
+        }
+
+        // Time each section's fetch started, 0 while it is waiting for a thread
+        final AtomicLongArray startTimes = new AtomicLongArray(sectionCount);
+        CompletionService<List<Article>> completionService =
+                new ExecutorCompletionService<>(SECTION_EXECUTOR);
+        final List<Future<List<Article>>> futures = new ArrayList<>(sectionCount);
+        // Each section can be stopped on its own when it takes too long
+        final List<CancellationSignal> sectionSignals = new ArrayList<>(sectionCount);
+        for (int i = 0; i < sectionCount; i++) {
+            final int section = i;
+            final String url = sectionUrls.get(i);
+            final CancellationSignal sectionSignal = new CancellationSignal();
+            sectionSignals.add(sectionSignal);
+            futures.add(completionService.submit(new Callable<List<Article>>() {
+                @Override
+                public List<Article> call() throws FetchException {
+                    startTimes.set(section, System.nanoTime());
+                    return ArticleFetcher.getInstance().fetch(getContext(), url, sectionSignal);
+                }
+            }));
+        }
+        // Cancelling the load stops every section at once
+        signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                cancelAll(futures, sectionSignals);
+            }
+        });
+
+        // Rows of each section that arrived, in the order the API returned them
+        List<List<ArticleRow>> sectionRows = new ArrayList<>(sectionCount);
+        boolean[] finished = new boolean[sectionCount];
+        int pending = sectionCount;
+        List<ArticleRow> merged = null;
+        // Reason the first failed section failed, reported if no section loads
+        FetchException firstError = null;
+        // Newest dates of the sections that loaded, saved once the merged list is delivered
+        SyncState.Update sync = SyncState.getInstance(getContext()).newUpdate();
+
+        while (pending > 0) {
+            if (signal.isCanceled()) {
+                break;
+            }
+
+            Future<List<Article>> done;
+            try {
+                done = completionService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                cancelAll(futures, sectionSignals);
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (done != null) {
+                int section = futures.indexOf(done);
+                if (!finished[section]) {
+                    finished[section] = true;
+                    pending--;
+                    List<ArticleRow> rows;
+                    try {
+                        rows = getRows(done, sectionUrls.get(section), sync);
+                    } catch (FetchException e) {
+                        rows = null;
+                        if (firstError == null) {
+                            firstError = e;
+                        }
+                    }
+                    if (rows != null) {
+                        // The new section is merged with the ones already back
+                        sectionRows.add(rows);
+                        merged = FeedMerger.mergeByDate(sectionRows, newestFirst);
+                        if (pending > 0) {
+                            deliverPartialResult(merged);
+                        }
+                    }
+                }
+            }
+
+            // A section that started too long ago is given up on
+            long now = System.nanoTime();
+            for (int i = 0; i < sectionCount; i++) {
+                long startTime = startTimes.get(i);
+                if (!finished[i] && startTime != 0
+                        && now - startTime > TimeUnit.MILLISECONDS.toNanos(SECTION_TIMEOUT_MS)) {
+                    Log.e(LOG_TAG, "Section timed out: " + sectionUrls.get(i));
+                    sectionSignals.get(i).cancel();
+                    futures.get(i).cancel(true);
+                    if (firstError == null) {
+                        firstError = new FetchException(FetchException.Kind.TIMEOUT,
+                                "Section timed out", null);
+                    }
+                    finished[i] = true;
+                    pending--;
+                }
+            }
+        }
+        signal.setOnCancelListener(null);
+        signal.throwIfCanceled();
+        setError(merged == null ? firstError : null);
+        if (merged != null) {
+            // Shown at the next launch before the network answers
+            List<Article> articles = new ArrayList<>(merged.size());
+            for (ArticleRow row : merged) {
+                articles.add(row.getArticle());
+            }
+            setPendingSave(merged, sync, articles);
+        }
+        return merged;
+    }
+
+    // Gets the rows of a finished section and adds its newest date, null if it was cancelled
+    private List<ArticleRow> getRows(Future<List<Article>> done, String url,
+                                     SyncState.Update sync) throws FetchException {
+        if (done.isCancelled()) {
+            return null;
+        }
+        try {
+            List<Article> articles = done.get();
+            sync.add(url, articles);
+            List<ArticleRow> rows = getRowFactory().createRows(articles);
+            // Makes the new articles searchable
+            ArticleIndex.getInstance().addAll(rows);
+            return rows;
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Section fetch problem: ", e.getCause());
+            if (e.getCause() instanceof FetchException) {
+                throw (FetchException) e.getCause();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static void cancelAll(List<Future<List<Article>>> futures,
+                                  List<CancellationSignal> sectionSignals) {
+        for (CancellationSignal sectionSignal : sectionSignals) {
+            sectionSignal.cancel();
+        }
+        for (Future<List<Article>> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
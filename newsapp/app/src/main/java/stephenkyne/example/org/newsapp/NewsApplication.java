@@ -0,0 +1,104 @@
+package stephenkyne.example.org.newsapp;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.http.HttpResponseCache;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Sets up things that are shared by the whole app process.
+ * The HTTP response cache is installed here so it is ready before the first
+ * {@link ArticleLoader} runs, and the background feed prefetch is scheduled.
+ * The transport picked in the settings is used from the start and whenever it is changed.
+ */
+public class NewsApplication extends Application {
+
+    // LOG TAG
+    private static final String LOG_TAG = "NewsApplication Error: ";
+
+    // Folder inside the app cache directory where responses are stored
+    static final String HTTP_CACHE_DIR = "http";
+
+    // Most bytes the response cache keeps on disk, 10 MiB.
+    // The least recently used responses are removed once it is full.
+    static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+
+    // Held here, the preferences only keep a weak reference to their listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener transportListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPrefs,
+                                                      String key) {
+                    if (getString(R.string.settings_transport_key).equals(key)) {
+                        applyTransportSetting();
+                    }
+                }
+            };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        installHttpCache();
+        applyTransportSetting();
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .registerOnSharedPreferenceChangeListener(transportListener);
+        // Keeps the feed warm in the background, the job is only added once
+        FeedPrefetchJobService.schedule(this);
+        registerDateFormatInvalidation();
+    }
+
+    // The date on each row is formatted for the current time zone and locale,
+    // the cached formatter is dropped when the user changes either of them.
+    private void registerDateFormatInvalidation() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Timestamps.invalidateFormatter();
+            }
+        }, filter);
+    }
+
+    // Sends the next requests with the transport picked in the settings,
+    // requests already sent finish on the one they started on
+    private void applyTransportSetting() {
+        String name = ArticleQuery.getTransportSetting(this);
+        ArticleTransport transport = QueryUtils.getTransport(name);
+        if (transport == null) {
+            Log.e(LOG_TAG, "Unknown transport " + name + ", the default is used");
+            transport = BlockingTransport.getInstance();
+        }
+        QueryUtils.setTransport(transport);
+    }
+
+    // Installs a disk cache used by every HttpURLConnection in the app.
+    // Responses are stored with their ETag / Last-Modified, later requests for the same
+    // URL are sent with If-None-Match / If-Modified-Since and a 304 reuses the stored body.
+    private void installHttpCache() {
+        File httpCacheDir = new File(getCacheDir(), HTTP_CACHE_DIR);
+        try {
+            HttpResponseCache.install(httpCacheDir, HTTP_CACHE_SIZE);
+        } catch (IOException e) {
+            // The app still works without the cache, every request goes to the network.
+            Log.e(LOG_TAG, "HTTP response cache installation failed: ", e);
+        }
+    }
+
+    // Writes the cache journal to disk so cached responses survive the process being killed.
+    static void flushHttpCache() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+}
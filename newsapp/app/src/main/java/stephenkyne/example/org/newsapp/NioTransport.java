@@ -0,0 +1,1273 @@
+package stephenkyne.example.org.newsapp;
+
+import android.os.CancellationSignal;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * An {@link ArticleTransport} that runs every request on one selector thread with
+ * non-blocking sockets, so many sections or pages can be in flight without a thread each.
+ * Host names are looked up, TLS handshake tasks are run and responses are parsed on
+ * {@link #WORKER_THREADS} threads, so a slow parse never holds up the sockets.
+ * https is spoken with an SSLEngine from the given SSLContext and the host name is checked
+ * with the given HostnameVerifier, the same ones HttpsURLConnection uses by default.
+ * Connections are kept alive and used again for the next request to the same host.
+ * The platform response cache is not used.
+ */
+public final class NioTransport implements ArticleTransport {
+
+    // Name of this transport
+    public static final String NAME = "nio";
+
+    // LOG TAG
+    private static final String LOG_TAG = "NioTransport Error: ";
+
+    // Threads that look up host names, run handshake tasks and parse responses
+    static final int WORKER_THREADS = 2;
+
+    // Most idle connections kept for one host
+    static final int MAX_IDLE_PER_HOST = 8;
+
+    // How long an idle connection is kept, in milliseconds
+    static final long IDLE_MILLIS = 30000;
+
+    // Bytes read from a plain socket at a time
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // Size the response buffer of a request starts at, it grows as needed
+    private static final int RESPONSE_BUFFER_SIZE = 16 * 1024;
+
+    private static final String PROTOCOL_HTTP = "http";
+    private static final String PROTOCOL_HTTPS = "https";
+    private static final int DEFAULT_HTTP_PORT = 80;
+    private static final int DEFAULT_HTTPS_PORT = 443;
+
+    // Wrapped when the handshake has something to send but there is no request yet
+    private static final ByteBuffer NO_DATA = ByteBuffer.allocate(0);
+
+    // Never called, a request is finished by the selector and worker threads
+    private static final Runnable NOT_RUN = new Runnable() {
+        @Override
+        public void run() {
+            throw new IllegalStateException("An NioTransport request is not run");
+        }
+    };
+
+    private static NioTransport instance;
+
+    private final SSLContext sslContext;
+
+    private final HostnameVerifier hostnameVerifier;
+
+    private final Selector selector;
+
+    private final ThreadPoolExecutor workers;
+
+    // Work for the selector thread, added from any thread
+    private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    // Requests on a connection now. Selector thread only.
+    private final Set<Exchange<?>> active = new HashSet<>();
+
+    // Idle connections by "protocol://host:port", the most recently used last.
+    // Selector thread only.
+    private final Map<String, ArrayDeque<Connection>> idle = new HashMap<>();
+
+    // Selector thread only
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    // Counters, written to the load metrics dump
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong connectCount = new AtomicLong();
+    private final AtomicLong handshakeCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+
+    /**
+     * Starts the selector thread.
+     *
+     * @param sslContext       makes the SSLEngine of each https connection
+     * @param hostnameVerifier checks the certificate of an https host is for that host
+     */
+    NioTransport(SSLContext sslContext, HostnameVerifier hostnameVerifier) throws IOException {
+        this.sslContext = sslContext;
+        this.hostnameVerifier = hostnameVerifier;
+        selector = Selector.open();
+        workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), backgroundThreads("NioTransport worker"));
+        workers.allowCoreThreadTimeOut(true);
+        Thread selectorThread = backgroundThreads("NioTransport").newThread(new Runnable() {
+            @Override
+            public void run() {
+                selectLoop();
+            }
+        });
+        // The selector thread waits for requests for as long as the app runs
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    // Gets the one NIO transport used by the whole app, started the first time it is asked for
+    public static synchronized NioTransport getInstance() {
+        if (instance == null) {
+            try {
+                instance = new NioTransport(SSLContext.getDefault(),
+                        HttpsURLConnection.getDefaultHostnameVerifier());
+            } catch (IOException | NoSuchAlgorithmException e) {
+                throw new IllegalStateException("NioTransport can not be started", e);
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public Future<List<Article>> fetch(URL url, FeedStore store, int connectTimeoutMillis,
+                                       int readTimeoutMillis, long deadline,
+                                       CancellationSignal signal,
+                                       Callback<List<Article>> callback) {
+        return send(new ArticlesExchange(url, store, connectTimeoutMillis, readTimeoutMillis,
+                deadline, signal, callback));
+    }
+
+    @Override
+    public Future<String> fetchBodyText(URL url, int connectTimeoutMillis, int readTimeoutMillis,
+                                        long deadline, CancellationSignal signal,
+                                        AtomicLong wireBytes, Callback<String> callback) {
+        return send(new BodyExchange(url, connectTimeoutMillis, readTimeoutMillis, deadline,
+                signal, wireBytes, callback));
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    // Number of requests sent
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    // Number of new connections opened
+    public long getConnectCount() {
+        return connectCount.get();
+    }
+
+    // Number of TLS handshakes finished
+    public long getHandshakeCount() {
+        return handshakeCount.get();
+    }
+
+    // Number of requests sent on a connection kept alive from an earlier one
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "NioTransport requests: " + getRequestCount()
+                + " connects: " + getConnectCount()
+                + " handshakes: " + getHandshakeCount()
+                + " reused: " + getReuseCount();
+    }
+
+    // Hooks the request to its signal and looks up its host, the Future is given back at once
+    private <T> Future<T> send(final Exchange<T> exchange) {
+        requestCount.incrementAndGet();
+        if (exchange.port < 0) {
+            exchange.fail(new FetchException(FetchException.Kind.CLIENT,
+                    "NioTransport can not send " + exchange.url.getProtocol(), null));
+            return exchange;
+        }
+        if (exchange.signal != null) {
+            // Called at once when the signal is already cancelled
+            exchange.signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    exchange.cancel(true);
+                }
+            });
+        }
+        // Looking up the host blocks, so it is not done on the selector thread
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                exchange.resolve();
+            }
+        });
+        return exchange;
+    }
+
+    // Runs the task on the selector thread, soon
+    private void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    // The selector thread, runs for as long as the app does
+    private void selectLoop() {
+        while (true) {
+            try {
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+                selector.select(millisToNextTimeout());
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    onReady((Connection) key.attachment(), key);
+                }
+                checkTimeouts();
+            } catch (IOException | RuntimeException e) {
+                // One broken request must not stop every other one
+                Log.e(LOG_TAG, "selectLoop problem: ", e);
+            }
+        }
+    }
+
+    // Starts a request on an idle connection to its host, or on a new one. Selector thread.
+    private void start(Exchange<?> exchange) {
+        if (exchange.isDone()) {
+            // Cancelled while the host was looked up
+            return;
+        }
+        long now = System.nanoTime();
+        // A request sent again after a closed idle connection always gets a new one
+        Connection connection = exchange.retried ? null : takeIdle(exchange.hostKey);
+        try {
+            if (connection == null) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                connection = new Connection(channel, exchange.hostKey);
+                if (exchange.secure) {
+                    connection.startTls(sslContext.createSSLEngine(exchange.url.getHost(),
+                            exchange.port));
+                }
+                boolean connected = channel.connect(exchange.address);
+                connection.key = channel.register(selector,
+                        connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, connection);
+                connectCount.incrementAndGet();
+                connection.exchange = exchange;
+                exchange.connection = connection;
+                exchange.setStageDeadline(now
+                        + TimeUnit.MILLISECONDS.toNanos(exchange.connectTimeoutMillis));
+                active.add(exchange);
+                if (connected) {
+                    advance(connection, exchange);
+                }
+            } else {
+                reuseCount.incrementAndGet();
+                connection.exchange = exchange;
+                exchange.connection = connection;
+                active.add(exchange);
+                advance(connection, exchange);
+            }
+        } catch (IOException e) {
+            if (connection != null) {
+                onConnectionFailed(connection, exchange, e);
+            } else {
+                exchange.fail(new FetchException(QueryUtils.kindOfFailure(e),
+                        "NioTransport connect problem", e));
+            }
+        }
+    }
+
+    // Moves a request on when its socket is ready. Selector thread.
+    private void onReady(Connection connection, SelectionKey key) {
+        Exchange<?> exchange = connection.exchange;
+        if (exchange == null) {
+            // An idle connection can only be readable when the server closed it
+            removeIdle(connection);
+            connection.close();
+            return;
+        }
+        try {
+            if (key.isConnectable() && !connection.channel.finishConnect()) {
+                return;
+            }
+            advance(connection, exchange);
+        } catch (IOException e) {
+            onConnectionFailed(connection, exchange, e);
+        }
+    }
+
+    // Takes a request as far as the socket allows: the TLS handshake, writing the request,
+    // then reading the response. Selector thread.
+    private void advance(Connection connection, Exchange<?> exchange) throws IOException {
+        if (connection.tasksRunning) {
+            // Resumed once the handshake tasks are done
+            return;
+        }
+        if (!exchange.connected) {
+            if (connection.engine != null && !connection.verified) {
+                if (!handshake(connection)) {
+                    return;
+                }
+                verifyHost(connection, exchange);
+            }
+            // The TLS handshake is part of connecting, as it is for HttpURLConnection
+            exchange.onConnected();
+        }
+        if (!exchange.requestWritten) {
+            if (!write(connection, exchange.request)) {
+                connection.key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            exchange.onRequestWritten();
+        }
+        while (true) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+            int read = read(connection);
+            if (exchange.isResponseComplete()) {
+                finish(connection, exchange, read == -1);
+                return;
+            }
+            if (read == -1) {
+                onEndOfStream(connection, exchange);
+                return;
+            }
+            if (connection.engine == null || !isHandshaking(connection.engine)) {
+                return;
+            }
+            // A message after the handshake, such as a key update, needs an answer
+            if (!handshake(connection)) {
+                return;
+            }
+        }
+    }
+
+    // Runs the TLS handshake as far as the socket allows, true once it is finished.
+    // Selector thread.
+    private boolean handshake(Connection connection) throws IOException {
+        while (true) {
+            if (!flush(connection)) {
+                connection.key.interestOps(SelectionKey.OP_WRITE);
+                return false;
+            }
+            switch (connection.engine.getHandshakeStatus()) {
+                case NEED_WRAP:
+                    wrap(connection, NO_DATA);
+                    break;
+                case NEED_UNWRAP:
+                    if (connection.netIn.hasRemaining()
+                            && unwrap(connection).getStatus()
+                            != SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        break;
+                    }
+                    // A whole record is not in yet
+                    int read = fill(connection);
+                    if (read == -1) {
+                        throw new EOFException("Connection closed during the TLS handshake");
+                    }
+                    if (read == 0) {
+                        connection.key.interestOps(SelectionKey.OP_READ);
+                        return false;
+                    }
+                    break;
+                case NEED_TASK:
+                    runTasks(connection);
+                    return false;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    // The certificate must be for the host asked for, as HttpsURLConnection checks
+    private void verifyHost(Connection connection, Exchange<?> exchange)
+            throws SSLPeerUnverifiedException {
+        String host = exchange.url.getHost();
+        if (!hostnameVerifier.verify(host, connection.engine.getSession())) {
+            throw new SSLPeerUnverifiedException("Hostname " + host + " not verified");
+        }
+        connection.verified = true;
+        handshakeCount.incrementAndGet();
+    }
+
+    // The slow parts of a handshake, like checking the certificate chain, run on a worker.
+    // The socket is not watched until they are done. Selector thread.
+    private void runTasks(final Connection connection) {
+        connection.tasksRunning = true;
+        connection.key.interestOps(0);
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                Runnable task;
+                while ((task = connection.engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                runOnSelector(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.tasksRunning = false;
+                        Exchange<?> exchange = connection.exchange;
+                        if (exchange == null || !connection.channel.isOpen()) {
+                            // Cancelled or timed out meanwhile
+                            return;
+                        }
+                        try {
+                            advance(connection, exchange);
+                        } catch (IOException e) {
+                            onConnectionFailed(connection, exchange, e);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Sends what the request still has, true once all of it is on the wire
+    private boolean write(Connection connection, ByteBuffer request) throws IOException {
+        if (connection.engine == null) {
+            connection.channel.write(request);
+            return !request.hasRemaining();
+        }
+        while (true) {
+            if (!flush(connection)) {
+                return false;
+            }
+            if (!request.hasRemaining()) {
+                return true;
+            }
+            wrap(connection, request);
+        }
+    }
+
+    // Encrypts from the source into netOut, which must be empty
+    private static void wrap(Connection connection, ByteBuffer source) throws IOException {
+        connection.netOut.clear();
+        SSLEngineResult result;
+        try {
+            result = connection.engine.wrap(source, connection.netOut);
+        } finally {
+            connection.netOut.flip();
+        }
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+            throw new SSLException("TLS closed while sending");
+        }
+    }
+
+    // Writes what is left in netOut, true once it is empty
+    private static boolean flush(Connection connection) throws IOException {
+        if (connection.netOut.hasRemaining()) {
+            connection.channel.write(connection.netOut);
+        }
+        return !connection.netOut.hasRemaining();
+    }
+
+    // Reads what the socket has and adds the plain text to the response, -1 at the end of
+    // the stream. Selector thread.
+    private int read(Connection connection) throws IOException {
+        if (connection.engine == null) {
+            readBuffer.clear();
+            int read = connection.channel.read(readBuffer);
+            if (read > 0) {
+                readBuffer.flip();
+                connection.exchange.append(readBuffer);
+            }
+            return read;
+        }
+        int read = fill(connection);
+        while (connection.netIn.hasRemaining()) {
+            SSLEngineResult result = unwrap(connection);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                // The server said it is done
+                return -1;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW
+                    || isHandshaking(connection.engine)
+                    || result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                break;
+            }
+        }
+        return read;
+    }
+
+    // Reads from the socket into netIn, which is left ready to unwrap
+    private static int fill(Connection connection) throws IOException {
+        int packetSize = connection.engine.getSession().getPacketBufferSize();
+        if (connection.netIn.capacity() < packetSize) {
+            // The session can ask for larger records once the handshake is done
+            ByteBuffer larger = ByteBuffer.allocate(packetSize);
+            larger.put(connection.netIn);
+            larger.flip();
+            connection.netIn = larger;
+        }
+        connection.netIn.compact();
+        try {
+            return connection.channel.read(connection.netIn);
+        } finally {
+            connection.netIn.flip();
+        }
+    }
+
+    // Decrypts one record from netIn, the plain text is added to the response
+    private static SSLEngineResult unwrap(Connection connection) throws IOException {
+        while (true) {
+            connection.appIn.clear();
+            SSLEngineResult result;
+            try {
+                result = connection.engine.unwrap(connection.netIn, connection.appIn);
+            } finally {
+                connection.appIn.flip();
+            }
+            if (connection.appIn.hasRemaining() && connection.exchange != null) {
+                connection.exchange.append(connection.appIn);
+            }
+            if (result.getStatus() != SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                return result;
+            }
+            connection.appIn = ByteBuffer.allocate(
+                    connection.engine.getSession().getApplicationBufferSize());
+        }
+    }
+
+    private static boolean isHandshaking(SSLEngine engine) {
+        switch (engine.getHandshakeStatus()) {
+            case NEED_WRAP:
+            case NEED_UNWRAP:
+            case NEED_TASK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // The server closed the connection. Selector thread.
+    private void onEndOfStream(Connection connection, Exchange<?> exchange) throws IOException {
+        if (exchange.isCompleteAtEndOfStream()) {
+            // No Content-Length, the body ends with the connection
+            finish(connection, exchange, true);
+        } else {
+            onConnectionFailed(connection, exchange,
+                    new EOFException("Connection closed before the response ended"));
+        }
+    }
+
+    // A connection kept alive may have been closed by the server while idle, in that case
+    // the request is sent again once on a new connection. Selector thread.
+    private void onConnectionFailed(Connection connection, Exchange<?> exchange,
+                                    IOException e) {
+        active.remove(exchange);
+        connection.exchange = null;
+        connection.close();
+        if (connection.reused && exchange.responseLength == 0 && !exchange.retried) {
+            exchange.retried = true;
+            exchange.reset();
+            start(exchange);
+            return;
+        }
+        exchange.fail(new FetchException(QueryUtils.kindOfFailure(e),
+                "NioTransport problem: " + exchange.url, e));
+    }
+
+    // The whole response is in, the connection goes back to the pool and the body is
+    // parsed on a worker thread. Selector thread.
+    private void finish(Connection connection, Exchange<?> exchange, boolean closed) {
+        active.remove(exchange);
+        exchange.onResponseRead();
+        connection.exchange = null;
+        if (!closed && exchange.keepAlive && !exchange.hasExtraBytes()) {
+            putIdle(connection);
+        } else {
+            connection.close();
+        }
+        final Exchange<?> finished = exchange;
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                finished.parse();
+            }
+        });
+    }
+
+    // Stops a cancelled request, if it got as far as a connection. Selector thread.
+    private void abandon(Exchange<?> exchange) {
+        if (active.remove(exchange)) {
+            exchange.connection.exchange = null;
+            exchange.connection.close();
+        }
+    }
+
+    // Fails the requests that took too long and closes connections idle for too long.
+    // Selector thread.
+    private void checkTimeouts() {
+        long now = System.nanoTime();
+        if (!active.isEmpty()) {
+            List<Exchange<?>> late = new ArrayList<>();
+            for (Exchange<?> exchange : active) {
+                if (now - exchange.deadlineNanos >= 0) {
+                    late.add(exchange);
+                }
+            }
+            for (Exchange<?> exchange : late) {
+                active.remove(exchange);
+                exchange.connection.exchange = null;
+                exchange.connection.close();
+                exchange.fail(new FetchException(FetchException.Kind.TIMEOUT,
+                        "NioTransport timed out", new SocketTimeoutException(
+                        exchange.connected ? "Read timed out" : "Connect timed out")));
+            }
+        }
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS);
+        Iterator<ArrayDeque<Connection>> hosts = idle.values().iterator();
+        while (hosts.hasNext()) {
+            ArrayDeque<Connection> connections = hosts.next();
+            // The oldest are first
+            while (!connections.isEmpty() && now - connections.peekFirst().idleSince >= idleNanos) {
+                connections.pollFirst().close();
+            }
+            if (connections.isEmpty()) {
+                hosts.remove();
+            }
+        }
+    }
+
+    // Time until the next request or idle connection times out, 0 when there is none
+    private long millisToNextTimeout() {
+        long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+        for (Exchange<?> exchange : active) {
+            next = Math.min(next, exchange.deadlineNanos - now);
+        }
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS);
+        for (ArrayDeque<Connection> connections : idle.values()) {
+            if (!connections.isEmpty()) {
+                next = Math.min(next, connections.peekFirst().idleSince + idleNanos - now);
+            }
+        }
+        if (next == Long.MAX_VALUE) {
+            return 0;
+        }
+        // select(0) waits for ever, so at least 1 millisecond
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next) + 1);
+    }
+
+    // Gets the most recently used idle connection to the host, null if there is none
+    private Connection takeIdle(String hostKey) {
+        ArrayDeque<Connection> connections = idle.get(hostKey);
+        if (connections == null) {
+            return null;
+        }
+        Connection connection = connections.pollLast();
+        if (connections.isEmpty()) {
+            idle.remove(hostKey);
+        }
+        if (connection != null) {
+            connection.reused = true;
+        }
+        return connection;
+    }
+
+    private void putIdle(Connection connection) {
+        ArrayDeque<Connection> connections = idle.get(connection.hostKey);
+        if (connections == null) {
+            connections = new ArrayDeque<>();
+            idle.put(connection.hostKey, connections);
+        }
+        if (connections.size() >= MAX_IDLE_PER_HOST) {
+            connections.pollFirst().close();
+        }
+        connection.idleSince = System.nanoTime();
+        // Read while idle, so a connection the server closes is noticed and removed
+        connection.key.interestOps(SelectionKey.OP_READ);
+        connections.addLast(connection);
+    }
+
+    private void removeIdle(Connection connection) {
+        ArrayDeque<Connection> connections = idle.get(connection.hostKey);
+        if (connections != null) {
+            connections.remove(connection);
+            if (connections.isEmpty()) {
+                idle.remove(connection.hostKey);
+            }
+        }
+    }
+
+    // Threads with the priority the loader threads have
+    private static ThreadFactory backgroundThreads(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, name);
+            }
+        };
+    }
+
+    /**
+     * One socket to a host, used by one request at a time.
+     * An https connection also holds its SSLEngine and the encrypted bytes on their way in
+     * and out.
+     */
+    private static final class Connection {
+
+        final SocketChannel channel;
+        final String hostKey;
+        SelectionKey key;
+
+        // The request using the connection, null while it is idle
+        Exchange<?> exchange;
+
+        // True once the connection was kept alive after a request
+        boolean reused;
+
+        // System.nanoTime() when the connection became idle
+        long idleSince;
+
+        // TLS, null for plain http
+        SSLEngine engine;
+
+        // Encrypted bytes read and not unwrapped yet, ready to be read from
+        ByteBuffer netIn;
+
+        // Encrypted bytes wrapped and not written yet, ready to be read from
+        ByteBuffer netOut;
+
+        // Plain text of the last record unwrapped
+        ByteBuffer appIn;
+
+        // True once the handshake is done and the host name checked
+        boolean verified;
+
+        // True while handshake tasks run on a worker
+        boolean tasksRunning;
+
+        Connection(SocketChannel channel, String hostKey) {
+            this.channel = channel;
+            this.hostKey = hostKey;
+        }
+
+        // Makes this an https connection, the handshake starts once it is connected
+        void startTls(SSLEngine sslEngine) throws SSLException {
+            engine = sslEngine;
+            engine.setUseClientMode(true);
+            int packetSize = engine.getSession().getPacketBufferSize();
+            netIn = ByteBuffer.allocate(packetSize);
+            netIn.flip();
+            netOut = ByteBuffer.allocate(packetSize);
+            netOut.flip();
+            appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+            engine.beginHandshake();
+        }
+
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closed anyway
+            }
+        }
+    }
+
+    /**
+     * One request and its response, and the Future given to the caller.
+     * The response is read on the selector thread and its body turned into the result by
+     * {@link #readBody} on a worker thread.
+     */
+    private abstract class Exchange<T> extends FutureTask<T> {
+
+        final URL url;
+        final int connectTimeoutMillis;
+        final int readTimeoutMillis;
+        final CancellationSignal signal;
+        final Callback<T> callback;
+        final boolean secure;
+        final int port;
+        final String hostKey;
+        final ByteBuffer request;
+
+        // The bytes of the body read from the connection are added here, may be null
+        final AtomicLong wireBytes;
+
+        // System.nanoTime() at the deadline of the fetch
+        final long endNanos;
+
+        // Set on a worker thread before the exchange is handed to the selector thread
+        InetSocketAddress address;
+
+        // Selector thread only
+        Connection connection;
+        boolean connected;
+        boolean requestWritten;
+        boolean retried;
+        long deadlineNanos;
+        byte[] response = new byte[RESPONSE_BUFFER_SIZE];
+        int responseLength;
+        long countedBodyBytes;
+
+        // Worked out from the headers, selector thread only
+        int headersEnd = -1;
+        int statusCode;
+        long contentLength = -1;
+        boolean chunked;
+        boolean keepAlive;
+        String contentEncoding;
+        String retryAfter;
+
+        // Where the next chunk starts, and the body once the chunks are taken apart
+        int chunkStart;
+        ByteArrayOutputStream chunkedBody;
+        boolean lastChunkRead;
+
+        // Stage times for the LoadMetrics
+        long startNanos = System.nanoTime();
+        long connectedNanos;
+        long writtenNanos;
+        long firstByteNanos;
+        long readNanos;
+
+        Exchange(URL url, int connectTimeoutMillis, int readTimeoutMillis, long deadline,
+                 CancellationSignal signal, AtomicLong wireBytes, Callback<T> callback) {
+            super(NOT_RUN, null);
+            this.url = url;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.signal = signal;
+            this.wireBytes = wireBytes;
+            this.callback = callback;
+            endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(
+                    Math.max(0, deadline - SystemClock.elapsedRealtime()));
+            deadlineNanos = endNanos;
+            String protocol = url.getProtocol();
+            secure = PROTOCOL_HTTPS.equals(protocol);
+            int defaultPort = secure ? DEFAULT_HTTPS_PORT
+                    : PROTOCOL_HTTP.equals(protocol) ? DEFAULT_HTTP_PORT : -1;
+            port = defaultPort < 0 ? -1 : url.getPort() == -1 ? defaultPort : url.getPort();
+            hostKey = protocol + "://" + url.getHost() + ':' + port;
+            String target = url.getFile().isEmpty() ? "/" : url.getFile();
+            String host = port == defaultPort ? url.getHost() : url.getHost() + ':' + port;
+            request = ByteBuffer.wrap(("GET " + target + " HTTP/1.1\r\n"
+                    + "Host: " + host + "\r\n"
+                    + QueryUtils.HEADER_ACCEPT_ENCODING + ": " + QueryUtils.ENCODING_GZIP + "\r\n"
+                    + "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        // Turns the decoded body into the result. Worker thread.
+        abstract T readBody(InputStream wire) throws IOException;
+
+        // Looks up the host, then starts the request. Worker thread.
+        void resolve() {
+            try {
+                address = new InetSocketAddress(InetAddress.getByName(url.getHost()), port);
+            } catch (UnknownHostException e) {
+                fail(new FetchException(QueryUtils.kindOfFailure(e),
+                        "NioTransport lookup problem", e));
+                return;
+            }
+            runOnSelector(new Runnable() {
+                @Override
+                public void run() {
+                    start(Exchange.this);
+                }
+            });
+        }
+
+        // A stage never runs past the deadline of the fetch
+        void setStageDeadline(long nanos) {
+            deadlineNanos = nanos - endNanos < 0 ? nanos : endNanos;
+        }
+
+        void onConnected() {
+            connected = true;
+            connectedNanos = System.nanoTime();
+            setStageDeadline(connectedNanos + TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis));
+        }
+
+        void onRequestWritten() {
+            requestWritten = true;
+            writtenNanos = System.nanoTime();
+            setStageDeadline(writtenNanos + TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis));
+        }
+
+        void onResponseRead() {
+            readNanos = System.nanoTime();
+        }
+
+        // Adds bytes read from the socket, a read timeout counts from the last read
+        void append(ByteBuffer bytes) throws IOException {
+            long now = System.nanoTime();
+            if (firstByteNanos == 0) {
+                firstByteNanos = now;
+            }
+            setStageDeadline(now + TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis));
+            int count = bytes.remaining();
+            if (responseLength + count > response.length) {
+                byte[] larger = new byte[Math.max(response.length * 2, responseLength + count)];
+                System.arraycopy(response, 0, larger, 0, responseLength);
+                response = larger;
+            }
+            bytes.get(response, responseLength, count);
+            responseLength += count;
+            if (headersEnd < 0) {
+                readHeaders(Math.max(0, responseLength - count - 3));
+            }
+            if (headersEnd >= 0 && wireBytes != null) {
+                long bodyBytes = responseLength - headersEnd;
+                wireBytes.addAndGet(bodyBytes - countedBodyBytes);
+                countedBodyBytes = bodyBytes;
+            }
+        }
+
+        // Finds the end of the headers and reads the ones that are needed
+        private void readHeaders(int searchFrom) throws IOException {
+            int end = indexOf(response, searchFrom, responseLength, "\r\n\r\n");
+            if (end < 0) {
+                return;
+            }
+            headersEnd = end + 4;
+            chunkStart = headersEnd;
+            String[] lines = new String(response, 0, end, StandardCharsets.ISO_8859_1)
+                    .split("\r\n");
+            // "HTTP/1.1 200 OK"
+            String[] status = lines[0].split(" ");
+            if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+                throw new IOException("Not an HTTP response: " + lines[0]);
+            }
+            try {
+                statusCode = Integer.parseInt(status[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad status line: " + lines[0]);
+            }
+            keepAlive = !"HTTP/1.0".equals(status[0]);
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.US);
+                String value = lines[i].substring(colon + 1).trim();
+                switch (name) {
+                    case "content-length":
+                        try {
+                            contentLength = Long.parseLong(value);
+                        } catch (NumberFormatException e) {
+                            throw new IOException("Bad Content-Length: " + value);
+                        }
+                        break;
+                    case "transfer-encoding":
+                        chunked = value.toLowerCase(Locale.US).contains("chunked");
+                        break;
+                    case "connection":
+                        keepAlive = !"close".equalsIgnoreCase(value);
+                        break;
+                    case "content-encoding":
+                        contentEncoding = value;
+                        break;
+                    case "retry-after":
+                        retryAfter = value;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (chunked) {
+                chunkedBody = new ByteArrayOutputStream(RESPONSE_BUFFER_SIZE);
+            }
+        }
+
+        // True once the headers and the whole body are in
+        boolean isResponseComplete() throws IOException {
+            if (headersEnd < 0) {
+                return false;
+            }
+            if (chunked) {
+                return readChunks();
+            }
+            if (contentLength >= 0) {
+                return responseLength - headersEnd >= contentLength;
+            }
+            // The body ends when the server closes the connection
+            return false;
+        }
+
+        // True when the server closing the connection ends the response
+        boolean isCompleteAtEndOfStream() {
+            if (headersEnd >= 0 && !chunked && contentLength < 0) {
+                keepAlive = false;
+                return true;
+            }
+            return false;
+        }
+
+        // True when bytes came after the response, the connection can not be used again
+        boolean hasExtraBytes() {
+            if (chunked) {
+                return false;
+            }
+            return contentLength >= 0 && responseLength - headersEnd > contentLength;
+        }
+
+        // Takes apart the chunks that are fully in, true after the last one
+        private boolean readChunks() throws IOException {
+            while (!lastChunkRead) {
+                int lineEnd = indexOf(response, chunkStart, responseLength, "\r\n");
+                if (lineEnd < 0) {
+                    return false;
+                }
+                String sizeLine = new String(response, chunkStart, lineEnd - chunkStart,
+                        StandardCharsets.ISO_8859_1);
+                int extension = sizeLine.indexOf(';');
+                if (extension >= 0) {
+                    sizeLine = sizeLine.substring(0, extension);
+                }
+                int size;
+                try {
+                    size = Integer.parseInt(sizeLine.trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad chunk size: " + sizeLine);
+                }
+                if (size == 0) {
+                    // The last chunk, then trailers up to an empty line
+                    if (indexOf(response, lineEnd, responseLength, "\r\n\r\n") < 0) {
+                        return false;
+                    }
+                    lastChunkRead = true;
+                    break;
+                }
+                int dataStart = lineEnd + 2;
+                if (responseLength < dataStart + size + 2) {
+                    return false;
+                }
+                chunkedBody.write(response, dataStart, size);
+                chunkStart = dataStart + size + 2;
+            }
+            return true;
+        }
+
+        // Makes the exchange ready to be sent again on a new connection
+        void reset() {
+            request.rewind();
+            connection = null;
+            connected = false;
+            requestWritten = false;
+            responseLength = 0;
+            countedBodyBytes = 0;
+            headersEnd = -1;
+            contentLength = -1;
+            chunked = false;
+            chunkedBody = null;
+            lastChunkRead = false;
+            firstByteNanos = 0;
+        }
+
+        // Turns the response into the result, or into a FetchException. Worker thread.
+        void parse() {
+            if (statusCode != QueryUtils.SUCCESS_RESPONSE_CODE) {
+                Log.e(LOG_TAG, "parse response code: " + statusCode);
+                fail(new FetchException(QueryUtils.kindOfResponse(statusCode),
+                        "Response code " + statusCode, null, statusCode,
+                        QueryUtils.getRetryAfterMillis(retryAfter)));
+                return;
+            }
+            InputStream wire = chunked
+                    ? new ByteArrayInputStream(chunkedBody.toByteArray())
+                    : new ByteArrayInputStream(response, headersEnd,
+                    contentLength >= 0 ? (int) contentLength : responseLength - headersEnd);
+            try {
+                set(readBody(wire));
+            } catch (IOException e) {
+                fail(new FetchException(QueryUtils.kindOfFailure(e),
+                        "NioTransport parse problem: " + url, e));
+            } catch (RuntimeException e) {
+                // Such as OperationCanceledException from the parser, the Future must end
+                setException(e);
+            } finally {
+                // The response is not needed any more, the Future may live on
+                response = null;
+                chunkedBody = null;
+            }
+        }
+
+        void fail(FetchException failure) {
+            setException(failure);
+        }
+
+        // The signal is let go before anyone waiting on the Future wakes up
+        @Override
+        protected void set(T result) {
+            if (!isDone()) {
+                releaseSignal();
+            }
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable failure) {
+            if (!isDone()) {
+                releaseSignal();
+            }
+            super.setException(failure);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // When the signal cancelled this, its listener is running and must not be removed
+            if (!isDone() && signal != null && !signal.isCanceled()) {
+                releaseSignal();
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        private void releaseSignal() {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                // Stops the request on the selector thread, if it got that far
+                runOnSelector(new Runnable() {
+                    @Override
+                    public void run() {
+                        abandon(Exchange.this);
+                    }
+                });
+            } else if (callback != null) {
+                BlockingTransport.tellCallback(this, callback);
+            }
+        }
+    }
+
+    /**
+     * A request for a list of articles. The body is parsed as it is decoded and copied to the
+     * store, which keeps it only when the JSON was whole.
+     */
+    private final class ArticlesExchange extends Exchange<List<Article>> {
+
+        final FeedStore store;
+
+        ArticlesExchange(URL url, FeedStore store, int connectTimeoutMillis,
+                         int readTimeoutMillis, long deadline, CancellationSignal signal,
+                         Callback<List<Article>> callback) {
+            super(url, connectTimeoutMillis, readTimeoutMillis, deadline, signal, null,
+                    callback);
+            this.store = store;
+        }
+
+        @Override
+        List<Article> readBody(InputStream wire) throws IOException {
+            LoadMetrics metrics = LoadMetrics.getInstance();
+            metrics.record(LoadMetrics.STAGE_CONNECT, connectedNanos - startNanos);
+            metrics.record(LoadMetrics.STAGE_FIRST_BYTE, firstByteNanos - connectedNanos);
+            metrics.record(LoadMetrics.STAGE_DOWNLOAD, readNanos - firstByteNanos);
+            long parseStart = System.nanoTime();
+
+            FeedStore.Editor storeEditor = null;
+            try {
+                InputStream body = QueryUtils.decodeBody(wire, contentEncoding);
+                if (store != null) {
+                    // The body is copied to the store as it is read
+                    storeEditor = store.edit(url.toString());
+                    body = new TeeInputStream(body, storeEditor.stream());
+                }
+                List<Article> articles = new ArrayList<>();
+                boolean whole = QueryUtils.readArticles(body, articles, signal);
+                QueryUtils.drain(body);
+                if (storeEditor != null && whole) {
+                    // A malformed body is thrown away below, the saved one is kept
+                    storeEditor.commit();
+                    storeEditor = null;
+                }
+                metrics.record(LoadMetrics.STAGE_PARSE, System.nanoTime() - parseStart);
+                return articles;
+            } finally {
+                if (storeEditor != null) {
+                    storeEditor.abort();
+                }
+            }
+        }
+    }
+
+    /**
+     * A request for the text of one article, see {@link QueryUtils#readBodyText}.
+     */
+    private final class BodyExchange extends Exchange<String> {
+
+        BodyExchange(URL url, int connectTimeoutMillis, int readTimeoutMillis, long deadline,
+                     CancellationSignal signal, AtomicLong wireBytes,
+                     Callback<String> callback) {
+            super(url, connectTimeoutMillis, readTimeoutMillis, deadline, signal, wireBytes,
+                    callback);
+        }
+
+        @Override
+        String readBody(InputStream wire) throws IOException {
+            InputStream body = new BufferedInputStream(
+                    QueryUtils.decodeBody(wire, contentEncoding), QueryUtils.BUFFER_SIZE);
+            String bodyText = QueryUtils.readBodyText(body);
+            QueryUtils.drain(body);
+            return bodyText;
+        }
+    }
+
+    // Index of the ASCII text in bytes[from, to), -1 if it is not there
+    private static int indexOf(byte[] bytes, int from, int to, String text) {
+        int last = to - text.length();
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < text.length(); j++) {
+                if (bytes[i + j] != text.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -1,20 +1,43 @@
 package stephenkyne.example.org.newsapp;
 
+import android.net.http.HttpResponseCache;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
 import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import android.util.MalformedJsonException;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
 public final class QueryUtils {
     // LOG TAG
@@ -32,6 +55,47 @@ public final class QueryUtils {
     //Request method type "GET" for reading information from the server
     static final String REQUEST_METHOD_GET = "GET";
 
+    // Header and value used to ask the server for a gzip compressed body
+    static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    static final String ENCODING_GZIP = "gzip";
+
+    // Header with the time the server asks to wait after a 429 or 503
+    static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    // HTTP response codes that are tried again
+    static final int TOO_MANY_REQUESTS_RESPONSE_CODE = 429;
+    static final int SERVER_ERROR_RESPONSE_CODE = 500;
+
+    // Failures in a row before the API is left alone, and for how long, in milliseconds
+    static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    static final long CIRCUIT_OPEN_MILLIS = 30000;
+
+    // Shared by every request to the API
+    private static final CircuitBreaker API_CIRCUIT = new CircuitBreaker(
+            CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MILLIS, new FeedStore.Clock() {
+                @Override
+                public long currentTimeMillis() {
+                    return SystemClock.elapsedRealtime();
+                }
+            });
+
+    // Gets the state of the breaker shared by the API requests, for tests
+    static CircuitBreaker.State getApiCircuitState() {
+        return API_CIRCUIT.getState();
+    }
+
+    // Picks the random part of the wait between attempts
+    private static final Random BACKOFF_RANDOM = new Random();
+
+    // Format of a Retry-After given as a date, "Wed, 21 Oct 2015 07:28:00 GMT"
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    // Sends the requests, changed at runtime with setTransport
+    private static volatile ArticleTransport transport = BlockingTransport.getInstance();
+
+    // Size of the buffers used to read the response body, in bytes
+    static final int BUFFER_SIZE = 8192;
+
     //JSON Keys used
     static final String KEY_RESPONSE = "response";
     static final String KEY_RESULTS = "results";
@@ -39,30 +103,270 @@ public final class QueryUtils {
     // The title of the article.
     // The name of the article's author
     static final String KEY_WEB_TITLE = "webTitle";
+    static final String KEY_ID = "id";
     static final String KEY_SECTION_NAME = "sectionName";
     static final String KEY_WEB_PUB_DATE = "webPublicationDate";
     static final String KEY_WEB_URL = "webUrl";
     static final String KEY_TAGS = "tags";
     static final String KEY_FIELDS = "fields";
     static final String KEY_TRAIL_TEXT = "trailText";
+    static final String KEY_THUMBNAIL = "thumbnail";
+    // A single article asked for by its id is in "content"
+    static final String KEY_CONTENT = "content";
+    static final String KEY_BODY_TEXT = "bodyText";
 
     // Sends off the URL to be checked.
+    // Returns null if the articles could not be loaded, the reason is only logged.
     public static List<Article> fetchArticleData(String requestUrl) {
+        return fetchArticleData(requestUrl, null);
+    }
+
+    // Same as fetchArticleData(String), the body is also saved in the store when it is not null.
+    // Makes one attempt, for callers that are retried by something else.
+    public static List<Article> fetchArticleData(String requestUrl, FeedStore store) {
+        try {
+            return fetchArticles(requestUrl, store, FetchPolicy.SINGLE_ATTEMPT);
+        } catch (FetchException e) {
+            Log.e(LOG_TAG, "fetchArticleData problem. ", e);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the articles for the URL, trying again after failures that may go away as the
+     * policy allows. The body is also saved in the store when it is not null.
+     *
+     * @throws FetchException with the reason of the last failure
+     */
+    public static List<Article> fetchArticles(String requestUrl, FeedStore store,
+                                              FetchPolicy policy) throws FetchException {
+        return fetchArticles(requestUrl, store, policy, API_CIRCUIT, null);
+    }
+
+    /**
+     * Same as fetchArticles(String, FeedStore, FetchPolicy), cancelling the signal closes
+     * the connection of the attempt running and stops the parser.
+     *
+     * @throws OperationCanceledException when the signal was cancelled
+     */
+    public static List<Article> fetchArticles(String requestUrl, FeedStore store,
+                                              FetchPolicy policy, CancellationSignal signal)
+            throws FetchException {
+        return fetchArticles(requestUrl, store, policy, API_CIRCUIT, signal);
+    }
+
+    // Same as fetchArticles(String, FeedStore, FetchPolicy) with the given circuit breaker
+    static List<Article> fetchArticles(String requestUrl, FeedStore store, FetchPolicy policy,
+                                       CircuitBreaker circuit) throws FetchException {
+        return fetchArticles(requestUrl, store, policy, circuit, null);
+    }
+
+    private static List<Article> fetchArticles(String requestUrl, final FeedStore store,
+                                               FetchPolicy policy, CircuitBreaker circuit,
+                                               final CancellationSignal signal)
+            throws FetchException {
+        return fetchWithRetries(requestUrl, policy, circuit, signal,
+                new Attempt<List<Article>>() {
+                    @Override
+                    public List<Article> run(URL url, int connectTimeoutMillis,
+                                             int readTimeoutMillis, long deadline)
+                            throws FetchException {
+                        // Waits on this thread for the transport, which may send the request
+                        // on threads it shares with other requests
+                        return await(transport.fetch(url, store, connectTimeoutMillis,
+                                readTimeoutMillis, deadline, signal, null));
+                    }
+                });
+    }
+
+    /**
+     * Gets the text of one article from a query for it, see {@link ArticleQuery#buildBodyUrl}.
+     * Sent on the transport with the same retries, deadline and circuit breaker as the
+     * article lists. Null when the article has no text.
+     *
+     * @param wireBytes the bytes read from the connection by every attempt are added to it
+     * @throws FetchException with the reason of the last failure
+     * @throws OperationCanceledException when the signal was cancelled
+     */
+    public static String fetchBodyText(String requestUrl, FetchPolicy policy,
+                                       final CancellationSignal signal,
+                                       final AtomicLong wireBytes) throws FetchException {
+        return fetchWithRetries(requestUrl, policy, API_CIRCUIT, signal, new Attempt<String>() {
+            @Override
+            public String run(URL url, int connectTimeoutMillis, int readTimeoutMillis,
+                              long deadline) throws FetchException {
+                return await(transport.fetchBodyText(url, connectTimeoutMillis,
+                        readTimeoutMillis, deadline, signal, wireBytes, null));
+            }
+        });
+    }
+
+    /**
+     * One attempt of a request, on the transport picked at runtime.
+     */
+    private interface Attempt<T> {
+
+        T run(URL url, int connectTimeoutMillis, int readTimeoutMillis, long deadline)
+                throws FetchException;
+    }
+
+    // Runs attempts until one works, the policy gives up or the circuit breaker is open
+    private static <T> T fetchWithRetries(String requestUrl, FetchPolicy policy,
+                                          CircuitBreaker circuit, CancellationSignal signal,
+                                          Attempt<T> request) throws FetchException {
         URL url = createUrl(requestUrl);
-        String jsonResponse = null;
-        // sends url to make a HTTP Request
+        if (url == null) {
+            throw new FetchException(FetchException.Kind.CLIENT, "Invalid URL " + requestUrl,
+                    null);
+        }
+
+        long deadline = SystemClock.elapsedRealtime() + policy.getDeadlineMillis();
+        for (int attempt = 1; ; attempt++) {
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+            if (!circuit.allowRequest()) {
+                throw new FetchException(FetchException.Kind.CIRCUIT_OPEN,
+                        "The API failed too many times, not asked again yet", null);
+            }
+
+            // An attempt never runs past the deadline.
+            // A timeout of 0 would wait forever, so at least 1 ms is given.
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                throw new FetchException(FetchException.Kind.TIMEOUT,
+                        "Deadline passed before attempt " + attempt, null);
+            }
+            FetchException failure;
+            try {
+                // sends url to make a HTTP Request on the transport picked at runtime
+                T response = request.run(url,
+                        (int) Math.max(1, Math.min(policy.getConnectTimeoutMillis(), remaining)),
+                        (int) Math.max(1, Math.min(policy.getReadTimeoutMillis(), remaining)),
+                        deadline);
+                circuit.onSuccess();
+                return response;
+            } catch (OperationCanceledException e) {
+                // A cancel says nothing about the API
+                circuit.onIgnored();
+                throw e;
+            } catch (FetchException e) {
+                failure = e;
+            }
+
+            if (signal != null && signal.isCanceled()) {
+                // Failed because it was cancelled, not counted against the API
+                circuit.onIgnored();
+                throw new OperationCanceledException();
+            }
+            if (failure.isTransient()) {
+                circuit.onFailure();
+            } else {
+                circuit.onIgnored();
+            }
+            if (!failure.isTransient() || attempt >= policy.getMaxAttempts()) {
+                throw failure;
+            }
+
+            // The server's Retry-After is used when it gave one
+            long wait = failure.getRetryAfterMillis() > 0
+                    ? failure.getRetryAfterMillis()
+                    : policy.backoffMillis(attempt, BACKOFF_RANDOM);
+            if (SystemClock.elapsedRealtime() + wait >= deadline) {
+                // Another attempt could not finish in time
+                throw failure;
+            }
+            Log.e(LOG_TAG, "Attempt " + attempt + " failed, trying again in " + wait + " ms",
+                    failure);
+            try {
+                if (sleepUnlessCanceled(wait, signal)) {
+                    throw new OperationCanceledException();
+                }
+            } catch (InterruptedException e) {
+                // The loader was cancelled
+                Thread.currentThread().interrupt();
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Waits for an attempt started on the transport.
+     *
+     * @throws FetchException when the attempt failed
+     * @throws OperationCanceledException when the attempt was cancelled, or this thread was
+     *                                    interrupted, which cancels the attempt
+     */
+    private static <T> T await(Future<T> attempt) throws FetchException {
         try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "makeHttpRequest problem. ", e);
+            return attempt.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FetchException) {
+                throw (FetchException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new FetchException(FetchException.Kind.NETWORK, "Transport problem", cause);
+        } catch (CancellationException e) {
+            throw new OperationCanceledException();
+        } catch (InterruptedException e) {
+            attempt.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        }
+    }
+
+    // Waits before the next attempt, returns true when the signal was cancelled meanwhile
+    private static boolean sleepUnlessCanceled(long millis, CancellationSignal signal)
+            throws InterruptedException {
+        final CountDownLatch canceled = new CountDownLatch(1);
+        if (signal != null) {
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    canceled.countDown();
+                }
+            });
         }
+        try {
+            return canceled.await(millis, TimeUnit.MILLISECONDS);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+    }
 
-        // Calls the jsonResponse and stores the return value in articles.
-        // One article at a time  with requested data that is there.
-        List<Article> articles = extractFeatureFromJson(jsonResponse);
+    /**
+     * Sends every request after this with the transport, requests already sent finish
+     * on the one they started on.
+     */
+    public static void setTransport(ArticleTransport newTransport) {
+        transport = newTransport;
+    }
 
-        // articles, an array of articles is returned
-        return articles;
+    // Gets the transport requests are sent with
+    public static ArticleTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Gets a transport by its name, {@link BlockingTransport#NAME} or
+     * {@link NioTransport#NAME}, null for any other name.
+     */
+    public static ArticleTransport getTransport(String name) {
+        if (BlockingTransport.NAME.equals(name)) {
+            return BlockingTransport.getInstance();
+        }
+        if (NioTransport.NAME.equals(name)) {
+            return NioTransport.getInstance();
+        }
+        return null;
     }
 
     // URL is checked
@@ -76,151 +380,568 @@ public final class QueryUtils {
         return url;
     }
 
-    // called from the fetchArticleData
+    // called by the BlockingTransport, one attempt on the calling thread
     // Try's to make a connection to the URL sent.
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
-
-        // Checks for null URL, if null returns and doest not try to make connection
-        if (url == null) {
-            return jsonResponse;
-        }
+    // Anything but a 200 response is thrown as a FetchException.
+    // When store is not null a copy of the body is saved there while it is parsed.
+    // Cancelling the signal disconnects the connection and stops the parser.
+    // Reading the body fails with a TIMEOUT once SystemClock.elapsedRealtime() passes deadline.
+    static List<Article> makeHttpRequest(URL url, FeedStore store, int connectTimeout,
+                                         int readTimeout, long deadline,
+                                         CancellationSignal signal)
+            throws FetchException {
+        List<Article> articles = null;
 
         // URL not null, try's to make a connection
+        // The connection is NOT disconnected at the end, once the body has been read to the
+        // end and closed the socket goes back to the keep-alive pool for the next request.
         HttpURLConnection urlConnection = null;
         InputStream inputStream = null;
+        FeedStore.Editor storeEditor = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            // Set a timeout to read of 10000 ms = 1 second
-            urlConnection.setReadTimeout(TIMEOUT_READ);
-            // Set a timeout to read of 15000 ms = 1.5 second
-            urlConnection.setConnectTimeout(TIMEOUT_CONNECT);
-            // "get" string is used to get data
-            urlConnection.setRequestMethod(REQUEST_METHOD_GET);
+            urlConnection = openConnection(url, connectTimeout, readTimeout, signal);
+            // Each stage is timed and added to the LoadMetrics
+            LoadMetrics metrics = LoadMetrics.getInstance();
+            long startTime = System.nanoTime();
             urlConnection.connect();
+            long connectedTime = System.nanoTime();
+            metrics.record(LoadMetrics.STAGE_CONNECT, connectedTime - startTime);
+            int responseCode = urlConnection.getResponseCode();
+            long firstByteTime = System.nanoTime();
+            metrics.record(LoadMetrics.STAGE_FIRST_BYTE, firstByteTime - connectedTime);
 
             // Checks to see if the connection response code is correct, "200"
             // If the response code is NOT 200 the error is logged.
-            if (urlConnection.getResponseCode() == SUCCESS_RESPONSE_CODE) {
-                // Response code correct, gets InputStream and reads from it
+            if (responseCode == SUCCESS_RESPONSE_CODE) {
+                // Response code correct, gets InputStream and parses the articles from it
                 inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+                // The read timeout is per read, the deadline bounds the whole body
+                CountingInputStream wireStream = new CountingInputStream(
+                        new DeadlineInputStream(inputStream, deadline));
+                CountingInputStream decodedStream = new CountingInputStream(
+                        decodeBody(wireStream, urlConnection.getContentEncoding()));
+                InputStream body = decodedStream;
+                if (store != null) {
+                    // The body is copied to the store as it is read
+                    storeEditor = store.edit(url.toString());
+                    body = new TeeInputStream(decodedStream, storeEditor.stream());
+                }
+                articles = new ArrayList<>();
+                boolean whole = readArticles(body, articles, signal);
+                // Reads anything after the JSON so the connection can be used again
+                drain(body);
+                // The body streams into the parser, the time waiting on the network is the
+                // download and the rest is the parser's
+                long downloadNanos = wireStream.getReadNanos();
+                metrics.record(LoadMetrics.STAGE_DOWNLOAD, downloadNanos);
+                metrics.record(LoadMetrics.STAGE_PARSE,
+                        System.nanoTime() - firstByteTime - downloadNanos);
+                if (storeEditor != null && whole) {
+                    // The whole body was read, it replaces the saved one.
+                    // A malformed one is thrown away below.
+                    storeEditor.commit();
+                    storeEditor = null;
+                }
+                Log.d(LOG_TAG, "makeHttpRequest bytes on the wire: " + wireStream.getCount()
+                        + " decoded: " + decodedStream.getCount());
+                logCacheUse();
             } else {
-                Log.e(LOG_TAG, "makeHttpRequest response code: " + urlConnection.getResponseCode());
+                Log.e(LOG_TAG, "makeHttpRequest response code: " + responseCode);
+                throw responseFailure(urlConnection, responseCode);
             }
-            // Errors are caught and printed in the log.
+        } catch (FetchException e) {
+            throw e;
         } catch (IOException e) {
-            Log.e(LOG_TAG, "makeHttpRequest Problem: ", e);
+            if (urlConnection != null) {
+                // After a failure the socket state is unknown, so it is not reused.
+                urlConnection.disconnect();
+            }
+            if (signal != null) {
+                // A cancelled load fails by closing its connection, it is not an error
+                signal.throwIfCanceled();
+            }
+            throw new FetchException(kindOfFailure(e), "makeHttpRequest Problem", e);
         } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+            if (storeEditor != null) {
+                // The body was not read to the end, the saved one is kept
+                storeEditor.abort();
+            }
+            closeQuietly(inputStream);
+        }
+        // The articles are returned to fetchArticleData
+        return articles;
+    }
+
+    // called by the BlockingTransport, one attempt on the calling thread
+    // Same as makeHttpRequest for the text of one article, read with readBodyText.
+    // The bytes read from the connection are added to wireBytes, also when it fails.
+    static String makeBodyRequest(URL url, int connectTimeout, int readTimeout, long deadline,
+                                  CancellationSignal signal, AtomicLong wireBytes)
+            throws FetchException {
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        CountingInputStream wireStream = null;
+        try {
+            urlConnection = openConnection(url, connectTimeout, readTimeout, signal);
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode != SUCCESS_RESPONSE_CODE) {
+                Log.e(LOG_TAG, "makeBodyRequest response code: " + responseCode);
+                throw responseFailure(urlConnection, responseCode);
+            }
+            inputStream = urlConnection.getInputStream();
+            // Counts the bytes on the wire, to know what a prefetch that is never read cost
+            wireStream = new CountingInputStream(new DeadlineInputStream(inputStream, deadline));
+            InputStream body = new BufferedInputStream(
+                    decodeBody(wireStream, urlConnection.getContentEncoding()), BUFFER_SIZE);
+            String bodyText = readBodyText(body);
+            // Reads anything after the JSON so the connection can be used again
+            drain(body);
+            return bodyText;
+        } catch (FetchException e) {
+            throw e;
+        } catch (IOException e) {
             if (urlConnection != null) {
-                // urlConnection is disconnected.
+                // After a failure the socket state is unknown, so it is not reused.
                 urlConnection.disconnect();
             }
-            if (inputStream != null) {
-                // inputStream is closed.
-                inputStream.close();
+            if (signal != null) {
+                // A cancelled download fails by closing its connection, it is not an error
+                signal.throwIfCanceled();
+            }
+            throw new FetchException(kindOfFailure(e), "makeBodyRequest Problem: " + url, e);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+            if (wireStream != null) {
+                wireBytes.addAndGet(wireStream.getCount());
             }
+            closeQuietly(inputStream);
+        }
+    }
+
+    // Opens a GET connection for one attempt, cancelling the signal disconnects it
+    private static HttpURLConnection openConnection(URL url, int connectTimeout,
+                                                    int readTimeout, CancellationSignal signal)
+            throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        if (signal != null) {
+            // A read blocked on the socket fails once it is closed
+            final HttpURLConnection connection = urlConnection;
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    connection.disconnect();
+                }
+            });
+        }
+        // Timeouts come from the FetchPolicy, cut short near its deadline
+        urlConnection.setReadTimeout(readTimeout);
+        urlConnection.setConnectTimeout(connectTimeout);
+        // "get" string is used to get data
+        urlConnection.setRequestMethod(REQUEST_METHOD_GET);
+        // Uses the response cache installed by NewsApplication.
+        // A stored response is revalidated with If-None-Match / If-Modified-Since,
+        // and a 304 from the server is returned here as a 200 with the cached body.
+        urlConnection.setUseCaches(true);
+        // Asks for a gzip body, it is decoded while it streams in.
+        urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+        return urlConnection;
+    }
+
+    // Reads and closes the error body so the connection can be used again,
+    // and gives the failure for the response code
+    private static FetchException responseFailure(HttpURLConnection urlConnection,
+                                                  int responseCode) throws IOException {
+        long retryAfterMillis = getRetryAfterMillis(urlConnection);
+        InputStream errorStream = urlConnection.getErrorStream();
+        try {
+            drain(errorStream);
+        } finally {
+            closeQuietly(errorStream);
+        }
+        return new FetchException(kindOfResponse(responseCode),
+                "Response code " + responseCode, null, responseCode, retryAfterMillis);
+    }
+
+    // 429 and 5xx may work later, other errors will not
+    static FetchException.Kind kindOfResponse(int responseCode) {
+        if (responseCode == TOO_MANY_REQUESTS_RESPONSE_CODE) {
+            return FetchException.Kind.THROTTLED;
+        }
+        if (responseCode >= SERVER_ERROR_RESPONSE_CODE) {
+            return FetchException.Kind.SERVER;
+        }
+        return FetchException.Kind.CLIENT;
+    }
+
+    // Sorts a failed connection, a host that can not be found means the device is offline
+    static FetchException.Kind kindOfFailure(IOException e) {
+        if (e instanceof UnknownHostException || e instanceof NoRouteToHostException) {
+            return FetchException.Kind.OFFLINE;
+        }
+        if (e instanceof SocketTimeoutException) {
+            return FetchException.Kind.TIMEOUT;
+        }
+        return FetchException.Kind.NETWORK;
+    }
+
+    // Reads Retry-After from the response, 0 when it is missing
+    private static long getRetryAfterMillis(HttpURLConnection urlConnection) {
+        return getRetryAfterMillis(urlConnection.getHeaderField(HEADER_RETRY_AFTER));
+    }
+
+    // Reads a Retry-After value, given in seconds or as an HTTP date, 0 when it is missing
+    static long getRetryAfterMillis(String retryAfter) {
+        if (TextUtils.isEmpty(retryAfter)) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                long date = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US)
+                        .parse(retryAfter.trim()).getTime();
+                return Math.max(0, date - System.currentTimeMillis());
+            } catch (ParseException notADate) {
+                return 0;
+            }
+        }
+    }
+
+    // Closing hands the connection back to the pool, a failure there is only logged
+    static void closeQuietly(InputStream inputStream) {
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem closing the response: ", e);
+        }
+    }
+
+    // Wraps the body in a gzip decoder when the server sent it compressed
+    static InputStream decodeBody(InputStream body, String contentEncoding)
+            throws IOException {
+        if (ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(body, BUFFER_SIZE);
+        }
+        return body;
+    }
+
+    // Reads and throws away what is left of a stream
+    static void drain(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (inputStream.read(buffer) != -1) {
+            // Nothing to do, the bytes are not needed
+        }
+    }
+
+    // Logs how many requests were answered by the response cache and how many needed the network
+    private static void logCacheUse() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) {
+            Log.d(LOG_TAG, "HTTP cache requests: " + cache.getRequestCount()
+                    + " hits: " + cache.getHitCount()
+                    + " network: " + cache.getNetworkCount());
         }
-        // The jsonResponse is returned to fetchArticleData
-        return jsonResponse;
     }
 
     // called by makeHttpRequest
-    // Reads the downloaded data from and changes it into a String.
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream,
-                    StandardCharsets.UTF_8);
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+    // Reads the downloaded data as UTF-8 and parses it without building a String of the response.
+    // A stream that fails or ends part way through throws, so a cut off body is never
+    // taken for a whole one.
+    static List<Article> readArticlesFromStream(InputStream inputStream) throws IOException {
+        return readArticlesFromStream(inputStream, null);
+    }
+
+    // Same as readArticlesFromStream(InputStream), the signal is checked between articles
+    // and OperationCanceledException is thrown once it is cancelled.
+    static List<Article> readArticlesFromStream(InputStream inputStream,
+                                                CancellationSignal signal) throws IOException {
+        if (inputStream == null) {
+            return null;
+        }
+        List<Article> articles = new ArrayList<>();
+        readArticles(inputStream, articles, signal);
+        return articles;
+    }
+
+    // Reads the stream as UTF-8 into the list, returns false when the JSON was malformed
+    static boolean readArticles(InputStream inputStream, List<Article> articles,
+                                CancellationSignal signal) throws IOException {
+        InputStreamReader inputStreamReader = new InputStreamReader(inputStream,
+                StandardCharsets.UTF_8);
+        return readArticles(new BufferedReader(inputStreamReader, BUFFER_SIZE), articles, signal);
+    }
+
+    /**
+     * Reads the text of the article from the response to a query for one article,
+     * {"response":{"content":{"fields":{"bodyText":"..."}}}}. Null when it has none.
+     *
+     * @throws IOException if the response can not be read or is not JSON
+     */
+    static String readBodyText(InputStream inputStream) throws IOException {
+        JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8), BUFFER_SIZE));
+        String bodyText = null;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!KEY_RESPONSE.equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!KEY_CONTENT.equals(reader.nextName())) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (!KEY_FIELDS.equals(reader.nextName())) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (KEY_BODY_TEXT.equals(reader.nextName())) {
+                                bodyText = nextStringOrNull(reader);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Not an article response", e);
+        }
+        return bodyText;
+    }
+
+    /**
+     * Return a list of {@link Article} objects parsed from a body saved in the {@link FeedStore},
+     * or null if it can not be read whole. A cut off or corrupt file never gives part of a list.
+     */
+    public static List<Article> readArticlesFromFile(FeedStore store, File file) {
+        InputStream inputStream = null;
+        try {
+            inputStream = store.open(file);
+            List<Article> articles = new ArrayList<>();
+            if (!readArticles(inputStream, articles, null)) {
+                Log.e(LOG_TAG, "readArticlesFromFile malformed: " + file);
+                return null;
+            }
+            return articles;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "readArticlesFromFile problem: ", e);
+            return null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "readArticlesFromFile close problem: ", e);
+                }
             }
         }
-        // Out put is returned to makeHttpRequest
-        return output.toString();
     }
 
     /**
      * Return a list of {@link Article} objects that has been built up from
      * parsing a JSON response.
+     * Kept for callers that already hold the whole response as a String.
      */
-    private static List<Article> extractFeatureFromJson(String articleJSON) {
+    static List<Article> extractFeatureFromJson(String articleJSON) {
         // Check if empty or null.
         if (TextUtils.isEmpty(articleJSON)) {
             return null;
         }
-        // List of of Articles is created, data is stored inside here.
         List<Article> articles = new ArrayList<>();
+        try {
+            readArticles(new StringReader(articleJSON), articles, null);
+        } catch (IOException e) {
+            // The String ends part way through, the articles read so far are kept
+            Log.e(LOG_TAG, "extractFeatureFromJson problem: ", e);
+        }
+        return articles;
+    }
 
+    /**
+     * Adds the {@link Article} objects read from a JSON response with a streaming
+     * {@link JsonReader} to the list. Only the current article is held while reading, the rest
+     * of the response is never turned into objects.
+     * If the JSON is malformed part way through, the articles read so far are kept and
+     * false is returned. The reader is left open, the caller closes what it opened.
+     *
+     * @throws IOException if reading fails or the input ends before the JSON does
+     */
+    private static boolean readArticles(Reader in, List<Article> articles,
+                                        CancellationSignal signal) throws IOException {
+        EndTrackingReader input = new EndTrackingReader(in);
+        JsonReader reader = new JsonReader(input);
         //Trying to read the JSON
         try {
-            // JSONObject with the data and arrays is stored so it can be searched.
-            JSONObject baseJsonResponse = new JSONObject(articleJSON);
+            // The base object, contains "response"
+            reader.beginObject();
+            while (reader.hasNext()) {
+                // Finds the object "response", this contains the array where the articles data is stored.
+                if (KEY_RESPONSE.equals(reader.nextName())) {
+                    readResponse(reader, articles, signal);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            if (input.isAtEnd()) {
+                // The input stopped inside the JSON, it was cut off
+                throw new EOFException("The response ended before the JSON did");
+            }
+            // Error is caught, the JSON itself is broken
+            // Error message is created and posted
+            Log.e(LOG_TAG, "extractFeatureFromJson problem: ", e);
+            return false;
+        }
+        return true;
+    }
 
-            // Finds the object "response", this contains the array where the articles data is stored.
-            JSONObject responseJsonObject = baseJsonResponse.getJSONObject(KEY_RESPONSE);
+    // Reads the "response" object, the "results" array holds the articles.
+    // The signal, if not null, is checked before each article.
+    private static void readResponse(JsonReader reader, List<Article> articles,
+                                     CancellationSignal signal) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (KEY_RESULTS.equals(reader.nextName())) {
+                // Finds and reads the Array of "results", these are the array of articles
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (signal != null) {
+                        signal.throwIfCanceled();
+                    }
+                    articles.add(readArticle(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
 
-            // Finds and gets the Array of "results", these are the array of articles
-            JSONArray resultsArray = responseJsonObject.getJSONArray(KEY_RESULTS);
+    // Reads one article from the "results" array and takes out the wanted values.
+    private static Article readArticle(JsonReader reader) throws IOException {
+        String articleId = null;
+        String articleTitle = null;
+        String section = null;
+        String webPubDate = null;
+        String articleUrl = null;
+        // checks for nulls, tags and fields may not be there
+        String author = null;
+        String trailText = null;
+        String thumbnailUrl = null;
 
-            // Search's the Array and take out the wanted values stored inside.
-            for (int i = 0; i < resultsArray.length(); i++) {
-                // gets the values in the array at the current value of i
-                JSONObject currentArticle = resultsArray.getJSONObject(i);
-                // Stores the value of "webTitle" into articleTitle
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (KEY_WEB_TITLE.equals(name)) {
                 // This is the Title of the article
-                String articleTitle = currentArticle.getString(KEY_WEB_TITLE);
-                // Stores the value of "sectionName" into section
+                articleTitle = nextStringOrNull(reader);
+            } else if (KEY_ID.equals(name)) {
+                // Content id, the same on every page and section the article shows in
+                articleId = nextStringOrNull(reader);
+            } else if (KEY_SECTION_NAME.equals(name)) {
                 // returned are, World news, US news, Sports ect...
-                String section = currentArticle.getString(KEY_SECTION_NAME);
-                // Stores the value of "webPublicationDate" into webPubDate
-                String webPubDate = currentArticle.getString(KEY_WEB_PUB_DATE);
-                // For a given article, extract the value for the key called "webUrl"
+                section = nextStringOrNull(reader);
+            } else if (KEY_WEB_PUB_DATE.equals(name)) {
+                webPubDate = nextStringOrNull(reader);
+            } else if (KEY_WEB_URL.equals(name)) {
                 // This is the website address of the article
-                String articleUrl = currentArticle.getString(KEY_WEB_URL);
-
-                // checks for nulls
-                String author = null;
-                if (currentArticle.has(KEY_TAGS)) {
-                    // Finds the key with "tags"
-                    JSONArray tagsArray = currentArticle.getJSONArray(KEY_TAGS);
-                    if (tagsArray.length() != 0) {
-                        // Extract the first JSONObject in the tagsArray
-                        // Array, starts at zero
-                        JSONObject firstTagsItem = tagsArray.getJSONObject
-                                (0);
-                        // String author is assigned the value of "webTitle"
-                        author = firstTagsItem.getString(KEY_WEB_TITLE);
+                articleUrl = nextStringOrNull(reader);
+            } else if (KEY_TAGS.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                // The "webTitle" of the first tag is the name of the author
+                author = readFirstTagTitle(reader);
+            } else if (KEY_FIELDS.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                // Looks for the "trailText" and "thumbnail" keys, they may not be there
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if (KEY_TRAIL_TEXT.equals(field)) {
+                        trailText = nextStringOrNull(reader);
+                    } else if (KEY_THUMBNAIL.equals(field)) {
+                        // Web address of a small picture of the article
+                        thumbnailUrl = nextStringOrNull(reader);
+                    } else {
+                        reader.skipValue();
                     }
                 }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-                // For a given news, if it contains the key called "fields", extract JSONObject
-                // associated with the key "fields"
-                String trailText = null;
-                if (currentArticle.has(KEY_FIELDS)) {
-                    // Extract the JSONObject associated with the key called "fields"
-                    JSONObject fieldsObject = currentArticle.getJSONObject(KEY_FIELDS);
-                    // Looks for the  "trailText" key, if it is there they get the value for trailText
-                    if (fieldsObject.has(KEY_TRAIL_TEXT)) {
-                        trailText = fieldsObject.getString(KEY_TRAIL_TEXT);
+        // Id, Section article is in, Date and time Published, Article title, Article URL,
+        // author Name, Summary of article, thumbnail
+        return new Article(articleId, section, parseWebDate(webPubDate), articleTitle, articleUrl,
+                author, trailText, thumbnailUrl);
+    }
+
+    // Reads the "tags" array, only the first tag is used.
+    private static String readFirstTagTitle(JsonReader reader) throws IOException {
+        String author = null;
+        reader.beginArray();
+        boolean first = true;
+        while (reader.hasNext()) {
+            if (first && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (KEY_WEB_TITLE.equals(reader.nextName())) {
+                        author = nextStringOrNull(reader);
+                    } else {
+                        reader.skipValue();
                     }
                 }
-
-                // Section article is in, Date and time Published, Article title, Article URL,
-                // author Name, Summary of article
-                Article article = new Article(section, webPubDate, articleTitle, articleUrl,
-                        author, trailText);
-                articles.add(article);
+                reader.endObject();
+            } else {
+                reader.skipValue();
             }
-        } catch (JSONException e) {
-            // Error is caught
-            // Error message is created and posted
-            Log.e(LOG_TAG, "extractFeatureFromJson problem: ", e);
+            first = false;
         }
-        // Return the list of articles
-        return articles;
+        reader.endArray();
+        return author;
+    }
+
+    // Changes the "webPublicationDate" into milliseconds since 1970 UTC,
+    // Article.NO_DATE if it is missing or can not be read
+    static long parseWebDate(String webPubDate) {
+        long publishedMillis = Timestamps.parseIso8601(webPubDate);
+        if (webPubDate != null && publishedMillis == Article.NO_DATE) {
+            Log.e(LOG_TAG, "parseWebDate problem: " + webPubDate);
+        }
+        return publishedMillis;
+    }
+
+    // JSON null is returned as a Java null, same as a missing key.
+    static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
     }
 }
@@ -0,0 +1,129 @@
+package stephenkyne.example.org.newsapp;
+
+import android.app.LoaderManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.Loader;
+import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AppCompatActivity;
+
+/**
+ * Shows the text of one article without leaving the app.
+ * The title and byline come with the intent and are shown at once, the text is loaded by
+ * an {@link ArticleBodyLoader}, from disk when the list prefetched it.
+ * The menu opens the article on the website, for its pictures and links.
+ */
+public class ReaderActivity extends AppCompatActivity implements
+        LoaderManager.LoaderCallbacks<String> {
+
+    // Intent extras, set by newIntent
+    static final String EXTRA_ARTICLE_ID = "article_id";
+    static final String EXTRA_TITLE = "title";
+    static final String EXTRA_BYLINE = "byline";
+    static final String EXTRA_WEB_URL = "web_url";
+
+    // Loader ID for the text of the article
+    private static final int BODY_LOADER_ID = 1;
+
+    // Put between the section, author and date of the byline
+    private static final String BYLINE_SEPARATOR = " \u00b7 ";
+
+    private TextView bodyView;
+    private TextView emptyStateTextView;
+    private View loadingIndicator;
+
+    // Opened by the menu, null when the article has no web address
+    private String webUrl;
+
+    // Makes the intent that opens the article of the row in the reader
+    public static Intent newIntent(Context context, ArticleRow row) {
+        Intent intent = new Intent(context, ReaderActivity.class);
+        intent.putExtra(EXTRA_ARTICLE_ID, row.getArticle().getId());
+        intent.putExtra(EXTRA_TITLE, row.getTitle());
+        intent.putExtra(EXTRA_BYLINE, TextUtils.join(BYLINE_SEPARATOR,
+                new String[]{row.getSectionLabel(), row.getAuthor(), row.getFormattedDate()}));
+        intent.putExtra(EXTRA_WEB_URL, row.getWebUrl());
+        return intent;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_reader);
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            // Back to the list, the parent activity is set in the manifest
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        Intent intent = getIntent();
+        webUrl = intent.getStringExtra(EXTRA_WEB_URL);
+        ((TextView) findViewById(R.id.reader_title)).setText(
+                intent.getStringExtra(EXTRA_TITLE));
+        ((TextView) findViewById(R.id.reader_byline)).setText(
+                intent.getStringExtra(EXTRA_BYLINE));
+        bodyView = findViewById(R.id.reader_body);
+        emptyStateTextView = findViewById(R.id.reader_empty_view);
+        loadingIndicator = findViewById(R.id.reader_loading_indicator);
+
+        // Kept across rotation, the text is not loaded again
+        getLoaderManager().initLoader(BODY_LOADER_ID, null, this);
+    }
+
+    @Override
+    public Loader<String> onCreateLoader(int id, Bundle bundle) {
+        return new ArticleBodyLoader(this, getIntent().getStringExtra(EXTRA_ARTICLE_ID));
+    }
+
+    @Override
+    public void onLoadFinished(Loader<String> loader, String body) {
+        loadingIndicator.setVisibility(View.GONE);
+        if (body == null) {
+            FetchException error = ((ArticleBodyLoader) loader).getError();
+            emptyStateTextView.setText(error != null
+                    ? MainActivity.getErrorMessage(error) : R.string.reader_no_text);
+            emptyStateTextView.setVisibility(View.VISIBLE);
+            return;
+        }
+        if (body.isEmpty()) {
+            // Only pictures or video, the website shows them
+            emptyStateTextView.setText(R.string.reader_no_text);
+            emptyStateTextView.setVisibility(View.VISIBLE);
+            return;
+        }
+        emptyStateTextView.setVisibility(View.GONE);
+        bodyView.setText(body);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<String> loader) {
+        bodyView.setText(null);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.reader, menu);
+        menu.findItem(R.id.action_open_in_browser).setVisible(!TextUtils.isEmpty(webUrl));
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_open_in_browser) {
+            // Calls an intent to open a webBrowser and go to article website address.
+            Intent intent = new Intent(Intent.ACTION_VIEW);
+            intent.setData(Uri.parse(webUrl));
+            startActivity(intent);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
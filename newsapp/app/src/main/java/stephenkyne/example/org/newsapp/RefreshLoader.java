@@ -0,0 +1,93 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads only the articles published since the last load of each section, using the
+ * API's "from-date". Most refreshes find a few new articles, so a few hundred bytes are
+ * downloaded instead of the whole first page.
+ * When a section was not loaded for a long time, or more articles are new than one
+ * request returns, {@link #isFullResyncNeeded()} is true and page 1 should be loaded again.
+ */
+public class RefreshLoader extends ArticleLoader {
+
+    // Most new articles asked for per section, a full page of them means some may be missing
+    static final int DELTA_PAGE_SIZE = 50;
+
+    // A section not loaded for this long is loaded again in full, in milliseconds
+    static final long MAX_GAP_MILLIS = 24 * 60 * 60 * 1000;
+
+    /** Section ids of the feed shown */
+    private final List<String> sections;
+
+    /** True when the list should be loaded again from page 1 */
+    private volatile boolean fullResyncNeeded;
+
+    /**
+     * Constructs a new {@link RefreshLoader}.
+     *
+     * @param context  of the activity
+     * @param sections the section ids of the feed shown
+     */
+    public RefreshLoader(Context context, List<String> sections) {
+        super(context, null, ArticleQuery.FIRST_PAGE);
+        this.sections = sections;
+    }
+
+    // True when the new articles could not all be loaded, page 1 should be loaded instead
+    public boolean isFullResyncNeeded() {
+        return fullResyncNeeded;
+    }
+
+    /**
+     * This is on a background thread.
+     * Returns the new articles of every section, newest first.
+     */
+    @Override
+    protected List<ArticleRow> load(CancellationSignal signal) {
+        fullResyncNeeded = false;
+        SyncState syncState = SyncState.getInstance(getContext());
+        // Saved only when every section loaded and the rows are delivered
+        SyncState.Update sync = syncState.newUpdate();
+        long now = System.currentTimeMillis();
+        List<List<ArticleRow>> sectionRows = new ArrayList<>(sections.size());
+        for (String section : sections) {
+            signal.throwIfCanceled();
+            long newestMillis = syncState.getNewestMillis(section);
+            if (newestMillis == Article.NO_DATE
+                    || now - syncState.getSyncedMillis(section) > MAX_GAP_MILLIS) {
+                fullResyncNeeded = true;
+                return null;
+            }
+
+            // The article with the newest date is returned again, dedup by id removes it
+            String url = ArticleQuery.buildDeltaUrl(getContext(), section, newestMillis,
+                    DELTA_PAGE_SIZE);
+            List<Article> articles;
+            try {
+                articles = ArticleFetcher.getInstance().fetch(getContext(), url, signal);
+            } catch (FetchException e) {
+                setError(e);
+                return null;
+            }
+            if (articles.size() >= DELTA_PAGE_SIZE) {
+                // More is new than one request returns, the gap is too large
+                fullResyncNeeded = true;
+                return null;
+            }
+            List<ArticleRow> rows = getRowFactory().createRows(articles);
+            // Makes the new articles searchable
+            ArticleIndex.getInstance().addAll(rows);
+            sectionRows.add(rows);
+            sync.add(url, articles);
+        }
+        setError(null);
+        List<ArticleRow> merged = FeedMerger.mergeByDate(sectionRows, true);
+        setPendingSync(merged, sync);
+        return merged;
+    }
+}
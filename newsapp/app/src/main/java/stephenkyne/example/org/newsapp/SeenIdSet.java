@@ -0,0 +1,152 @@
+package stephenkyne.example.org.newsapp;
+
+/**
+ * Remembers which article ids have been seen, so an article that is in two sections, or moves
+ * to the next page when new ones are published, is only shown once.
+ * Only a 64 bit hash of each id is kept, in an open addressing table of longs, so an id costs
+ * 16 to 32 bytes whatever its length and no object is made per id. Two different ids having the
+ * same hash is not expected before billions of ids.
+ *
+ * The memory used is bounded: ids are kept in two generations of at most
+ * generationSize ids each. When the newer one is full the older one is dropped, so the
+ * last generationSize ids added are always remembered and older ones may be forgotten.
+ * Not thread safe.
+ */
+final class SeenIdSet {
+
+    // Number of ids a generation holds by default, two full ones take 512 KB
+    static final int DEFAULT_GENERATION_SIZE = 16384;
+
+    // Smallest table, a set used for one merge stays small
+    private static final int MIN_CAPACITY = 16;
+
+    // Marks a free slot, a hash that comes out as 0 is stored as 1 instead
+    private static final long EMPTY = 0L;
+
+    // FNV-1a 64 bit
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int generationSize;
+
+    // The ids added since the last generation was started
+    private long[] newer;
+    private int newerCount;
+
+    // The ids of the generation before, null when there is none
+    private long[] older;
+    private int olderCount;
+
+    SeenIdSet() {
+        this(DEFAULT_GENERATION_SIZE);
+    }
+
+    /**
+     * @param generationSize number of ids always remembered, twice that many at most
+     */
+    SeenIdSet(int generationSize) {
+        if (generationSize < 1) {
+            throw new IllegalArgumentException("generationSize " + generationSize);
+        }
+        this.generationSize = generationSize;
+        newer = new long[MIN_CAPACITY];
+    }
+
+    /**
+     * Adds the id if it was not seen yet.
+     *
+     * @return true when the id is new, false when it was seen already.
+     * An article without an id can not be recognised again, so it is always new.
+     */
+    boolean add(String id) {
+        if (id == null) {
+            return true;
+        }
+        long hash = hash(id);
+        if (older != null && indexOf(older, hash) >= 0) {
+            return false;
+        }
+        int index = indexOf(newer, hash);
+        if (index >= 0) {
+            return false;
+        }
+        if (newerCount == generationSize) {
+            // The older generation is forgotten to make room
+            older = newer;
+            olderCount = newerCount;
+            newer = new long[MIN_CAPACITY];
+            newerCount = 0;
+            index = indexOf(newer, hash);
+        } else if ((newerCount + 1) * 2 > newer.length) {
+            // Kept at most half full so a lookup finds a free slot quickly
+            grow();
+            index = indexOf(newer, hash);
+        }
+        newer[~index] = hash;
+        newerCount++;
+        return true;
+    }
+
+    // Returns true if the id was added and not forgotten yet
+    boolean contains(String id) {
+        if (id == null) {
+            return false;
+        }
+        long hash = hash(id);
+        return indexOf(newer, hash) >= 0 || (older != null && indexOf(older, hash) >= 0);
+    }
+
+    // Number of ids remembered now
+    int size() {
+        return newerCount + olderCount;
+    }
+
+    // Forgets every id, the memory of the larger tables is given back
+    void clear() {
+        newer = new long[MIN_CAPACITY];
+        newerCount = 0;
+        older = null;
+        olderCount = 0;
+    }
+
+    /**
+     * Linear probing from the slot the hash picks.
+     *
+     * @return the slot holding the hash, or ~slot of the free slot where it would go
+     */
+    private static int indexOf(long[] table, long hash) {
+        int mask = table.length - 1;
+        // The high bits are mixed in, the low bits alone pick the slot
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true) {
+            long value = table[slot];
+            if (value == hash) {
+                return slot;
+            }
+            if (value == EMPTY) {
+                return ~slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        long[] old = newer;
+        newer = new long[old.length * 2];
+        for (long hash : old) {
+            if (hash != EMPTY) {
+                newer[~indexOf(newer, hash)] = hash;
+            }
+        }
+    }
+
+    static long hash(String id) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash == EMPTY ? 1L : hash;
+    }
+}
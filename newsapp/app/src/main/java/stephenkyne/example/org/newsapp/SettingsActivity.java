@@ -3,12 +3,15 @@ package stephenkyne.example.org.newsapp;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.ListPreference;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.util.Set;
+
 public class SettingsActivity extends AppCompatActivity {
 
     @Override
@@ -33,13 +36,42 @@ public class SettingsActivity extends AppCompatActivity {
             Preference numberOfArticles = findPreference(getString(R.string.settings_number_articles_key));
             bindPreferenceSummaryToValue(numberOfArticles);
 
+            // finds and displays how many rows are left when the next page is loaded
+            Preference prefetchDistance = findPreference(getString(R.string.settings_prefetch_distance_key));
+            bindPreferenceSummaryToValue(prefetchDistance);
+
             // finds and displays the the news feed section that is already
             Preference newsSection = findPreference(getString(R.string.settings_select_feed_key));
             bindPreferenceSummaryToValue(newsSection);
+
+            // finds and displays the sections loaded together for "My Sections"
+            Preference mySections = findPreference(getString(R.string.settings_my_sections_key));
+            bindSetPreferenceSummaryToValue(mySections);
+
+            // finds and displays how requests are sent
+            Preference transport = findPreference(getString(R.string.settings_transport_key));
+            bindPreferenceSummaryToValue(transport);
         }
 
         @Override
         public boolean onPreferenceChange(Preference preference, Object value) {
+            if (preference instanceof MultiSelectListPreference) {
+                // The value is the Set of picked values, the labels are listed in the summary
+                MultiSelectListPreference listPreference = (MultiSelectListPreference) preference;
+                CharSequence[] labels = listPreference.getEntries();
+                StringBuilder summary = new StringBuilder();
+                for (Object picked : (Set<?>) value) {
+                    int prefIndex = listPreference.findIndexOfValue(picked.toString());
+                    if (prefIndex >= 0) {
+                        if (summary.length() > 0) {
+                            summary.append(", ");
+                        }
+                        summary.append(labels[prefIndex]);
+                    }
+                }
+                preference.setSummary(summary);
+                return true;
+            }
             String stringValue = value.toString();
             if (preference instanceof ListPreference) {
                 ListPreference listPreference = (ListPreference) preference;
@@ -61,5 +93,15 @@ public class SettingsActivity extends AppCompatActivity {
             String preferenceString = preferences.getString(preference.getKey(), "");
             onPreferenceChange(preference, preferenceString);
         }
+
+        // Same as bindPreferenceSummaryToValue, for preferences that store a Set of Strings
+        private void bindSetPreferenceSummaryToValue(Preference preference) {
+            preference.setOnPreferenceChangeListener(this);
+            SharedPreferences preferences =
+                    PreferenceManager.getDefaultSharedPreferences(preference.getContext());
+            Set<String> preferenceSet = preferences.getStringSet(preference.getKey(),
+                    ((MultiSelectListPreference) preference).getValues());
+            onPreferenceChange(preference, preferenceSet);
+        }
     }
 }
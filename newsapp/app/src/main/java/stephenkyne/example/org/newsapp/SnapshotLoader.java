@@ -0,0 +1,57 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the list saved by the last successful load from the {@link SnapshotStore}, so the
+ * screen has rows before the network answers. Delivers null when nothing was saved for the
+ * feed picked in the settings.
+ * The rows of the first screen are delivered as soon as they are decoded, then the whole list.
+ */
+public class SnapshotLoader extends ArticleLoader {
+
+    // Number of articles that fill the first screen, delivered before the rest are decoded
+    static final int FIRST_SCREEN_ARTICLES = 12;
+
+    /** Time the delivered list was saved, 0 when there was none */
+    private volatile long savedAtMillis;
+
+    public SnapshotLoader(Context context) {
+        super(context, null, ArticleQuery.FIRST_PAGE);
+    }
+
+    // Gets when the delivered list was saved, used to show its age
+    public long getSavedAtMillis() {
+        return savedAtMillis;
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    protected List<ArticleRow> load(CancellationSignal signal) {
+        SnapshotStore.Snapshot snapshot = SnapshotStore.getInstance(getContext())
+                .load(ArticleQuery.getFeedKey(getContext()));
+        if (snapshot == null) {
+            savedAtMillis = 0;
+            return null;
+        }
+        savedAtMillis = snapshot.getSavedAtMillis();
+        List<ArticleRow> rows = new ArrayList<>(getRowFactory().createRows(
+                snapshot.getFirstArticles(FIRST_SCREEN_ARTICLES)));
+        if (snapshot.size() > rows.size()) {
+            // The whole list replaces these rows
+            deliverPartialResult(new ArrayList<>(rows));
+            signal.throwIfCanceled();
+            List<Article> rest = snapshot.getArticles();
+            rows.addAll(getRowFactory().createRows(rest.subList(rows.size(), rest.size())));
+        }
+        // Makes the saved articles searchable
+        ArticleIndex.getInstance().addAll(rows);
+        return rows;
+    }
+}
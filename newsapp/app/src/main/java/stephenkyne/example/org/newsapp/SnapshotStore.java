@@ -0,0 +1,532 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * The first page of the last list that loaded, saved so the next launch can show it before
+ * the network answers, or instead of the network when there is no connection.
+ * Only one list is kept, saved with the feed it came from so a list for other settings
+ * is not shown.
+ *
+ * The articles are saved already parsed, in a small binary file, so nothing is parsed again
+ * at launch. The file is memory mapped and each article is only decoded when it is asked
+ * for, the first screen can be shown without reading the rest.
+ *
+ * Layout, numbers are big endian, a "varint" is an unsigned LEB128 number and a "string" is a
+ * varint of its UTF-8 length plus one followed by the bytes, 0 for null:
+ * <pre>
+ * int     magic "NWSS"
+ * byte    version, {@link #VERSION}
+ * byte    flags, {@link #FLAG_DEFLATE} when the articles are deflate compressed
+ * long    saved at, milliseconds since 1970-01-01 UTC
+ * string  feed
+ * varint  number of shared strings, then each string
+ * varint  number of articles
+ * then for each article, compressed together when the flag is set:
+ * varint  length of the rest of the article
+ * string  id
+ * varint  section, index in the shared strings plus one, 0 for null
+ * long    published, milliseconds since 1970-01-01 UTC or {@link Article#NO_DATE}
+ * string  title, web URL
+ * varint  author, index in the shared strings plus one, 0 for null
+ * string  summary, thumbnail URL
+ * </pre>
+ * Sections and authors repeat from article to article, so each is saved once.
+ * The length before each article lets a reader skip fields added after it was written.
+ */
+public class SnapshotStore {
+
+    // LOG TAG
+    private static final String LOG_TAG = "SnapshotStore Error: ";
+
+    // Name of the file inside the app files directory
+    static final String SNAPSHOT_FILE = "last_feed.snapshot";
+
+    // Name of the JSON snapshot older versions saved, removed when a new one is saved
+    static final String LEGACY_SNAPSHOT_FILE = "last_feed.json";
+
+    // Ending of a snapshot that is still being written
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // First four bytes of every snapshot, "NWSS"
+    static final int MAGIC = 0x4E575353;
+
+    // Layout written by this version, a file with another version is not read
+    static final int VERSION = 1;
+
+    // Set in the flags when the articles are deflate compressed
+    static final int FLAG_DEFLATE = 1;
+
+    // Bytes of a compressed snapshot inflated at a time
+    private static final int INFLATE_CHUNK = 8192;
+
+    // Fewest bytes an article takes: its length, the published date and a byte for each
+    // of the other seven fields
+    static final int MIN_ARTICLE_BYTES = 1 + 8 + 7;
+
+    // Most a deflate stream can expand, the bound used to check the article count
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static SnapshotStore instance;
+
+    private final File file;
+    private final FeedStore.Clock clock;
+    private final boolean deflate;
+
+    // One thread, so the saves asked for from the UI thread are written in that order
+    private final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+
+    private SnapshotStore(Context context) {
+        this(new File(context.getFilesDir(), SNAPSHOT_FILE), FeedStore.SYSTEM_CLOCK, false);
+    }
+
+    // Gets the store used by the whole app, every save goes through its lock so two
+    // loads never write the same temporary file at once
+    public static synchronized SnapshotStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new SnapshotStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    SnapshotStore(File file, FeedStore.Clock clock) {
+        this(file, clock, false);
+    }
+
+    /**
+     * @param file    where the snapshot is saved
+     * @param clock   gives the time the snapshot is saved at
+     * @param deflate true to save the articles compressed, smaller but every article before
+     *                the ones asked for has to be inflated
+     */
+    SnapshotStore(File file, FeedStore.Clock clock, boolean deflate) {
+        this.file = file;
+        this.clock = clock;
+        this.deflate = deflate;
+        writer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Replaces the saved list. Written to a new file first so a crash part way through
+     * leaves the old list in place.
+     *
+     * @param feed     the feed the articles came from, see {@link ArticleQuery#getFeedKey}
+     * @param articles the articles in the order they are shown
+     */
+    public synchronized void save(String feed, List<Article> articles) {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try {
+            byte[] bytes = encode(feed, clock.currentTimeMillis(), articles, deflate);
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Can not save " + file);
+            }
+            // The JSON snapshot of an older version is not read any more
+            File legacy = new File(file.getParentFile(), LEGACY_SNAPSHOT_FILE);
+            if (legacy.exists() && !legacy.delete()) {
+                Log.e(LOG_TAG, "Can not delete " + legacy);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "save problem: ", e);
+            if (temp.exists() && !temp.delete()) {
+                Log.e(LOG_TAG, "Can not delete " + temp);
+            }
+        }
+    }
+
+    /**
+     * Replaces the saved list on a background thread, called when the list is delivered.
+     * Saves run one after another in the order they were asked for.
+     */
+    public void saveInBackground(final String feed, final List<Article> articles) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                save(feed, articles);
+            }
+        });
+    }
+
+    /**
+     * Gets the saved list if it came from the given feed, otherwise null.
+     * Only the header is read here, the articles are decoded as they are asked for.
+     */
+    public synchronized Snapshot load(String feed) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer;
+            FileInputStream in = new FileInputStream(file);
+            try {
+                // The mapping stays valid after the file is closed, or replaced by a new save
+                FileChannel channel = in.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                in.close();
+            }
+            return readSnapshot(buffer, feed);
+        } catch (IOException | DataFormatException | BufferUnderflowException
+                | IllegalArgumentException e) {
+            Log.e(LOG_TAG, "load problem: ", e);
+            return null;
+        }
+    }
+
+    // Gets the bytes of a snapshot file
+    static byte[] encode(String feed, long savedAtMillis, List<Article> articles,
+                         boolean deflate) throws IOException {
+        // Sections and authors, in the order they are first used
+        Map<String, Integer> sharedStrings = new LinkedHashMap<>();
+        for (Article article : articles) {
+            share(sharedStrings, article.getSection());
+            share(sharedStrings, article.getAuthor());
+        }
+
+        Encoder body = new Encoder(articles.size() * 512);
+        Encoder record = new Encoder(1024);
+        for (Article article : articles) {
+            record.reset();
+            record.writeString(article.getId());
+            record.writeSharedString(sharedStrings, article.getSection());
+            record.writeLong(article.getPublishedMillis());
+            record.writeString(article.getTitle());
+            record.writeString(article.getWebUrl());
+            record.writeSharedString(sharedStrings, article.getAuthor());
+            record.writeString(article.getSummary());
+            record.writeString(article.getThumbnailUrl());
+            body.writeVarint(record.size());
+            record.writeTo(body);
+        }
+
+        Encoder out = new Encoder(body.size() + 1024);
+        out.writeInt(MAGIC);
+        out.write(VERSION);
+        out.write(deflate ? FLAG_DEFLATE : 0);
+        out.writeLong(savedAtMillis);
+        out.writeString(feed);
+        out.writeVarint(sharedStrings.size());
+        for (String shared : sharedStrings.keySet()) {
+            out.writeString(shared);
+        }
+        out.writeVarint(articles.size());
+        if (deflate) {
+            DeflaterOutputStream deflater = new DeflaterOutputStream(out,
+                    new Deflater(Deflater.DEFAULT_COMPRESSION));
+            body.writeTo(deflater);
+            deflater.finish();
+        } else {
+            body.writeTo(out);
+        }
+        return out.toByteArray();
+    }
+
+    // Reads the header, a snapshot of another feed is not read any further
+    private static Snapshot readSnapshot(ByteBuffer buffer, String feed)
+            throws IOException, DataFormatException {
+        if (buffer.remaining() < 6 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+        int version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Snapshot version " + version + " is not read");
+        }
+        int flags = buffer.get();
+        long savedAt = buffer.getLong();
+        Decoder header = new Decoder(buffer, null);
+        String savedFeed = header.readString();
+        if (savedFeed == null || !savedFeed.equals(feed)) {
+            return null;
+        }
+        // Each shared string takes at least one byte, a larger count is damage
+        int sharedCount = header.readCount();
+        if (sharedCount > buffer.remaining()) {
+            throw new IOException("Bad shared string count " + sharedCount);
+        }
+        String[] sharedStrings = new String[sharedCount];
+        for (int i = 0; i < sharedStrings.length; i++) {
+            sharedStrings[i] = header.readString();
+        }
+        int count = header.readCount();
+        // The array for the articles is sized by the count, one that can not fit in the
+        // bytes left is damage and the snapshot is treated as missing
+        long maxBytes = (flags & FLAG_DEFLATE) != 0
+                ? (long) buffer.remaining() * MAX_DEFLATE_RATIO : buffer.remaining();
+        if (count > maxBytes / MIN_ARTICLE_BYTES) {
+            throw new IOException("Bad article count " + count);
+        }
+
+        // The rest of the file is the articles
+        ByteBuffer articles = buffer.slice();
+        Decoder decoder = (flags & FLAG_DEFLATE) != 0
+                ? new Decoder(articles, new Inflater())
+                : new Decoder(articles, null);
+        return new Snapshot(savedAt, count, sharedStrings, decoder);
+    }
+
+    private static void share(Map<String, Integer> sharedStrings, String value) {
+        if (value != null && !sharedStrings.containsKey(value)) {
+            sharedStrings.put(value, sharedStrings.size());
+        }
+    }
+
+    /**
+     * A saved list and when it was saved. The articles are decoded the first time they are
+     * asked for, in order. If the file turns out to be damaged part way through, the
+     * articles before the damage are given back. Thread safe.
+     */
+    public static final class Snapshot {
+
+        private final long savedAtMillis;
+        private final String[] sharedStrings;
+        private final Article[] articles;
+
+        // Guarded by "this"
+        private Decoder decoder;
+        private int decodedCount;
+        private int count;
+
+        Snapshot(long savedAtMillis, int count, String[] sharedStrings, Decoder decoder) {
+            this.savedAtMillis = savedAtMillis;
+            this.count = count;
+            this.sharedStrings = sharedStrings;
+            this.decoder = decoder;
+            this.articles = new Article[count];
+        }
+
+        // Time the list was saved, milliseconds since 1970-01-01 UTC
+        public long getSavedAtMillis() {
+            return savedAtMillis;
+        }
+
+        // Number of articles saved, smaller once damage is found
+        public synchronized int size() {
+            return count;
+        }
+
+        // Gets every article, in the order they are shown
+        public List<Article> getArticles() {
+            return getFirstArticles(Integer.MAX_VALUE);
+        }
+
+        // Gets the first articles, the ones after them are not decoded
+        public synchronized List<Article> getFirstArticles(int wanted) {
+            int end = Math.min(wanted, count);
+            while (decodedCount < end) {
+                try {
+                    articles[decodedCount] = decoder.readArticle(sharedStrings);
+                    decodedCount++;
+                } catch (IOException | DataFormatException | BufferUnderflowException
+                        | IllegalArgumentException e) {
+                    Log.e(LOG_TAG, "Snapshot damaged after " + decodedCount + " articles", e);
+                    count = decodedCount;
+                    end = count;
+                }
+            }
+            if (decodedCount == count) {
+                // Everything is decoded, the file is not needed any more
+                decoder = null;
+            }
+            return Collections.unmodifiableList(Arrays.asList(articles).subList(0, end));
+        }
+    }
+
+    /**
+     * Reads the values of a snapshot from the mapped file, or from the bytes inflated from
+     * it so far.
+     */
+    static final class Decoder {
+
+        private final Inflater inflater;
+
+        // Compressed bytes not given to the inflater yet, null when not compressed
+        private final ByteBuffer compressed;
+        private byte[] input;
+
+        // The bytes to read, from the position to the limit
+        private ByteBuffer buffer;
+
+        // Holds the UTF-8 bytes of one string
+        private byte[] scratch = new byte[256];
+
+        Decoder(ByteBuffer source, Inflater inflater) {
+            this.inflater = inflater;
+            if (inflater == null) {
+                compressed = null;
+                buffer = source;
+            } else {
+                compressed = source;
+                input = new byte[INFLATE_CHUNK];
+                buffer = ByteBuffer.allocate(INFLATE_CHUNK * 4);
+                buffer.limit(0);
+            }
+        }
+
+        Article readArticle(String[] sharedStrings) throws IOException, DataFormatException {
+            int length = readCount();
+            require(length);
+            int end = buffer.position() + length;
+            String id = readString();
+            String section = readShared(sharedStrings);
+            long published = buffer.getLong();
+            String title = readString();
+            String webUrl = readString();
+            String author = readShared(sharedStrings);
+            String summary = readString();
+            String thumbnailUrl = readString();
+            if (buffer.position() > end) {
+                throw new IOException("Article longer than its length");
+            }
+            // Skips anything a newer version added to the end of the article
+            buffer.position(end);
+            return new Article(id, section, published, title, webUrl, author, summary,
+                    thumbnailUrl);
+        }
+
+        // A varint that must fit an int
+        int readCount() throws IOException, DataFormatException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                require(1);
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    if (value < 0) {
+                        throw new IOException("Bad length in snapshot");
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Bad length in snapshot");
+        }
+
+        String readString() throws IOException, DataFormatException {
+            int length = readCount();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            require(length);
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private String readShared(String[] sharedStrings) throws IOException,
+                DataFormatException {
+            int index = readCount();
+            if (index == 0) {
+                return null;
+            }
+            if (index > sharedStrings.length) {
+                throw new IOException("Bad shared string " + index);
+            }
+            return sharedStrings[index - 1];
+        }
+
+        // Makes sure count bytes can be read, inflating more if needed
+        private void require(int count) throws IOException, DataFormatException {
+            while (buffer.remaining() < count) {
+                if (inflater == null || inflater.finished()) {
+                    throw new IOException("Snapshot ends early");
+                }
+                if (inflater.needsInput()) {
+                    if (!compressed.hasRemaining()) {
+                        throw new IOException("Compressed snapshot ends early");
+                    }
+                    int length = Math.min(input.length, compressed.remaining());
+                    compressed.get(input, 0, length);
+                    inflater.setInput(input, 0, length);
+                }
+                // The bytes already read are dropped, and the buffer grows to fit count
+                buffer.compact();
+                if (buffer.capacity() < count + INFLATE_CHUNK) {
+                    ByteBuffer larger = ByteBuffer.allocate(
+                            Math.max(buffer.capacity() * 2, count + INFLATE_CHUNK));
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+                int inflated = inflater.inflate(buffer.array(),
+                        buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.position() + inflated);
+                buffer.flip();
+            }
+        }
+    }
+
+    /**
+     * Writes the values of a snapshot.
+     */
+    private static final class Encoder extends ByteArrayOutputStream {
+
+        Encoder(int size) {
+            super(size);
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeSharedString(Map<String, Integer> sharedStrings, String value) {
+            writeVarint(value == null ? 0 : sharedStrings.get(value) + 1);
+        }
+    }
+}
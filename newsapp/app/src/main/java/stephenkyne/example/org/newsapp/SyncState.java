@@ -0,0 +1,116 @@
+package stephenkyne.example.org.newsapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_ORDER_BY;
+import static stephenkyne.example.org.newsapp.MainActivity.PARAM_PAGE;
+
+/**
+ * Remembers, for every section, the newest publication date loaded and when it was loaded.
+ * A refresh then only asks the API for articles published since that date.
+ * Saved in its own SharedPreferences file so it survives the app being closed.
+ * Dates are collected in an {@link Update} while a list loads and saved once the list
+ * is delivered, so articles that were never shown are asked for again.
+ */
+public final class SyncState {
+
+    // Name of the SharedPreferences file
+    private static final String PREFS_NAME = "sync_state";
+
+    // Keys, followed by the section id ("world", "search")
+    private static final String KEY_NEWEST = "newest_";
+    private static final String KEY_SYNCED = "synced_";
+
+    private static SyncState instance;
+
+    private final SharedPreferences prefs;
+    private final String newestOrder;
+
+    private SyncState(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        newestOrder = context.getString(R.string.settings_order_newest_value);
+    }
+
+    // Gets the one SyncState used by the whole app
+    public static synchronized SyncState getInstance(Context context) {
+        if (instance == null) {
+            instance = new SyncState(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Starts collecting the newest dates of a list that is being loaded
+    public Update newUpdate() {
+        return new Update();
+    }
+
+    // Saves the newest date loaded for the section, an older date does not replace a newer one
+    synchronized void record(String section, long newestMillis) {
+        SharedPreferences.Editor editor = prefs.edit();
+        if (newestMillis > getNewestMillis(section)) {
+            editor.putLong(KEY_NEWEST + section, newestMillis);
+        }
+        editor.putLong(KEY_SYNCED + section, System.currentTimeMillis());
+        editor.apply();
+    }
+
+    /**
+     * Newest dates of the sections loaded for one list, nothing is saved until {@link #save()}.
+     * Filled on the loader thread and saved on the UI thread once the list is delivered.
+     */
+    public final class Update {
+
+        // Section id to the newest date loaded for it
+        private final Map<String, Long> newestBySection = new HashMap<>();
+
+        private Update() {
+        }
+
+        /**
+         * Adds the newest date of the articles loaded from the URL.
+         * Only page 1 in "newest" order is used, other pages do not have the newest articles
+         * and a date from them would make a refresh miss the ones in between.
+         */
+        public synchronized void add(String url, List<Article> articles) {
+            if (articles == null) {
+                return;
+            }
+            Uri uri = Uri.parse(url);
+            if (!String.valueOf(ArticleQuery.FIRST_PAGE)
+                    .equals(uri.getQueryParameter(PARAM_PAGE))
+                    || !newestOrder.equals(uri.getQueryParameter(PARAM_ORDER_BY))) {
+                return;
+            }
+            String section = ArticleQuery.getSectionOfUrl(url);
+            Long newest = newestBySection.get(section);
+            long newestMillis = newest != null ? newest : Article.NO_DATE;
+            for (Article article : articles) {
+                newestMillis = Math.max(newestMillis, article.getPublishedMillis());
+            }
+            newestBySection.put(section, newestMillis);
+        }
+
+        // Saves the dates collected, called when the list they came from is delivered
+        public synchronized void save() {
+            for (Map.Entry<String, Long> entry : newestBySection.entrySet()) {
+                record(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // Gets the newest date loaded for the section, Article.NO_DATE if it was never loaded
+    public synchronized long getNewestMillis(String section) {
+        return prefs.getLong(KEY_NEWEST + section, Article.NO_DATE);
+    }
+
+    // Gets when the section was last loaded, 0 if it was never loaded
+    public synchronized long getSyncedMillis(String section) {
+        return prefs.getLong(KEY_SYNCED + section, 0);
+    }
+}
@@ -0,0 +1,53 @@
+package stephenkyne.example.org.newsapp;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An InputStream that writes a copy of every byte read through it to an OutputStream.
+ * Used to save a response body to the {@link FeedStore} while it is being parsed.
+ */
+class TeeInputStream extends FilterInputStream {
+
+    // Where the copy of the bytes is written
+    private final OutputStream copy;
+
+    TeeInputStream(InputStream in, OutputStream copy) {
+        super(in);
+        this.copy = copy;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            copy.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            copy.write(buffer, offset, read);
+        }
+        return read;
+    }
+
+    // Skipped bytes would be missing from the copy, so they are read instead
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, QueryUtils.BUFFER_SIZE)];
+        int read = read(buffer, 0, buffer.length);
+        return Math.max(read, 0);
+    }
+
+    // mark / reset would copy bytes twice, so they are not supported
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,227 @@
+package stephenkyne.example.org.newsapp;
+
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Reads Guardian "webPublicationDate" values and formats publication times for display.
+ * Parsing reads the characters directly and does not allocate. Formatting uses one cached
+ * formatter for the current locale and time zone, made again when either changes.
+ */
+public final class Timestamps {
+
+    // Pattern of the date and time shown on each row, for example "May 30, 2021  1:00 PM"
+    static final String DISPLAY_PATTERN = "MMM d, yyyy  h:mm a";
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    // Formatter for the current locale and time zone, guarded by the class lock
+    private static SimpleDateFormat displayFormat;
+    private static Locale displayLocale;
+
+    // Goes up each time the formatter is dropped, text formatted with an older
+    // generation shows the time in the old time zone or locale. Guarded by the class lock.
+    private static int formatterGeneration;
+
+    // Reused by every format call, guarded by the class lock
+    private static final Date DATE = new Date(0);
+    private static final StringBuffer BUFFER = new StringBuffer(32);
+    private static final FieldPosition FIELD_POSITION = new FieldPosition(0);
+
+    private Timestamps() {
+    }
+
+    /**
+     * Return the milliseconds since 1970-01-01 UTC of an ISO-8601 date and time, or
+     * {@link Article#NO_DATE} if it can not be read.
+     * Reads "yyyy-MM-ddTHH:mm:ssZ" as the Guardian sends it, with optional fractions of a
+     * second and a "+hh:mm" / "-hh:mm" offset in place of "Z".
+     */
+    public static long parseIso8601(CharSequence text) {
+        if (text == null || text.length() < 20) {
+            return Article.NO_DATE;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return Article.NO_DATE;
+        }
+
+        // Fractions of a second, only the milliseconds are kept
+        int position = 19;
+        int millis = 0;
+        if (text.charAt(position) == '.') {
+            position++;
+            int fractionStart = position;
+            while (position < text.length() && isDigit(text.charAt(position))) {
+                if (position - fractionStart < 3) {
+                    millis = millis * 10 + (text.charAt(position) - '0');
+                }
+                position++;
+            }
+            int fractionDigits = position - fractionStart;
+            if (fractionDigits == 0) {
+                return Article.NO_DATE;
+            }
+            for (int i = fractionDigits; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        // Time zone, "Z" or an offset from UTC
+        if (position >= text.length()) {
+            return Article.NO_DATE;
+        }
+        int offsetSeconds;
+        char zone = text.charAt(position);
+        if (zone == 'Z' && position + 1 == text.length()) {
+            offsetSeconds = 0;
+        } else if ((zone == '+' || zone == '-') && position + 6 == text.length()
+                && text.charAt(position + 3) == ':') {
+            int offsetHours = digits(text, position + 1, 2);
+            int offsetMinutes = digits(text, position + 4, 2);
+            if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+                return Article.NO_DATE;
+            }
+            offsetSeconds = (offsetHours * 60 + offsetMinutes) * 60;
+            if (zone == '-') {
+                offsetSeconds = -offsetSeconds;
+            }
+        } else {
+            return Article.NO_DATE;
+        }
+
+        long epochSeconds = daysFromCivil(year, month, day) * SECONDS_PER_DAY
+                + hour * 3600L + minute * 60L + second - offsetSeconds;
+        return epochSeconds * MILLIS_PER_SECOND + millis;
+    }
+
+    /**
+     * Return the time as an ISO-8601 UTC date and time, "yyyy-MM-ddTHH:mm:ssZ",
+     * the form the API takes for "from-date". Milliseconds are dropped.
+     */
+    public static String formatIso8601(long epochMillis) {
+        long epochSeconds = Math.floorDiv(epochMillis, MILLIS_PER_SECOND);
+        long days = Math.floorDiv(epochSeconds, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSeconds, SECONDS_PER_DAY);
+
+        // Howard Hinnant's civil_from_days, the reverse of daysFromCivil
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder text = new StringBuilder(20);
+        appendDigits(text, year, 4).append('-');
+        appendDigits(text, month, 2).append('-');
+        appendDigits(text, day, 2).append('T');
+        appendDigits(text, secondOfDay / 3600, 2).append(':');
+        appendDigits(text, secondOfDay / 60 % 60, 2).append(':');
+        appendDigits(text, secondOfDay % 60, 2).append('Z');
+        return text.toString();
+    }
+
+    /**
+     * Return the publication time as shown on a row, in the current time zone and locale.
+     * Thread safe.
+     *
+     * @param epochMillis milliseconds since 1970-01-01 UTC
+     */
+    public static synchronized String formatLocal(long epochMillis) {
+        Locale locale = Locale.getDefault();
+        if (displayFormat == null || !locale.equals(displayLocale)) {
+            displayFormat = new SimpleDateFormat(DISPLAY_PATTERN, locale);
+            displayFormat.setTimeZone(TimeZone.getDefault());
+            displayLocale = locale;
+        }
+        DATE.setTime(epochMillis);
+        BUFFER.setLength(0);
+        return displayFormat.format(DATE, BUFFER, FIELD_POSITION).toString();
+    }
+
+    /**
+     * Drops the cached formatter, the next format call makes a new one for the current
+     * time zone and locale. Called when the user changes either of them.
+     */
+    public static synchronized void invalidateFormatter() {
+        displayFormat = null;
+        displayLocale = null;
+        formatterGeneration++;
+    }
+
+    // Gets the generation of the formatter, see formatLocal
+    public static synchronized int getFormatterGeneration() {
+        return formatterGeneration;
+    }
+
+    // Appends the value with zeros in front up to count digits
+    private static StringBuilder appendDigits(StringBuilder text, long value, int count) {
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < count; i++) {
+            text.append('0');
+        }
+        return text.append(digits);
+    }
+
+    // Reads count digits starting at start, -1 if any of them is not a digit
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Days from 1970-01-01 to the date in the proleptic Gregorian calendar
+    // (Howard Hinnant's days_from_civil)
+    static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
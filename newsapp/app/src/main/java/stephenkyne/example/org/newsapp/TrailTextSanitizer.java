@@ -0,0 +1,195 @@
+package stephenkyne.example.org.newsapp;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns the HTML "trailText" of an article into the plain text shown on its row.
+ * One pass over the characters removes the tags, decodes the entities (&amp;amp;, &amp;#8217;)
+ * and collapses runs of white space into a single space.
+ * Results are kept per article id, loading the same article again does not repeat the work.
+ */
+public final class TrailTextSanitizer {
+
+    // Most summaries kept in memory, about five pages of every section
+    static final int MAX_SUMMARIES = 512;
+
+    // Longest entity name looked up between "&" and ";", longer ones are left as they are
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    // Summaries by article id, the least recently used is removed first. Guarded by itself.
+    // A plain map rather than android.util.LruCache so the class runs in local unit tests.
+    private static final Map<String, Summary> SUMMARIES =
+            new LinkedHashMap<String, Summary>(MAX_SUMMARIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Summary> eldest) {
+                    return size() > MAX_SUMMARIES;
+                }
+            };
+
+    // Named entities found in Guardian trailText, others are left as they are
+    private static final Map<String, Character> ENTITIES = new HashMap<>();
+
+    static {
+        ENTITIES.put("amp", '&');
+        ENTITIES.put("lt", '<');
+        ENTITIES.put("gt", '>');
+        ENTITIES.put("quot", '"');
+        ENTITIES.put("apos", '\'');
+        ENTITIES.put("nbsp", '\u00a0');
+        ENTITIES.put("ndash", '\u2013');
+        ENTITIES.put("mdash", '\u2014');
+        ENTITIES.put("lsquo", '\u2018');
+        ENTITIES.put("rsquo", '\u2019');
+        ENTITIES.put("ldquo", '\u201c');
+        ENTITIES.put("rdquo", '\u201d');
+        ENTITIES.put("hellip", '\u2026');
+        ENTITIES.put("pound", '\u00a3');
+        ENTITIES.put("euro", '\u20ac');
+        ENTITIES.put("copy", '\u00a9');
+        ENTITIES.put("eacute", '\u00e9');
+        ENTITIES.put("egrave", '\u00e8');
+        ENTITIES.put("aacute", '\u00e1');
+        ENTITIES.put("iacute", '\u00ed');
+        ENTITIES.put("oacute", '\u00f3');
+        ENTITIES.put("uuml", '\u00fc');
+        ENTITIES.put("ouml", '\u00f6');
+        ENTITIES.put("auml", '\u00e4');
+        ENTITIES.put("ccedil", '\u00e7');
+        ENTITIES.put("deg", '\u00b0');
+    }
+
+    private TrailTextSanitizer() {
+    }
+
+    /**
+     * Return the plain text of the article's trailText, from memory if the same text was
+     * already sanitized for this article id.
+     * Nulls and empty Strings are checked before calling the method.
+     */
+    public static String sanitize(String articleId, String trailText) {
+        if (articleId == null) {
+            return sanitize(trailText);
+        }
+        Summary summary;
+        synchronized (SUMMARIES) {
+            summary = SUMMARIES.get(articleId);
+        }
+        // The same id can come back with an updated summary, the text is checked too
+        if (summary != null && summary.trailText.equals(trailText)) {
+            return summary.plainText;
+        }
+        String plainText = sanitize(trailText);
+        synchronized (SUMMARIES) {
+            SUMMARIES.put(articleId, new Summary(trailText, plainText));
+        }
+        return plainText;
+    }
+
+    /**
+     * Return the text with the HTML tags removed, entities decoded and white space collapsed,
+     * without white space at either end.
+     */
+    public static String sanitize(String html) {
+        int length = html.length();
+        StringBuilder text = new StringBuilder(length);
+        // A space is only added once the next visible character is found
+        boolean pendingSpace = false;
+        int i = 0;
+        while (i < length) {
+            int codePoint = html.charAt(i);
+            int next = i + 1;
+            if (codePoint == '<' && isTagStart(html, next)) {
+                int end = html.indexOf('>', next);
+                if (end >= 0) {
+                    // Tags are removed, "<strong>Live</strong> now" reads "Live now"
+                    i = end + 1;
+                    continue;
+                }
+            } else if (codePoint == '&') {
+                int end = entityEnd(html, next);
+                int decoded = end < 0 ? -1 : decodeEntity(html, next, end);
+                if (decoded >= 0) {
+                    codePoint = decoded;
+                    next = end + 1;
+                }
+            }
+            if (Character.isWhitespace(codePoint) || codePoint == '\u00a0') {
+                pendingSpace = text.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    text.append(' ');
+                    pendingSpace = false;
+                }
+                text.appendCodePoint(codePoint);
+            }
+            i = next;
+        }
+        return text.toString();
+    }
+
+    // "<" only starts a tag when followed by a letter, "/", "!" or "?", so "a < b" is kept
+    private static boolean isTagStart(String html, int index) {
+        if (index >= html.length()) {
+            return false;
+        }
+        char c = html.charAt(index);
+        return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+    }
+
+    // Index of the ";" closing the entity whose name starts at start, -1 if there is none
+    private static int entityEnd(String html, int start) {
+        int limit = Math.min(html.length(), start + MAX_ENTITY_LENGTH + 1);
+        for (int i = start; i < limit; i++) {
+            char c = html.charAt(i);
+            if (c == ';') {
+                return i > start ? i : -1;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '#') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Returns the character of the entity between "&" and ";", "amp", "#8217" or "#x2019",
+     * or -1 if it is not one that can be decoded and the text should be kept as it is.
+     */
+    private static int decodeEntity(String html, int start, int end) {
+        if (html.charAt(start) != '#') {
+            Character decoded = ENTITIES.get(html.substring(start, end));
+            return decoded != null ? decoded : -1;
+        }
+        int i = start + 1;
+        int radix = 10;
+        if (i < end && (html.charAt(i) == 'x' || html.charAt(i) == 'X')) {
+            radix = 16;
+            i++;
+        }
+        if (i == end) {
+            return -1;
+        }
+        int codePoint = 0;
+        for (; i < end; i++) {
+            int digit = Character.digit(html.charAt(i), radix);
+            if (digit < 0) {
+                return -1;
+            }
+            codePoint = codePoint * radix + digit;
+        }
+        return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+    }
+
+    // The trailText a plain text was made from
+    private static final class Summary {
+        final String trailText;
+        final String plainText;
+
+        Summary(String trailText, String plainText) {
+            this.trailText = trailText;
+            this.plainText = plainText;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package stephenkyne.example.org.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ArticleIndex}.
+ */
+public class ArticleIndexTest {
+
+    @Test
+    public void search_matchesWordPrefixes() {
+        ArticleIndex index = new ArticleIndex();
+        index.addAll(Arrays.asList(
+                row("a", "Election results are in", "Jane Smith", 1),
+                row("b", "Electric cars sales rise", "John Doe", 2),
+                row("c", "Football scores", "Jane Smith", 3)));
+
+        assertEquals(ids("b", "a"), ids(index.search("elect", 10)));
+        assertEquals(ids("c", "a"), ids(index.search("JANE", 10)));
+        assertTrue(index.search("tennis", 10).isEmpty());
+    }
+
+    @Test
+    public void search_needsEveryWord_newestFirst() {
+        ArticleIndex index = new ArticleIndex();
+        index.addAll(Arrays.asList(
+                row("a", "Climate talks open", "Sam Jones", 10),
+                row("b", "Climate protest in London", "Sam Jones", 30),
+                row("c", "London marathon", "Pat Brown", 20)));
+
+        assertEquals(ids("b"), ids(index.search("climate lon", 10)));
+        assertEquals(ids("b", "c"), ids(index.search("london", 10)));
+        assertEquals(ids("b"), ids(index.search("london", 1)));
+    }
+
+    @Test
+    public void addAll_sameArticleTwice_isIndexedOnce() {
+        ArticleIndex index = new ArticleIndex();
+        index.addAll(Arrays.asList(row("a", "Budget day", "Jane Smith", 1)));
+        index.addAll(Arrays.asList(row("a", "Budget day", "Jane Smith", 1)));
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.search("budget", 10).size());
+    }
+
+    @Test
+    public void addAll_replacedArticle_isOnlyFoundByItsNewWords() {
+        ArticleIndex index = new ArticleIndex();
+        index.addAll(Arrays.asList(row("a", "Budget delayed", "Jane Smith", 1),
+                row("b", "Budget day", "John Doe", 2)));
+        // The title was changed after the article was published
+        index.addAll(Arrays.asList(row("a", "Spending review delayed", "Jane Smith", 1)));
+
+        assertEquals(2, index.size());
+        assertEquals(ids("b"), ids(index.search("budget", 10)));
+        assertEquals(ids("a"), ids(index.search("spending", 10)));
+        assertEquals(ids("a"), ids(index.search("delayed", 10)));
+        assertEquals("Spending review delayed",
+                index.search("review", 10).get(0).getArticle().getTitle());
+    }
+
+    @Test
+    public void search_fiftyThousandArticles_keepsTheNewest() {
+        ArticleIndex index = new ArticleIndex();
+        String[] words = {"election", "football", "climate", "market", "film", "science",
+                "london", "budget", "health", "music", "space", "energy"};
+        List<ArticleRow> rows = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            String title = words[i % words.length] + " story " + words[(i / 7) % words.length]
+                    + " number" + i;
+            rows.add(row("id" + i, title, "Author " + (i % 100), i));
+        }
+        index.addAll(rows);
+
+        // A short prefix over many documents, the time it takes is in SearchBenchmark
+        List<ArticleRow> results = index.search("e st", 200);
+        assertEquals(200, results.size());
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i - 1).getArticle().getPublishedMillis()
+                    > results.get(i).getArticle().getPublishedMillis());
+        }
+    }
+
+    private static ArticleRow row(String id, String title, String author, long published) {
+        Article article = new Article(id, "News", published, title,
+                "https://www.theguardian.com/" + id, author, null);
+        return new ArticleRow(article, title, "News", 0, "", author, "Summary Missing");
+    }
+
+    private static List<String> ids(String... ids) {
+        return Arrays.asList(ids);
+    }
+
+    private static List<String> ids(List<ArticleRow> rows) {
+        List<String> ids = new ArrayList<>();
+        for (ArticleRow row : rows) {
+            ids.add(row.getArticle().getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,97 @@
+package stephenkyne.example.org.newsapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CircuitBreaker}, using a fake clock.
+ */
+public class CircuitBreakerTest {
+
+    private static final int THRESHOLD = 3;
+    private static final long OPEN_MILLIS = 30000;
+
+    // Time given to the breaker, moved forward by the tests
+    private long now = 5000;
+
+    private CircuitBreaker circuit;
+
+    @Before
+    public void setUp() {
+        circuit = new CircuitBreaker(THRESHOLD, OPEN_MILLIS, new FeedStore.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now;
+            }
+        });
+    }
+
+    @Test
+    public void opensAfterFailuresInARow() {
+        for (int i = 0; i < THRESHOLD - 1; i++) {
+            assertTrue(circuit.allowRequest());
+            circuit.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+        assertTrue(circuit.allowRequest());
+        circuit.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+        assertFalse(circuit.allowRequest());
+    }
+
+    @Test
+    public void successResetsTheCount() {
+        circuit.onFailure();
+        circuit.onFailure();
+        circuit.onSuccess();
+        circuit.onFailure();
+        circuit.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+    }
+
+    @Test
+    public void letsOneTestRequestThroughAfterTheOpenPeriod() {
+        openCircuit();
+        now += OPEN_MILLIS - 1;
+        assertFalse(circuit.allowRequest());
+
+        now += 1;
+        assertTrue(circuit.allowRequest());
+        // Only the one test request
+        assertFalse(circuit.allowRequest());
+
+        circuit.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+        assertTrue(circuit.allowRequest());
+    }
+
+    @Test
+    public void failedTestRequestOpensAgain() {
+        openCircuit();
+        now += OPEN_MILLIS;
+        assertTrue(circuit.allowRequest());
+        circuit.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+        assertFalse(circuit.allowRequest());
+        now += OPEN_MILLIS;
+        assertTrue(circuit.allowRequest());
+    }
+
+    @Test
+    public void ignoredTestRequestLetsTheNextOneTest() {
+        openCircuit();
+        now += OPEN_MILLIS;
+        assertTrue(circuit.allowRequest());
+        circuit.onIgnored();
+        assertTrue(circuit.allowRequest());
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < THRESHOLD; i++) {
+            circuit.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+    }
+}
@@ -0,0 +1,125 @@
+package stephenkyne.example.org.newsapp;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FeedStore}, using a fake clock.
+ */
+public class FeedStoreTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?page=1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Time given to the store, moved forward by the tests
+    private long now = 1_000_000_000L;
+
+    private final FeedStore.Clock clock = new FeedStore.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    };
+
+    private FeedStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        store = new FeedStore(folder.newFolder("feeds"), clock);
+    }
+
+    @Test
+    public void savedBody_isFreshUntilMaxAge() throws IOException {
+        save(URL, "{}");
+
+        assertNotNull(store.getFresh(URL, 1000));
+        now += 1000;
+        assertNotNull(store.getFresh(URL, 1000));
+        now += 1;
+        assertNull(store.getFresh(URL, 1000));
+    }
+
+    @Test
+    public void abortedBody_keepsTheSavedOne() throws IOException {
+        save(URL, "old");
+
+        FeedStore.Editor editor = store.edit(URL);
+        editor.stream().write("new".getBytes(StandardCharsets.UTF_8));
+        editor.abort();
+
+        File saved = store.getFresh(URL, 1000);
+        assertEquals(3, saved.length());
+        assertEquals(1, saved.getParentFile().list().length);
+    }
+
+    @Test
+    public void oldestBodies_areDeletedOverMaxBytes() throws IOException {
+        store = new FeedStore(folder.newFolder("small"), clock, 10);
+        save(URL + "&a", "12345");
+        now += 1000;
+        save(URL + "&b", "12345");
+        now += 1000;
+        // Over 10 bytes, the oldest body goes
+        save(URL + "&c", "12345");
+
+        assertNull(store.getFresh(URL + "&a", Long.MAX_VALUE));
+        assertNotNull(store.getFresh(URL + "&b", Long.MAX_VALUE));
+        assertNotNull(store.getFresh(URL + "&c", Long.MAX_VALUE));
+
+        // A body bigger than the store on its own is still kept
+        save(URL + "&d", "12345678901");
+        assertNotNull(store.getFresh(URL + "&d", Long.MAX_VALUE));
+        assertEquals(1, store.getFresh(URL + "&d", Long.MAX_VALUE).getParentFile().list().length);
+    }
+
+    @Test
+    public void bodiesTooOldToShow_areDeleted() throws IOException {
+        save(URL + "&old", "old");
+        now += FeedStore.OFFLINE_FOR_MILLIS + 1;
+        save(URL, "new");
+
+        assertNull(store.getFresh(URL + "&old", Long.MAX_VALUE));
+        assertNotNull(store.getFresh(URL, 0));
+    }
+
+    @Test
+    public void tempFileLeftByAKilledProcess_isDeleted() throws IOException {
+        FeedStore.Editor killed = store.edit(URL + "&killed");
+        killed.stream().write("half".getBytes(StandardCharsets.UTF_8));
+        killed.stream().flush();
+        File directory = store.getFresh(save(URL, "{}"), 0).getParentFile();
+        // Still being written, it is left alone
+        assertEquals(2, directory.list().length);
+        for (File file : directory.listFiles()) {
+            // Written at the time of the fake clock
+            file.setLastModified(now);
+        }
+
+        now += FeedStore.TEMP_EXPIRES_MILLIS + 1;
+        save(URL, "{}");
+        assertEquals(1, directory.list().length);
+    }
+
+    @Test
+    public void unknownUrl_isNotFresh() {
+        assertNull(store.getFresh(URL, Long.MAX_VALUE));
+    }
+
+    // Saves the body for the URL and returns the URL
+    private String save(String url, String body) throws IOException {
+        FeedStore.Editor editor = store.edit(url);
+        editor.stream().write(body.getBytes(StandardCharsets.UTF_8));
+        editor.commit();
+        return url;
+    }
+}
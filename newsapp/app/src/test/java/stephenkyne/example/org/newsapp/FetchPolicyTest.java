@@ -0,0 +1,55 @@
+package stephenkyne.example.org.newsapp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the waits between attempts of a {@link FetchPolicy}.
+ */
+public class FetchPolicyTest {
+
+    private final FetchPolicy policy = new FetchPolicy(30000, 5, 500, 4000, 1000, 1000);
+
+    @Test
+    public void backoff_doublesUpToTheMaximum() {
+        assertEquals(500, maxBackoff(1));
+        assertEquals(1000, maxBackoff(2));
+        assertEquals(2000, maxBackoff(3));
+        assertEquals(4000, maxBackoff(4));
+        assertEquals(4000, maxBackoff(10));
+        assertEquals(4000, maxBackoff(1000));
+    }
+
+    @Test
+    public void backoff_isSpreadOverTheWholeRange() {
+        Random random = new Random(42);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 10000; i++) {
+            long wait = policy.backoffMillis(3, random);
+            min = Math.min(min, wait);
+            max = Math.max(max, wait);
+        }
+        assertTrue("min " + min, min < 100);
+        assertTrue("max " + max, max > 1900 && max <= 2000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoAttempts() {
+        new FetchPolicy(30000, 0, 500, 4000, 1000, 1000);
+    }
+
+    // The wait when the random part is as large as it can be
+    private long maxBackoff(int failedAttempts) {
+        Random highest = new Random() {
+            @Override
+            public double nextDouble() {
+                return 0.9999999999;
+            }
+        };
+        return policy.backoffMillis(failedAttempts, highest);
+    }
+}
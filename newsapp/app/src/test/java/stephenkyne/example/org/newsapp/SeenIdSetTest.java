@@ -0,0 +1,68 @@
+package stephenkyne.example.org.newsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SeenIdSet}.
+ */
+public class SeenIdSetTest {
+
+    @Test
+    public void idAddedTwice_isNewOnlyOnce() {
+        SeenIdSet seen = new SeenIdSet();
+        assertTrue(seen.add("world/2021/may/31/first"));
+        assertTrue(seen.add("sport/2021/may/31/second"));
+        assertFalse(seen.add("world/2021/may/31/first"));
+        assertTrue(seen.contains("sport/2021/may/31/second"));
+        assertFalse(seen.contains("culture/2021/may/31/third"));
+        assertEquals(2, seen.size());
+    }
+
+    @Test
+    public void articleWithoutId_isAlwaysNew() {
+        SeenIdSet seen = new SeenIdSet();
+        assertTrue(seen.add(null));
+        assertTrue(seen.add(null));
+        assertFalse(seen.contains(null));
+        assertEquals(0, seen.size());
+    }
+
+    @Test
+    public void manyIds_areAllRemembered() {
+        SeenIdSet seen = new SeenIdSet();
+        for (int i = 0; i < SeenIdSet.DEFAULT_GENERATION_SIZE; i++) {
+            assertTrue(seen.add("world/" + i));
+        }
+        for (int i = 0; i < SeenIdSet.DEFAULT_GENERATION_SIZE; i++) {
+            assertFalse("world/" + i, seen.add("world/" + i));
+        }
+        assertEquals(SeenIdSet.DEFAULT_GENERATION_SIZE, seen.size());
+    }
+
+    @Test
+    public void size_staysBoundedAndRecentIdsAreKept() {
+        int generationSize = 1000;
+        SeenIdSet seen = new SeenIdSet(generationSize);
+        for (int i = 0; i < 50000; i++) {
+            seen.add("world/" + i);
+            assertTrue(seen.size() <= 2 * generationSize);
+        }
+        // The last generationSize ids are always remembered
+        for (int i = 50000 - generationSize; i < 50000; i++) {
+            assertTrue("world/" + i, seen.contains("world/" + i));
+        }
+        // The first ones were forgotten to stay in bounds
+        assertFalse(seen.contains("world/0"));
+    }
+
+    @Test
+    public void clear_forgetsEveryId() {
+        SeenIdSet seen = new SeenIdSet();
+        seen.add("world/1");
+        seen.clear();
+        assertEquals(0, seen.size());
+        assertTrue(seen.add("world/1"));
+    }
+}
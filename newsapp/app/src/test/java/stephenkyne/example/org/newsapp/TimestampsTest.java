@@ -0,0 +1,118 @@
+package stephenkyne.example.org.newsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link Timestamps}, including the daylight saving changes of
+ * America/New_York in 2021 (14 March 07:00 UTC and 7 November 06:00 UTC).
+ */
+public class TimestampsTest {
+
+    private Locale savedLocale;
+    private TimeZone savedTimeZone;
+
+    @Before
+    public void setUp() {
+        savedLocale = Locale.getDefault();
+        savedTimeZone = TimeZone.getDefault();
+        Locale.setDefault(Locale.US);
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        Timestamps.invalidateFormatter();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(savedLocale);
+        TimeZone.setDefault(savedTimeZone);
+        Timestamps.invalidateFormatter();
+    }
+
+    @Test
+    public void parse_matchesKnownInstants() {
+        assertEquals(0L, Timestamps.parseIso8601("1970-01-01T00:00:00Z"));
+        assertEquals(1622379600000L, Timestamps.parseIso8601("2021-05-30T13:00:00Z"));
+        assertEquals(951782400000L, Timestamps.parseIso8601("2000-02-29T00:00:00Z"));
+        assertEquals(-86400000L, Timestamps.parseIso8601("1969-12-31T00:00:00Z"));
+        assertEquals(1622379600123L, Timestamps.parseIso8601("2021-05-30T13:00:00.123Z"));
+        assertEquals(1622379600500L, Timestamps.parseIso8601("2021-05-30T13:00:00.5Z"));
+        assertEquals(1622379600000L, Timestamps.parseIso8601("2021-05-30T14:00:00+01:00"));
+        assertEquals(1622379600000L, Timestamps.parseIso8601("2021-05-30T08:00:00-05:00"));
+    }
+
+    @Test
+    public void parse_rejectsMalformedDates() {
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601(null));
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601(""));
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601("2021-05-30"));
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601("2021-05-30 13:00:00Z"));
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601("2021-13-30T13:00:00Z"));
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601("2021-02-29T13:00:00Z"));
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601("2021-05-30T24:00:00Z"));
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601("2021-05-30T13:00:00"));
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601("2021-05-30T13:00:00Zjunk"));
+        assertEquals(Article.NO_DATE, Timestamps.parseIso8601("2021-05-3xT13:00:00Z"));
+    }
+
+    @Test
+    public void formatIso8601_isTheReverseOfParse() {
+        String[] dates = {"1970-01-01T00:00:00Z", "1969-12-31T23:59:59Z", "2000-02-29T12:34:56Z",
+                "2021-05-30T23:59:00Z", "2100-03-01T00:00:00Z", "0999-01-01T00:00:00Z"};
+        for (String date : dates) {
+            assertEquals(date, Timestamps.formatIso8601(Timestamps.parseIso8601(date)));
+        }
+        // Milliseconds are dropped
+        assertEquals("2021-05-30T13:00:00Z", Timestamps.formatIso8601(1622379600999L));
+    }
+
+    @Test
+    public void format_acrossSpringForward() {
+        // Last second of EST, then the first second of EDT an hour later on the wall clock
+        assertEquals("Mar 14, 2021  1:59 AM",
+                Timestamps.formatLocal(Timestamps.parseIso8601("2021-03-14T06:59:59Z")));
+        assertEquals("Mar 14, 2021  3:00 AM",
+                Timestamps.formatLocal(Timestamps.parseIso8601("2021-03-14T07:00:00Z")));
+    }
+
+    @Test
+    public void format_acrossFallBack() {
+        // 1:30 AM happens twice, once in EDT and once in EST
+        assertEquals("Nov 7, 2021  1:30 AM",
+                Timestamps.formatLocal(Timestamps.parseIso8601("2021-11-07T05:30:00Z")));
+        assertEquals("Nov 7, 2021  1:30 AM",
+                Timestamps.formatLocal(Timestamps.parseIso8601("2021-11-07T06:30:00Z")));
+        assertEquals("Nov 7, 2021  2:00 AM",
+                Timestamps.formatLocal(Timestamps.parseIso8601("2021-11-07T07:00:00Z")));
+    }
+
+    @Test
+    public void format_followsTimeZoneChange() {
+        long millis = Timestamps.parseIso8601("2021-05-30T13:00:00Z");
+        assertEquals("May 30, 2021  9:00 AM", Timestamps.formatLocal(millis));
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/London"));
+        Timestamps.invalidateFormatter();
+        assertEquals("May 30, 2021  2:00 PM", Timestamps.formatLocal(millis));
+    }
+
+    @Test
+    public void rowDate_followsTimeZoneChange() {
+        long millis = Timestamps.parseIso8601("2021-05-30T13:00:00Z");
+        Article article = new Article("a", "News", millis, "Title", "https://www.theguardian.com/a",
+                "Jane Smith", null);
+        ArticleRow row = new ArticleRow(article, "Title", "News", 0,
+                Timestamps.formatLocal(millis), "Jane Smith", "Summary Missing");
+        assertEquals("May 30, 2021  9:00 AM", row.getFormattedDate());
+
+        // The row was built before the change, it is formatted again when bound
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/London"));
+        Timestamps.invalidateFormatter();
+        assertEquals("May 30, 2021  2:00 PM", row.getFormattedDate());
+    }
+}
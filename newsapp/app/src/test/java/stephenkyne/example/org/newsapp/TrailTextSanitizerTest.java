@@ -0,0 +1,51 @@
+package stephenkyne.example.org.newsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TrailTextSanitizer}.
+ */
+public class TrailTextSanitizerTest {
+
+    @Test
+    public void sanitize_removesTags() {
+        assertEquals("Live Follow the latest updates",
+                TrailTextSanitizer.sanitize("<strong>Live</strong> Follow the latest updates"));
+        assertEquals("A look at the week",
+                TrailTextSanitizer.sanitize("<p>A look at the <em>week</em></p>"));
+    }
+
+    @Test
+    public void sanitize_decodesEntities() {
+        assertEquals("The minister\u2019s plan & what it means",
+                TrailTextSanitizer.sanitize("The minister&#8217;s plan &amp; what it means"));
+        assertEquals("\u2018remarkable\u2019 \u2013 it\u2019s",
+                TrailTextSanitizer.sanitize("&lsquo;remarkable&rsquo; &ndash; it&#x2019;s"));
+        assertEquals("\ud83d\ude00", TrailTextSanitizer.sanitize("&#128512;"));
+    }
+
+    @Test
+    public void sanitize_collapsesWhiteSpace() {
+        assertEquals("one two three",
+                TrailTextSanitizer.sanitize("  one \n\t two&nbsp;&nbsp;<br/> three  "));
+    }
+
+    @Test
+    public void sanitize_keepsTextThatIsNotMarkup() {
+        assertEquals("a < b", TrailTextSanitizer.sanitize("a < b"));
+        assertEquals("<unclosed", TrailTextSanitizer.sanitize("<unclosed"));
+        assertEquals("AT&T &unknown; &#xZZ; & more",
+                TrailTextSanitizer.sanitize("AT&T &unknown; &#xZZ; & more"));
+    }
+
+    @Test
+    public void sanitizeWithId_isRedoneWhenTheTextChanges() {
+        String id = "world/2021/may/30/sanitizer-test";
+        String first = TrailTextSanitizer.sanitize(id, "<b>First</b>");
+        assertEquals("First", first);
+        assertSame(first, TrailTextSanitizer.sanitize(id, "<b>First</b>"));
+        assertEquals("Second", TrailTextSanitizer.sanitize(id, "<b>Second</b>"));
+    }
+}